@@ -0,0 +1,108 @@
+package com.blocksecops.intellij;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Action to accept the findings of the last project scan into the baseline, so from now on only new findings
+ * are shown.
+ */
+public class BlockSecOpsAcceptBaselineAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsAcceptBaselineAction.class);
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        if (project == null || project.getBasePath() == null) {
+            return;
+        }
+
+        new Task.Backgroundable(project, "BlockSecOps: Updating baseline", false) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                acceptFindings(project);
+            }
+        }.queue();
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent event) {
+        event.getPresentation().setEnabled(event.getProject() != null);
+    }
+
+    private void acceptFindings(Project project) {
+        BlockSecOpsFindingsIndex index = BlockSecOpsResultsService.getInstance(project).getIndex();
+        if (index.getPaths().isEmpty()) {
+            showNotification(project, "Scan the project before accepting its findings", NotificationType.INFORMATION);
+            return;
+        }
+
+        Map<String, VirtualFile> files = BlockSecOpsScanProjectAction.collectSolidityFiles(project);
+        Set<String> fingerprints = new HashSet<>();
+        Map<String, String> accepted = new HashMap<>();
+        int skipped = 0;
+        for (String path : index.getPaths()) {
+            VirtualFile file = files.get(path);
+            CharSequence text = file != null ? ReadAction.compute(() -> LoadTextUtil.loadText(file)) : null;
+            String contentHash = text != null ? BlockSecOpsScanProjectAction.contentHash(text) : null;
+            List<BlockSecOpsExternalAnnotator.Finding> findings =
+                    contentHash != null ? index.get(path, contentHash) : null;
+            if (findings == null) {
+                // Edited since the scan; its findings may not match the text any more
+                skipped++;
+                continue;
+            }
+
+            BlockSecOpsBaseline.Matcher matcher = new BlockSecOpsBaseline.Matcher(Collections.emptySet(), text);
+            for (BlockSecOpsExternalAnnotator.Finding finding : findings) {
+                fingerprints.add(matcher.fingerprint(finding.ruleId, finding.startLine, finding.endLine));
+            }
+            accepted.put(path, contentHash);
+        }
+
+        try {
+            BlockSecOpsBaseline.getInstance(project).accept(fingerprints);
+        } catch (IOException e) {
+            LOG.warn("Failed to save baseline", e);
+            showNotification(project, "Failed to save baseline: " + e.getMessage(), NotificationType.ERROR);
+            return;
+        }
+
+        // Everything left in these files is now accepted
+        accepted.forEach((path, contentHash) -> index.put(path, contentHash, Collections.emptyList()));
+        DaemonCodeAnalyzer.getInstance(project).restart();
+
+        showNotification(project,
+                "Accepted " + fingerprints.size() + " finding" + (fingerprints.size() != 1 ? "s" : "")
+                        + " into " + BlockSecOpsBaseline.FILE
+                        + (skipped > 0 ? " (" + skipped + " files changed since the last scan were skipped)" : ""),
+                NotificationType.INFORMATION);
+    }
+
+    private void showNotification(Project project, String message, NotificationType type) {
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("BlockSecOps Notifications")
+                .createNotification(message, type)
+                .notify(project);
+    }
+}
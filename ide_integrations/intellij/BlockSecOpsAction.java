@@ -1,27 +1,48 @@
 package com.blocksecops.intellij;
 
+import com.google.gson.stream.JsonReader;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.OSProcessHandler;
-import com.intellij.execution.process.ProcessAdapter;
-import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.OSProcessUtil;
 import com.intellij.notification.NotificationGroupManager;
 import com.intellij.notification.NotificationType;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.Key;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Action to scan the current file using blocksecops-cli.
  */
 public class BlockSecOpsScanFileAction extends AnAction {
 
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsScanFileAction.class);
+
+    // Stderr lines kept for the log when the CLI fails
+    private static final int MAX_ERROR_LINES = 20;
+
+    // A file scan may wait for the API; past this the CLI is assumed stuck and its permit is given back
+    private static final int SCAN_TIMEOUT_MS = 600000;
+
     @Override
     public void actionPerformed(@NotNull AnActionEvent event) {
         Project project = event.getProject();
@@ -36,7 +57,15 @@ public class BlockSecOpsScanFileAction extends AnAction {
             return;
         }
 
-        scanFile(project, file.getPath());
+        // Waiting for a scan permit must not block the EDT
+        String filePath = file.getPath();
+        BlockSecOpsScanEvents.scanRequested(filePath, BlockSecOpsScanEvents.SCAN_FILE, file.getLength());
+        new Task.Backgroundable(project, "BlockSecOps: Scanning " + file.getName(), true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                scanFile(project, filePath, indicator);
+            }
+        }.queue();
     }
 
     @Override
@@ -46,7 +75,7 @@ public class BlockSecOpsScanFileAction extends AnAction {
         event.getPresentation().setEnabledAndVisible(enabled);
     }
 
-    private void scanFile(Project project, String filePath) {
+    private void scanFile(Project project, String filePath, ProgressIndicator indicator) {
         BlockSecOpsSettings settings = BlockSecOpsSettings.getInstance();
         String cliPath = settings.getCliPath();
 
@@ -54,70 +83,181 @@ public class BlockSecOpsScanFileAction extends AnAction {
                 .withExePath(cliPath)
                 .withParameters("scan", "run", filePath, "--output", "sarif")
                 .withCharset(StandardCharsets.UTF_8);
+        if (settings.isOfflineMode()) {
+            commandLine.addParameter("--offline");
+        }
 
         if (project.getBasePath() != null) {
             commandLine.withWorkDirectory(project.getBasePath());
         }
 
-        try {
-            OSProcessHandler processHandler = new OSProcessHandler(commandLine);
-            StringBuilder output = new StringBuilder();
+        // Cancelling the task cancels the ticket, which gives up the permit or kills the CLI
+        BlockSecOpsScanScheduler.ScanTicket ticket = new BlockSecOpsScanScheduler.ScanTicket();
+        indicator.setText("Waiting for a scan slot...");
+        try (BlockSecOpsScanGovernor.Permit permit = BlockSecOpsScanGovernor.getInstance().acquire(ticket)) {
+            indicator.setText("Scanning " + filePath + "...");
+            ScanResult result = runScan(commandLine, filePath, ticket);
+            ApplicationManager.getApplication().invokeLater(() -> handleScanResult(project, filePath, result));
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (CancellationException e) {
+            LOG.debug("Scan of " + filePath + " was cancelled");
+        } catch (TimeoutException e) {
+            LOG.warn("blocksecops-cli did not finish scanning " + filePath, e);
+            showNotification(project, "Scan timed out after " + SCAN_TIMEOUT_MS / 1000 + " seconds",
+                    NotificationType.ERROR);
+        } catch (Exception e) {
+            LOG.warn("Failed to run blocksecops-cli", e);
+            showNotification(project,
+                    "Failed to run blocksecops-cli: " + e.getMessage() +
+                            "\nMake sure blocksecops is installed and in your PATH.",
+                    NotificationType.ERROR);
+        }
+    }
 
-            processHandler.addProcessListener(new ProcessAdapter() {
-                @Override
-                public void onTextAvailable(@NotNull ProcessEvent event, @NotNull Key outputType) {
-                    output.append(event.getText());
+    /**
+     * Run the CLI, decoding its SARIF output as it is produced.
+     * <p>
+     * Stdout is decoded and captured in one pass; stderr is read separately, so diagnostics never end up in
+     * the SARIF and neither stream can fill up and block the process.
+     */
+    private ScanResult runScan(GeneralCommandLine commandLine, String filePath,
+                               BlockSecOpsScanScheduler.ScanTicket ticket) throws Exception {
+        BlockSecOpsMetrics metrics = BlockSecOpsMetrics.getInstance();
+        long spawnStart = System.nanoTime();
+        BlockSecOpsScanEvents.ProcessStarted started =
+                BlockSecOpsScanEvents.processStarting(filePath, BlockSecOpsScanEvents.SCAN_FILE, "scan run");
+        Process process = commandLine.createProcess();
+        long runStart = System.nanoTime();
+        metrics.recordSince(BlockSecOpsMetrics.Stage.SPAWN, spawnStart);
+        BlockSecOpsScanEvents.processStarted(started, process.pid());
+
+        // The CLI spawns SolidityDefend, so kill the whole tree rather than just the Python process
+        ticket.onCancel(() -> OSProcessUtil.killProcessTree(process));
+        process.getOutputStream().close();
+
+        ScanResult result = new ScanResult();
+        Application application = ApplicationManager.getApplication();
+        Future<?> stderr = application.executeOnPooledThread(() -> readErrors(process, result.errors));
+        Future<?> stdout = application.executeOnPooledThread(() -> readOutput(process, filePath, result));
+
+        try {
+            long deadline = System.currentTimeMillis() + SCAN_TIMEOUT_MS;
+            while (!process.waitFor(BlockSecOpsScanScheduler.POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                BlockSecOpsScanScheduler.checkCanceled(ticket);
+                if (ticket.isCancelled()) {
+                    throw new CancellationException("Scan was cancelled");
                 }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new TimeoutException("blocksecops-cli timed out after " + SCAN_TIMEOUT_MS + "ms");
+                }
+            }
+            result.exitCode = process.exitValue();
+            metrics.recordSince(BlockSecOpsMetrics.Stage.CLI_RUNTIME, runStart);
 
-                @Override
-                public void processTerminated(@NotNull ProcessEvent event) {
-                    int exitCode = event.getExitCode();
-                    ApplicationManager.getApplication().invokeLater(() -> {
-                        handleScanResult(project, output.toString(), exitCode);
-                    });
+            // Decoding streams alongside the run; this is what is left of it once the CLI exits
+            long parseStart = System.nanoTime();
+            stdout.get(SCAN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            stderr.get(SCAN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            metrics.recordSince(BlockSecOpsMetrics.Stage.PARSE, parseStart);
+            metrics.recordOutputSize(result.output.length());
+            return result;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            ticket.cancel();
+            result.output.delete();
+            throw e;
+        }
+    }
+
+    private static void readOutput(Process process, String filePath, ScanResult result) {
+        BlockSecOpsScanEvents.OutputParsed event =
+                BlockSecOpsScanEvents.parsing(filePath, BlockSecOpsScanEvents.SCAN_FILE);
+        try (Reader in = result.output.capture(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            try {
+                BlockSecOpsSarifReader.read(new JsonReader(in), result.counts);
+            } catch (IOException | RuntimeException e) {
+                // Not SARIF (e.g. an error message); keep capturing it so the process can finish
+                result.parseError = e;
+                char[] buffer = new char[8192];
+                while (in.read(buffer) != -1) {
+                    // Captured by the reader
                 }
-            });
+            }
+        } catch (IOException e) {
+            result.parseError = e;
+        }
+        BlockSecOpsScanEvents.parsed(event, result.output.length(), result.counts.getTotal());
+    }
 
-            processHandler.startNotify();
-            showNotification(project, "Scanning " + filePath + "...", NotificationType.INFORMATION);
+    private static void readErrors(Process process, Deque<String> errors) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LOG.debug("blocksecops-cli: " + line);
+                synchronized (errors) {
+                    if (errors.size() == MAX_ERROR_LINES) {
+                        errors.removeFirst();
+                    }
+                    errors.addLast(line);
+                }
+            }
+        } catch (IOException ignored) {
+            // Process exited
+        }
+    }
 
-        } catch (Exception e) {
-            showNotification(project,
-                    "Failed to run blocksecops-cli: " + e.getMessage() +
-                            "\nMake sure blocksecops is installed and in your PATH.",
-                    NotificationType.ERROR);
+    private void handleScanResult(Project project, String filePath, ScanResult result) {
+        long start = System.nanoTime();
+        BlockSecOpsScanEvents.AnnotationsApplied event =
+                BlockSecOpsScanEvents.applying(filePath, BlockSecOpsScanEvents.SCAN_FILE, result.counts.getTotal());
+        try {
+            reportScanResult(project, result);
+        } finally {
+            BlockSecOpsMetrics.getInstance().recordSince(BlockSecOpsMetrics.Stage.APPLY, start);
+            BlockSecOpsScanEvents.applied(event);
         }
     }
 
-    private void handleScanResult(Project project, String output, int exitCode) {
-        if (exitCode == 0) {
+    private void reportScanResult(Project project, ScanResult result) {
+        int exitCode = result.exitCode;
+        if (exitCode != 0 && exitCode != 1) {
+            LOG.warn("blocksecops-cli exited with code " + exitCode + ":\n" + String.join("\n", result.errors));
+            showNotification(project, "Scan failed with exit code: " + exitCode, NotificationType.ERROR);
+            result.output.delete();
+            return;
+        }
+        if (result.parseError != null) {
+            LOG.warn("blocksecops-cli output is not valid SARIF", result.parseError);
+            showNotification(project, "Scan finished, but its results could not be read", NotificationType.ERROR);
+            result.output.delete();
+            return;
+        }
+
+        int count = result.counts.getTotal();
+        if (count == 0 && exitCode == 0) {
             showNotification(project, "Scan complete: No issues found", NotificationType.INFORMATION);
-        } else if (exitCode == 1) {
-            // Parse SARIF output and count findings
-            int count = countFindings(output);
-            showNotification(project,
-                    "Scan complete: " + count + " issue" + (count != 1 ? "s" : "") + " found",
+        } else if (count == 0) {
+            // Exit code 1 means the CLI found issues, even if none of them made it into the SARIF
+            showNotification(project, "Scan complete: issues found, but the results list none of them",
                     NotificationType.WARNING);
-
-            // Update tool window with results
-            BlockSecOpsResultsService resultsService = project.getService(BlockSecOpsResultsService.class);
-            if (resultsService != null) {
-                resultsService.updateResults(output);
-            }
         } else {
-            showNotification(project, "Scan failed with exit code: " + exitCode, NotificationType.ERROR);
+            showNotification(project,
+                    "Scan complete: " + count + " issue" + (count != 1 ? "s" : "") + " found (" + result.counts + ")",
+                    NotificationType.WARNING);
         }
-    }
 
-    private int countFindings(String sarifOutput) {
-        // Simple count of "ruleId" occurrences in SARIF output
-        int count = 0;
-        int index = 0;
-        while ((index = sarifOutput.indexOf("\"ruleId\"", index)) != -1) {
-            count++;
-            index++;
+        // Update tool window with results
+        BlockSecOpsResultsService resultsService = project.getService(BlockSecOpsResultsService.class);
+        if (resultsService != null) {
+            resultsService.updateResults(result.output);
+        } else {
+            result.output.delete();
         }
-        return count;
     }
 
     private void showNotification(Project project, String message, NotificationType type) {
@@ -126,4 +266,12 @@ public class BlockSecOpsScanFileAction extends AnAction {
                 .createNotification(message, type)
                 .notify(project);
     }
+
+    private static final class ScanResult {
+        final BlockSecOpsScanOutput output = new BlockSecOpsScanOutput();
+        final BlockSecOpsSarifReader.SeverityCounts counts = new BlockSecOpsSarifReader.SeverityCounts();
+        final Deque<String> errors = new ArrayDeque<>();
+        volatile Exception parseError;
+        int exitCode;
+    }
 }
@@ -0,0 +1,649 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Client for the BlockSecOps API that runs remote scans from the IDE, without a CLI process in between.
+ * <p>
+ * Every request goes through one shared {@link HttpClient}, so connections are kept alive between scans and,
+ * over HTTPS, scans of many files share a single HTTP/2 connection instead of each call paying for a new TCP
+ * and TLS handshake. A scan is the same upload, create, wait and results workflow as the CLI's
+ * {@code scan_file}, chained asynchronously so no thread waits while the API works. The upload is skipped when
+ * the contract map shared with the CLI, or the API's lookup by content hash, already has the file's content.
+ * Completion is pushed over the scan's server-sent event stream where the API offers one, and polled with
+ * jittered backoff otherwise. Results come back as a SARIF log shaped like the CLI's, so the rest of the plugin
+ * can't tell the difference.
+ * <p>
+ * The API URL and key are shared with the CLI: {@code BLOCKSECOPS_API_URL} or the {@code api_url} in
+ * {@code ~/.blocksecops/config.json}, and {@code BLOCKSECOPS_API_KEY} or the key file the CLI keeps when no
+ * keyring is available. Pointing {@code BLOCKSECOPS_API_URL} at {@code benchmarks/fake_api.py} runs scans
+ * against a local stub.
+ */
+public final class BlockSecOpsApiClient {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsApiClient.class);
+
+    private static final String DEFAULT_API_URL = "https://api.blocksecops.com";
+    private static final Path CONFIG_DIR = Paths.get(System.getProperty("user.home"), ".blocksecops");
+
+    // Same as the CLI's wait_for_scan: a quick first check, doubling up to the longest interval
+    static final long INITIAL_POLL_INTERVAL_MS = 250;
+    static final long MAX_POLL_INTERVAL_MS = 10000;
+
+    private static final List<String> FINAL_STATUSES = Arrays.asList("completed", "failed", "cancelled");
+
+    // Answers meaning the API has no event stream, as opposed to a failed request
+    private static final List<Integer> NO_EVENTS_STATUS_CODES = Arrays.asList(404, 405, 406, 501);
+
+    // Answers to scanning a remembered contract that mean it is gone from the server
+    private static final List<Integer> STALE_CONTRACT_STATUS_CODES = Arrays.asList(404, 410);
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient http;
+    private final URI fixedApiUrl;
+    private final String fixedApiKey;
+    private final BlockSecOpsContractMap contracts =
+            new BlockSecOpsContractMap(CONFIG_DIR.resolve(BlockSecOpsContractMap.FILE_NAME));
+
+    // Unknown until the first scan; FALSE once the API turned out not to stream scan events
+    private volatile Boolean scanEvents;
+
+    public BlockSecOpsApiClient() {
+        this(null, null);
+    }
+
+    /**
+     * A client for a fixed endpoint, e.g. a stub server; {@code null}s are resolved like the CLI does.
+     */
+    BlockSecOpsApiClient(@Nullable URI apiUrl, @Nullable String apiKey) {
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.fixedApiUrl = apiUrl;
+        this.fixedApiKey = apiKey;
+    }
+
+    public static BlockSecOpsApiClient getInstance() {
+        return ApplicationManager.getApplication().getService(BlockSecOpsApiClient.class);
+    }
+
+    /**
+     * Whether remote scans should use this client rather than the CLI.
+     */
+    static boolean isEnabled() {
+        BlockSecOpsSettings settings = BlockSecOpsSettings.getInstance();
+        return settings.isNativeApiClient() && !settings.isOfflineMode();
+    }
+
+    /**
+     * Upload {@code content} as {@code fileName} unless the API has it already, scan it and fetch the results.
+     *
+     * @param timeoutMs how long the scan may take on the server
+     * @return the results as a SARIF log, with the size of the results response; fails with {@link ApiError}
+     *         if the API rejected a request or the scan failed
+     */
+    CompletableFuture<ScanResults> scan(@NotNull String fileName, byte[] content, @NotNull String scanSource,
+                                        long timeoutMs) {
+        Endpoint endpoint;
+        try {
+            endpoint = resolveEndpoint();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        // Cancelling the returned future stops the polling too
+        CompletableFuture<ScanResults> results = new CompletableFuture<>();
+        createFileScan(endpoint, fileName, content, scanSource)
+                .thenCompose(scan -> awaitScan(endpoint, getString(scan, "id"), deadline, results))
+                .thenCompose(scan -> {
+                    if (!"completed".equals(getString(scan, "status"))) {
+                        String error = getString(scan, "error_message");
+                        throw new CompletionException(new ApiError(
+                                "Scan failed: " + (error != null ? error : "Unknown error"), -1));
+                    }
+                    HttpRequest request = get(endpoint, "/api/v1/scans/" + getString(scan, "id") + "/results");
+                    return receive(request).thenApply(response -> new ScanResults(
+                            toSarif(scan, parse(request, response).getAsJsonObject()),
+                            response.body().getBytes(StandardCharsets.UTF_8).length));
+                })
+                .whenComplete((scanResults, error) -> {
+                    if (error != null) {
+                        results.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error);
+                    } else {
+                        results.complete(scanResults);
+                    }
+                });
+        return results;
+    }
+
+    /**
+     * Create a scan of the content, uploading it only if the API doesn't have it yet: the contract is looked up
+     * in the contract map shared with the CLI, then by content hash on the API. A remembered contract the API
+     * no longer has is forgotten and the content uploaded again.
+     */
+    private CompletableFuture<JsonObject> createFileScan(Endpoint endpoint, String fileName, byte[] content,
+                                                         String scanSource) {
+        String digest = BlockSecOpsFindingsCache.sha256(content);
+        String remembered = contracts.lookup(endpoint.apiUrl, digest, fileName);
+        CompletableFuture<String> known = remembered != null
+                ? CompletableFuture.completedFuture(remembered)
+                : findContractByHash(endpoint, digest, fileName);
+
+        return known.thenCompose(contractId -> {
+            if (contractId == null) {
+                return uploadAndCreateScan(endpoint, fileName, content, digest, scanSource);
+            }
+            if (remembered == null) {
+                contracts.remember(endpoint.apiUrl, digest, fileName, contractId);
+            }
+            return createScan(endpoint, contractId, scanSource)
+                    .handle((scan, error) -> {
+                        if (error == null) {
+                            return CompletableFuture.completedFuture(scan);
+                        }
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (cause instanceof ApiError
+                                && STALE_CONTRACT_STATUS_CODES.contains(((ApiError) cause).statusCode)) {
+                            contracts.forget(endpoint.apiUrl, digest, fileName);
+                            return uploadAndCreateScan(endpoint, fileName, content, digest, scanSource);
+                        }
+                        return CompletableFuture.<JsonObject>failedFuture(cause);
+                    })
+                    .thenCompose(Function.identity());
+        });
+    }
+
+    private CompletableFuture<JsonObject> uploadAndCreateScan(Endpoint endpoint, String fileName, byte[] content,
+                                                              String digest, String scanSource) {
+        return upload(endpoint, fileName, content, digest).thenCompose(upload -> {
+            String contractId = getString(upload, "contract_id");
+            if (contractId != null) {
+                contracts.remember(endpoint.apiUrl, digest, fileName, contractId);
+            }
+            return createScan(endpoint, contractId, scanSource);
+        });
+    }
+
+    /**
+     * The contract already uploaded with this content and file name, or {@code null} when there is none or the
+     * API can't look contracts up by hash. Authentication errors still fail the scan.
+     */
+    private CompletableFuture<String> findContractByHash(Endpoint endpoint, String digest, String fileName) {
+        String path = "/api/v1/contracts/by-hash/" + digest
+                + "?filename=" + URLEncoder.encode(fileName, StandardCharsets.UTF_8);
+        return send(get(endpoint, path)).handle((contract, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (cause instanceof ApiError
+                        && (((ApiError) cause).statusCode == 401 || ((ApiError) cause).statusCode == 403)) {
+                    throw new CompletionException(cause);
+                }
+                return null;
+            }
+            return contract.isJsonObject() ? getString(contract.getAsJsonObject(), "id") : null;
+        });
+    }
+
+    private CompletableFuture<JsonObject> upload(Endpoint endpoint, String fileName, byte[] content, String digest) {
+        String boundary = "blocksecops-" + UUID.randomUUID();
+        String head = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"network\"\r\n\r\nethereum\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"content_sha256\"\r\n\r\n" + digest + "\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + fileName.replace("\"", "") + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.UTF_8);
+        byte[] tailBytes = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        // One sized body, so HTTP/1.1 servers get a Content-Length rather than a chunked upload
+        byte[] body = new byte[headBytes.length + content.length + tailBytes.length];
+        System.arraycopy(headBytes, 0, body, 0, headBytes.length);
+        System.arraycopy(content, 0, body, headBytes.length, content.length);
+        System.arraycopy(tailBytes, 0, body, headBytes.length + content.length, tailBytes.length);
+
+        HttpRequest request = builder(endpoint, "/api/v1/upload")
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return send(request).thenApply(JsonElement::getAsJsonObject);
+    }
+
+    private CompletableFuture<JsonObject> createScan(Endpoint endpoint, String contractId, String scanSource) {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("contract_id", contractId);
+        payload.addProperty("scan_source", scanSource);
+
+        HttpRequest request = builder(endpoint, "/api/v1/scans")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(payload.toString(), StandardCharsets.UTF_8))
+                .build();
+        return send(request).thenApply(JsonElement::getAsJsonObject);
+    }
+
+    /**
+     * Wait until the scan reaches a final status: pushed over its event stream when the API has one,
+     * polled otherwise or when the stream drops.
+     */
+    private CompletableFuture<JsonObject> awaitScan(Endpoint endpoint, String scanId, long deadline,
+                                                    CompletableFuture<?> caller) {
+        if (Boolean.FALSE.equals(scanEvents)) {
+            return pollScan(endpoint, scanId, deadline, caller, INITIAL_POLL_INTERVAL_MS);
+        }
+        return followScanEvents(endpoint, scanId, deadline, caller).thenCompose(scan -> scan != null
+                ? CompletableFuture.completedFuture(scan)
+                : pollScan(endpoint, scanId, deadline, caller, INITIAL_POLL_INTERVAL_MS));
+    }
+
+    /**
+     * Follow the scan's event stream.
+     *
+     * @return the scan once it is final, or {@code null} if there is no stream, it ends early or the wait is
+     *         over; request errors are left to the polling that follows, which reports them
+     */
+    private CompletableFuture<JsonObject> followScanEvents(Endpoint endpoint, String scanId, long deadline,
+                                                           CompletableFuture<?> caller) {
+        ScanEvents events = new ScanEvents();
+        HttpRequest request = builder(endpoint, "/api/v1/scans/" + scanId + "/events")
+                .setHeader("Accept", "text/event-stream")
+                .GET()
+                .build();
+        HttpResponse.BodyHandler<Void> handler = info -> {
+            String contentType = info.headers().firstValue("Content-Type").orElse("");
+            if (info.statusCode() == 200 && contentType.startsWith("text/event-stream")) {
+                scanEvents = Boolean.TRUE;
+                return HttpResponse.BodySubscribers.fromLineSubscriber(events, subscriber -> null,
+                        StandardCharsets.UTF_8, null);
+            }
+            if (info.statusCode() == 200 || NO_EVENTS_STATUS_CODES.contains(info.statusCode())) {
+                scanEvents = Boolean.FALSE;
+            }
+            // Polling starts once this body is read (see below), so the poll can reuse the connection
+            return HttpResponse.BodySubscribers.replacing(null);
+        };
+        http.sendAsync(request, handler).whenComplete((response, error) -> events.close());
+        caller.whenComplete((result, error) -> events.close());
+
+        // The request timeout only covers the headers; the stream itself runs until the deadline
+        return events.result
+                .orTimeout(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                .handle((scan, error) -> {
+                    events.close();
+                    return error == null ? scan : null;
+                });
+    }
+
+    /**
+     * Poll the scan until it reaches a final status, doubling the wait up to {@link #MAX_POLL_INTERVAL_MS}
+     * with jitter, so scans started together don't poll in lockstep. Waiting between polls is a delayed
+     * stage, not a sleeping thread.
+     */
+    private CompletableFuture<JsonObject> pollScan(Endpoint endpoint, String scanId, long deadline,
+                                                   CompletableFuture<?> caller, long intervalMs) {
+        return send(get(endpoint, "/api/v1/scans/" + scanId)).thenCompose(response -> {
+            JsonObject scan = response.getAsJsonObject();
+            if (FINAL_STATUSES.contains(getString(scan, "status"))) {
+                return CompletableFuture.completedFuture(scan);
+            }
+            if (caller.isDone()) {
+                throw new CancellationException("Scan " + scanId + " is no longer wanted");
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new CompletionException(new ApiError("Scan " + scanId + " timed out", -1));
+            }
+            long delay = Math.min(remaining, ThreadLocalRandom.current().nextLong(intervalMs / 2, intervalMs + 1));
+            return CompletableFuture.supplyAsync(() -> scanId,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(id -> pollScan(endpoint, id, deadline, caller,
+                            Math.min(intervalMs * 2, MAX_POLL_INTERVAL_MS)));
+        });
+    }
+
+    private CompletableFuture<JsonElement> send(HttpRequest request) {
+        return receive(request).thenApply(response -> parse(request, response));
+    }
+
+    /**
+     * Send a request, failing with {@link ApiError} if the API answers with an error status.
+     */
+    private CompletableFuture<HttpResponse<String>> receive(HttpRequest request) {
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    int status = response.statusCode();
+                    if (status == 401) {
+                        throw new CompletionException(new ApiError(
+                                "Authentication failed. Please run 'blocksecops auth login'.", status));
+                    }
+                    if (status == 403) {
+                        throw new CompletionException(new ApiError(
+                                "Access denied. Check your API key permissions.", status));
+                    }
+                    if (status >= 400) {
+                        throw new CompletionException(new ApiError(
+                                "API error: " + errorDetail(response.body()), status));
+                    }
+                    return response;
+                });
+    }
+
+    private static JsonElement parse(HttpRequest request, HttpResponse<String> response) {
+        if (response.statusCode() == 204 || response.body().isEmpty()) {
+            return new JsonObject();
+        }
+        try {
+            return JsonParser.parseString(response.body());
+        } catch (RuntimeException e) {
+            throw new CompletionException(new ApiError(
+                    "Unreadable response from " + request.uri().getPath(), response.statusCode()));
+        }
+    }
+
+    private HttpRequest get(Endpoint endpoint, String path) {
+        return builder(endpoint, path).GET().build();
+    }
+
+    private static HttpRequest.Builder builder(Endpoint endpoint, String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(endpoint.apiUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json")
+                .header("User-Agent", "blocksecops-intellij");
+        if (endpoint.apiKey != null) {
+            builder.header("X-API-Key", endpoint.apiKey);
+        }
+        return builder;
+    }
+
+    private static String errorDetail(String body) {
+        try {
+            JsonElement detail = JsonParser.parseString(body).getAsJsonObject().get("detail");
+            if (detail != null) {
+                return detail.isJsonPrimitive() ? detail.getAsString() : detail.toString();
+            }
+        } catch (RuntimeException ignored) {
+            // Not JSON
+        }
+        return body;
+    }
+
+    /**
+     * Build the SARIF log the CLI's formatter would for these results.
+     */
+    static JsonObject toSarif(@NotNull JsonObject scan, @NotNull JsonObject results) {
+        Map<String, JsonObject> rules = new LinkedHashMap<>();
+        JsonArray sarifResults = new JsonArray();
+
+        JsonElement vulnerabilities = results.get("vulnerabilities");
+        for (JsonElement element : vulnerabilities != null && vulnerabilities.isJsonArray()
+                ? vulnerabilities.getAsJsonArray() : new JsonArray()) {
+            if (!element.isJsonObject()) {
+                continue;
+            }
+            JsonObject vuln = element.getAsJsonObject();
+            String category = getString(vuln, "category");
+            String ruleId = category != null ? category : "BSO-" + getString(vuln, "id");
+            String title = getString(vuln, "title");
+            String description = getString(vuln, "description");
+            String severity = getString(vuln, "severity");
+            String level = BlockSecOpsSolidityDefend.toLevel(severity != null ? severity : "");
+
+            rules.computeIfAbsent(ruleId, id -> {
+                JsonObject rule = new JsonObject();
+                rule.addProperty("id", id);
+                rule.addProperty("name", title);
+                rule.add("shortDescription", text(title));
+                rule.add("fullDescription", text(description != null && !description.isEmpty() ? description : title));
+                JsonObject configuration = new JsonObject();
+                configuration.addProperty("level", level);
+                rule.add("defaultConfiguration", configuration);
+                return rule;
+            });
+
+            JsonObject result = new JsonObject();
+            result.addProperty("ruleId", ruleId);
+            result.addProperty("level", level);
+            result.add("message", text(description != null && !description.isEmpty() ? description : title));
+            JsonArray locations = new JsonArray();
+            String filePath = getString(vuln, "file_path");
+            if (filePath != null) {
+                JsonObject artifact = new JsonObject();
+                artifact.addProperty("uri", filePath);
+                JsonObject physical = new JsonObject();
+                physical.add("artifactLocation", artifact);
+                JsonElement line = vuln.get("line_number");
+                if (line != null && line.isJsonPrimitive()) {
+                    JsonObject region = new JsonObject();
+                    region.addProperty("startLine", line.getAsInt());
+                    physical.add("region", region);
+                }
+                JsonObject location = new JsonObject();
+                location.add("physicalLocation", physical);
+                locations.add(location);
+            }
+            result.add("locations", locations);
+            sarifResults.add(result);
+        }
+
+        JsonObject driver = new JsonObject();
+        driver.addProperty("name", "BlockSecOps");
+        driver.addProperty("informationUri", "https://blocksecops.io");
+        JsonArray ruleArray = new JsonArray();
+        rules.values().forEach(ruleArray::add);
+        driver.add("rules", ruleArray);
+        JsonObject tool = new JsonObject();
+        tool.add("driver", driver);
+
+        JsonObject invocation = new JsonObject();
+        invocation.addProperty("executionSuccessful", "completed".equals(getString(scan, "status")));
+        JsonArray invocations = new JsonArray();
+        invocations.add(invocation);
+
+        JsonObject run = new JsonObject();
+        run.add("tool", tool);
+        run.add("results", sarifResults);
+        run.add("invocations", invocations);
+        JsonArray runs = new JsonArray();
+        runs.add(run);
+
+        JsonObject log = new JsonObject();
+        log.addProperty("version", "2.1.0");
+        log.add("runs", runs);
+        return log;
+    }
+
+    private static JsonObject text(@Nullable String value) {
+        JsonObject message = new JsonObject();
+        message.addProperty("text", value != null ? value : "");
+        return message;
+    }
+
+    private static @Nullable String getString(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    private Endpoint resolveEndpoint() throws IOException {
+        String apiUrl = fixedApiUrl != null ? fixedApiUrl.toString() : System.getenv("BLOCKSECOPS_API_URL");
+        if (apiUrl == null || apiUrl.isEmpty()) {
+            apiUrl = readConfiguredUrl();
+        }
+        String apiKey = fixedApiKey != null ? fixedApiKey : System.getenv("BLOCKSECOPS_API_KEY");
+        if (apiKey == null || apiKey.isEmpty()) {
+            apiKey = readKeyFile();
+        }
+        if (apiKey == null) {
+            throw new ApiError(
+                    "No API key found. Please run 'blocksecops auth login' or set BLOCKSECOPS_API_KEY.", 401);
+        }
+        return new Endpoint(apiUrl.replaceAll("/+$", ""), apiKey);
+    }
+
+    private static String readConfiguredUrl() {
+        try (Reader in = Files.newBufferedReader(CONFIG_DIR.resolve("config.json"), StandardCharsets.UTF_8)) {
+            JsonElement url = JsonParser.parseReader(in).getAsJsonObject().get("api_url");
+            if (url != null && url.isJsonPrimitive()) {
+                return url.getAsString();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("No API URL configured: " + e.getMessage());
+        }
+        return DEFAULT_API_URL;
+    }
+
+    /**
+     * The key file the CLI writes when the system keyring is unavailable. Keys kept in the keyring aren't
+     * readable from here; those users set {@code BLOCKSECOPS_API_KEY} for the IDE instead.
+     */
+    private static @Nullable String readKeyFile() {
+        try {
+            String key = new String(Files.readAllBytes(CONFIG_DIR.resolve(".api_key")), StandardCharsets.UTF_8).trim();
+            return key.isEmpty() ? null : key;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a scan's server-sent events line by line. Each event carries the scan as JSON; the result
+     * completes with the first one in a final status, or {@code null} when the stream ends without one.
+     */
+    private static final class ScanEvents implements Flow.Subscriber<String> {
+        final CompletableFuture<JsonObject> result = new CompletableFuture<>();
+        private final StringBuilder data = new StringBuilder();
+        private volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (result.isDone()) {
+                subscription.cancel();
+            } else {
+                subscription.request(Long.MAX_VALUE);
+            }
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+                return;
+            }
+            if (!line.isEmpty() || data.length() == 0) {
+                // Event names, ids and keep-alive comments carry nothing we need
+                return;
+            }
+
+            JsonObject scan;
+            try {
+                scan = JsonParser.parseString(data.toString()).getAsJsonObject();
+            } catch (RuntimeException e) {
+                close();
+                return;
+            }
+            data.setLength(0);
+            if (FINAL_STATUSES.contains(getString(scan, "status"))) {
+                result.complete(scan);
+                close();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            close();
+        }
+
+        @Override
+        public void onComplete() {
+            close();
+        }
+
+        /**
+         * Stop reading, completing with {@code null} unless a final status came in first.
+         */
+        void close() {
+            result.complete(null);
+            Flow.Subscription current = subscription;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    private static final class Endpoint {
+        final String apiUrl;
+        final String apiKey;
+
+        Endpoint(String apiUrl, String apiKey) {
+            this.apiUrl = apiUrl;
+            this.apiKey = apiKey;
+        }
+    }
+
+    /**
+     * A scan's results, and the size of the API response they were built from.
+     */
+    static final class ScanResults {
+        final JsonObject sarif;
+        final long responseBytes;
+
+        ScanResults(@NotNull JsonObject sarif, long responseBytes) {
+            this.sarif = sarif;
+            this.responseBytes = responseBytes;
+        }
+    }
+
+    /**
+     * The API rejected a request, or the scan failed on the server.
+     */
+    static final class ApiError extends IOException {
+        final int statusCode;
+
+        ApiError(String message, int statusCode) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+    }
+}
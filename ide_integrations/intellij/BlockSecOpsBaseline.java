@@ -0,0 +1,387 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Project service holding the accepted findings, kept in {@code .blocksecops/baseline.json} under the project
+ * root so it can be committed and shared.
+ * <p>
+ * A finding is identified by a fingerprint of its rule, its source lines with whitespace collapsed and the
+ * contract and function around it. Line numbers are left out, so the fingerprint survives edits elsewhere in
+ * the file. The decoders check each result against the baseline while streaming and drop accepted ones
+ * before a {@code Finding} is built, so only new findings reach the caches and the editor.
+ */
+public final class BlockSecOpsBaseline {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsBaseline.class);
+
+    static final String FILE = ".blocksecops/baseline.json";
+
+    private final Project project;
+    private Set<String> fingerprints = Collections.emptySet();
+    private String id = "";
+    private long loadedModified = -1;
+
+    public BlockSecOpsBaseline(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static BlockSecOpsBaseline getInstance(@NotNull Project project) {
+        return project.getService(BlockSecOpsBaseline.class);
+    }
+
+    /**
+     * Matcher for results in a file with this text, or {@code null} when there is no baseline.
+     */
+    @Nullable Matcher matcher(@NotNull CharSequence text) {
+        Set<String> current = getFingerprints();
+        return current.isEmpty() ? null : new Matcher(current, text);
+    }
+
+    /**
+     * The results version with the baseline folded in, so cached findings filtered against another baseline
+     * are never served.
+     */
+    @NotNull String qualify(@NotNull String version) {
+        getFingerprints();
+        synchronized (this) {
+            return id.isEmpty() ? version : version + "+baseline-" + id;
+        }
+    }
+
+    boolean isEmpty() {
+        return getFingerprints().isEmpty();
+    }
+
+    /**
+     * Add fingerprints to the baseline and save it.
+     */
+    void accept(@NotNull Collection<String> accepted) throws IOException {
+        Set<String> updated = new TreeSet<>(getFingerprints());
+        updated.addAll(accepted);
+        save(updated);
+    }
+
+    /**
+     * Remove the baseline, so every finding shows again after the next scan.
+     */
+    void clear() throws IOException {
+        Path file = getFile();
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+        update(Collections.emptySet(), -1);
+    }
+
+    private void save(Set<String> updated) throws IOException {
+        Path file = getFile();
+        if (file == null) {
+            throw new IOException("Project has no base directory");
+        }
+        Files.createDirectories(file.getParent());
+
+        // Write to a sibling and move it in, so a reader never sees half a file
+        Path tmp = Files.createTempFile(file.getParent(), "baseline", ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                JsonWriter writer = new JsonWriter(out);
+                writer.setIndent("  ");
+                writer.beginObject();
+                writer.name("version").value(1);
+                writer.name("fingerprints").beginArray();
+                for (String fingerprint : updated) {
+                    writer.value(fingerprint);
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        update(updated, Files.getLastModifiedTime(file).toMillis());
+    }
+
+    /**
+     * The current fingerprints, re-reading the file when it changed on disk (e.g. after a pull).
+     */
+    private Set<String> getFingerprints() {
+        Path file = getFile();
+        long modified;
+        try {
+            modified = file != null ? Files.getLastModifiedTime(file).toMillis() : -1;
+        } catch (NoSuchFileException e) {
+            modified = -1;
+        } catch (IOException e) {
+            LOG.debug("Failed to check " + file + ": " + e.getMessage());
+            return currentFingerprints();
+        }
+
+        synchronized (this) {
+            if (modified == loadedModified) {
+                return fingerprints;
+            }
+        }
+        Set<String> loaded = modified < 0 ? Collections.emptySet() : load(file);
+        update(loaded, modified);
+        return loaded;
+    }
+
+    private synchronized Set<String> currentFingerprints() {
+        return fingerprints;
+    }
+
+    private void update(Set<String> updated, long modified) {
+        String previous;
+        String updatedId = updated.isEmpty() ? "" : BlockSecOpsFindingsCache.sha256(
+                String.join("\n", new TreeSet<>(updated)).getBytes(StandardCharsets.UTF_8)).substring(0, 12);
+        synchronized (this) {
+            previous = id;
+            fingerprints = Collections.unmodifiableSet(new HashSet<>(updated));
+            id = updatedId;
+            loadedModified = modified;
+        }
+        if (!previous.equals(updatedId)) {
+            // Project scan results were filtered against the old baseline
+            BlockSecOpsResultsService.getInstance(project).getIndex().clear();
+        }
+    }
+
+    private static Set<String> load(Path file) {
+        Set<String> loaded = new HashSet<>();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonReader reader = new JsonReader(in);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("fingerprints".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonToken.STRING) {
+                            loaded.add(reader.nextString());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            // A broken baseline hides nothing rather than everything
+            LOG.warn("Ignoring unreadable baseline " + file + ": " + e.getMessage());
+            return Collections.emptySet();
+        }
+        return loaded;
+    }
+
+    private @Nullable Path getFile() {
+        String basePath = project.getBasePath();
+        return basePath != null ? Paths.get(basePath, FILE) : null;
+    }
+
+    /**
+     * Fingerprint of a finding: rule, whitespace-normalized source lines and enclosing scope.
+     */
+    static @NotNull String fingerprint(@NotNull String ruleId, @NotNull String snippet, @NotNull String scope) {
+        return BlockSecOpsFindingsCache.sha256((ruleId + '\0' + scope + '\0' + snippet)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Fingerprints results in one file's text. The text is only scanned for contracts and functions the first
+     * time a result needs it.
+     */
+    static final class Matcher {
+        private final Set<String> fingerprints;
+        private final CharSequence text;
+        private int[] lineStarts;
+        private String[] scopes;
+
+        Matcher(@NotNull Set<String> fingerprints, @NotNull CharSequence text) {
+            this.fingerprints = fingerprints;
+            this.text = text;
+        }
+
+        /**
+         * Whether the result is in the baseline. Lines are 1-based, as in SARIF.
+         */
+        boolean isBaseline(@NotNull String ruleId, int startLine, int endLine) {
+            return fingerprints.contains(fingerprint(ruleId, startLine, endLine));
+        }
+
+        @NotNull String fingerprint(@NotNull String ruleId, int startLine, int endLine) {
+            if (lineStarts == null) {
+                index();
+            }
+            int first = Math.min(Math.max(0, startLine - 1), lineStarts.length - 1);
+            int last = Math.min(Math.max(first, endLine - 1), lineStarts.length - 1);
+            int end = last + 1 < lineStarts.length ? lineStarts[last + 1] : text.length();
+            return BlockSecOpsBaseline.fingerprint(ruleId, normalize(text.subSequence(lineStarts[first], end)),
+                    scopes[first]);
+        }
+
+        static String normalize(CharSequence snippet) {
+            StringBuilder normalized = new StringBuilder(snippet.length());
+            boolean space = false;
+            for (int i = 0; i < snippet.length(); i++) {
+                char c = snippet.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    space = normalized.length() > 0;
+                } else {
+                    if (space) {
+                        normalized.append(' ');
+                        space = false;
+                    }
+                    normalized.append(c);
+                }
+            }
+            return normalized.toString();
+        }
+
+        /**
+         * Record where each line starts and which contract and function it is in, by tracking braces after
+         * {@code contract}, {@code library}, {@code interface}, {@code function}, {@code modifier},
+         * {@code constructor}, {@code fallback} and {@code receive}, skipping comments and string literals.
+         */
+        private void index() {
+            List<Integer> starts = new ArrayList<>();
+            List<String> lineScopes = new ArrayList<>();
+            Deque<Scope> stack = new ArrayDeque<>();
+            String pending = null;
+            boolean pendingName = false;
+            int depth = 0;
+            // A line belongs to the scope it opens, so a finding on a function's signature is in that function
+            String lineScope = "";
+
+            starts.add(0);
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    lineScopes.add(lineScope);
+                    starts.add(i + 1);
+                    lineScope = describe(stack);
+                } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '/') {
+                    while (i + 1 < length && text.charAt(i + 1) != '\n') {
+                        i++;
+                    }
+                } else if (c == '/' && i + 1 < length && text.charAt(i + 1) == '*') {
+                    for (i += 2; i < length && !(text.charAt(i) == '*' && i + 1 < length
+                            && text.charAt(i + 1) == '/'); i++) {
+                        if (text.charAt(i) == '\n') {
+                            lineScopes.add(lineScope);
+                            starts.add(i + 1);
+                            lineScope = describe(stack);
+                        }
+                    }
+                    i++;
+                } else if (c == '"' || c == '\'') {
+                    for (i++; i < length && text.charAt(i) != c && text.charAt(i) != '\n'; i++) {
+                        if (text.charAt(i) == '\\') {
+                            i++;
+                        }
+                    }
+                } else if (Character.isJavaIdentifierStart(c)) {
+                    int start = i;
+                    while (i + 1 < length && Character.isJavaIdentifierPart(text.charAt(i + 1))) {
+                        i++;
+                    }
+                    String word = text.subSequence(start, i + 1).toString();
+                    if (pendingName) {
+                        pending = pending + " " + word;
+                        pendingName = false;
+                    } else {
+                        switch (word) {
+                            case "contract":
+                            case "library":
+                            case "interface":
+                            case "function":
+                            case "modifier":
+                                pending = word;
+                                pendingName = true;
+                                break;
+                            case "constructor":
+                            case "fallback":
+                            case "receive":
+                                if (pending == null) {
+                                    pending = word;
+                                }
+                                break;
+                            default:
+                        }
+                    }
+                } else if (c == '{') {
+                    depth++;
+                    if (pending != null) {
+                        stack.push(new Scope(pending, depth));
+                        lineScope = describe(stack);
+                        pending = null;
+                        pendingName = false;
+                    }
+                } else if (c == '}') {
+                    if (!stack.isEmpty() && stack.peek().depth == depth) {
+                        stack.pop();
+                    }
+                    depth = Math.max(0, depth - 1);
+                } else if (c == ';') {
+                    // A declaration without a body, e.g. in an interface
+                    pending = null;
+                    pendingName = false;
+                }
+            }
+
+            lineScopes.add(lineScope);
+
+            lineStarts = starts.stream().mapToInt(Integer::intValue).toArray();
+            scopes = lineScopes.toArray(new String[0]);
+        }
+
+        private static String describe(Deque<Scope> stack) {
+            StringBuilder scope = new StringBuilder();
+            for (java.util.Iterator<Scope> it = stack.descendingIterator(); it.hasNext(); ) {
+                if (scope.length() > 0) {
+                    scope.append('/');
+                }
+                scope.append(it.next().name);
+            }
+            return scope.toString();
+        }
+
+        private static final class Scope {
+            final String name;
+            final int depth;
+
+            Scope(String name, int depth) {
+                this.name = name;
+                this.depth = depth;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.blocksecops.intellij;
+
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Action to delete the baseline, so accepted findings are shown again.
+ */
+public class BlockSecOpsClearBaselineAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsClearBaselineAction.class);
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        if (project == null) {
+            return;
+        }
+
+        String message;
+        NotificationType type = NotificationType.INFORMATION;
+        try {
+            BlockSecOpsBaseline.getInstance(project).clear();
+            // Cached findings were filtered against the old baseline; rescanning shows everything again
+            DaemonCodeAnalyzer.getInstance(project).restart();
+            message = "Baseline cleared; all findings are shown again";
+        } catch (IOException e) {
+            LOG.warn("Failed to delete baseline", e);
+            message = "Failed to delete baseline: " + e.getMessage();
+            type = NotificationType.ERROR;
+        }
+
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("BlockSecOps Notifications")
+                .createNotification(message, type)
+                .notify(project);
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent event) {
+        event.getPresentation().setEnabled(event.getProject() != null);
+    }
+}
@@ -0,0 +1,220 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Map from contract content hashes to the contracts already uploaded for them, so an unchanged file is
+ * scanned without being uploaded again.
+ * <p>
+ * The map is {@code ~/.blocksecops/contracts.json}, the same file the CLI keeps, so a contract either of them
+ * uploaded is reused by the other. Entries are keyed by API, content hash and file name together, like the
+ * CLI's {@code entry_key}: findings are reported under the name the contract was uploaded with, so the same
+ * content under two names, or on two APIs, is two contracts. It is only a cache: writers replace the whole
+ * file atomically and the last one wins, and a contract the API no longer has is simply uploaded again.
+ */
+final class BlockSecOpsContractMap {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsContractMap.class);
+
+    static final String FILE_NAME = "contracts.json";
+
+    // Same as the CLI: oldest entries are dropped beyond this, keeping the file quick to read on every scan
+    private static final int MAX_ENTRIES = 5000;
+
+    private final Path file;
+    private Map<String, Entry> entries = Collections.emptyMap();
+    private FileTime loadedModified;
+
+    BlockSecOpsContractMap(@NotNull Path file) {
+        this.file = file;
+    }
+
+    /**
+     * The contract uploaded for this content under this name, if any.
+     */
+    synchronized @Nullable String lookup(@NotNull String apiUrl, @NotNull String digest, @NotNull String fileName) {
+        Entry entry = load().get(key(apiUrl, digest, fileName));
+        return entry != null ? entry.contractId : null;
+    }
+
+    /**
+     * Record the contract holding this content.
+     */
+    synchronized void remember(@NotNull String apiUrl, @NotNull String digest, @NotNull String fileName,
+                               @NotNull String contractId) {
+        Map<String, Entry> updated = new HashMap<>(load());
+        updated.put(key(apiUrl, digest, fileName),
+                new Entry(apiUrl, digest, fileName, contractId, System.currentTimeMillis() / 1000.0));
+        if (updated.size() > MAX_ENTRIES) {
+            List<Map.Entry<String, Entry>> oldestFirst = new ArrayList<>(updated.entrySet());
+            oldestFirst.sort(Comparator.comparingDouble(e -> e.getValue().savedAt));
+            oldestFirst.subList(0, oldestFirst.size() - MAX_ENTRIES).forEach(e -> updated.remove(e.getKey()));
+        }
+        save(updated);
+    }
+
+    /**
+     * Drop an entry whose contract the API no longer has.
+     */
+    synchronized void forget(@NotNull String apiUrl, @NotNull String digest, @NotNull String fileName) {
+        String key = key(apiUrl, digest, fileName);
+        Map<String, Entry> current = load();
+        if (current.containsKey(key)) {
+            Map<String, Entry> updated = new HashMap<>(current);
+            updated.remove(key);
+            save(updated);
+        }
+    }
+
+    /**
+     * URLs and hex digests have no spaces, and the file name comes last, so keys can't collide.
+     */
+    private static String key(String apiUrl, String digest, String fileName) {
+        return apiUrl + " " + digest + " " + fileName;
+    }
+
+    /**
+     * The entries, re-read when the CLI or another IDE changed the file.
+     */
+    private Map<String, Entry> load() {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(file);
+        } catch (NoSuchFileException e) {
+            entries = Collections.emptyMap();
+            loadedModified = null;
+            return entries;
+        } catch (IOException e) {
+            LOG.debug("Failed to check " + file + ": " + e.getMessage());
+            return entries;
+        }
+        if (modified.equals(loadedModified)) {
+            return entries;
+        }
+
+        Map<String, Entry> loaded = new HashMap<>();
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonElement contracts = JsonParser.parseReader(in).getAsJsonObject().get("contracts");
+            if (contracts != null && contracts.isJsonObject()) {
+                for (Map.Entry<String, JsonElement> e : contracts.getAsJsonObject().entrySet()) {
+                    // Keys are rebuilt from the entries, so version 1 files, keyed by hash alone, still read
+                    Entry entry = e.getValue().isJsonObject()
+                            ? Entry.fromJson(e.getKey(), e.getValue().getAsJsonObject()) : null;
+                    if (entry != null) {
+                        loaded.put(key(entry.apiUrl, entry.digest, entry.fileName), entry);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Failed to read " + file + ": " + e.getMessage());
+        }
+        entries = loaded;
+        loadedModified = modified;
+        return loaded;
+    }
+
+    /**
+     * Write the entries. A map that can't be written only costs uploads, so failures are logged and ignored.
+     */
+    private void save(Map<String, Entry> updated) {
+        entries = updated;
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a sibling and move it in, so a reader never sees half a file
+            Path tmp = Files.createTempFile(file.getParent(), ".contracts-", ".tmp");
+            try {
+                try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    JsonWriter writer = new JsonWriter(out);
+                    writer.beginObject();
+                    writer.name("version").value(2);
+                    writer.name("contracts").beginObject();
+                    for (Map.Entry<String, Entry> e : updated.entrySet()) {
+                        Entry entry = e.getValue();
+                        writer.name(e.getKey()).beginObject();
+                        writer.name("api_url").value(entry.apiUrl);
+                        writer.name("sha256").value(entry.digest);
+                        writer.name("filename").value(entry.fileName);
+                        writer.name("contract_id").value(entry.contractId);
+                        writer.name("saved_at").value(entry.savedAt);
+                        writer.endObject();
+                    }
+                    writer.endObject();
+                    writer.endObject();
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            loadedModified = Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            LOG.debug("Failed to write " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+        final String apiUrl;
+        final String digest;
+        final String fileName;
+        final String contractId;
+        final double savedAt;
+
+        Entry(String apiUrl, String digest, String fileName, String contractId, double savedAt) {
+            this.apiUrl = apiUrl;
+            this.digest = digest;
+            this.fileName = fileName;
+            this.contractId = contractId;
+            this.savedAt = savedAt;
+        }
+
+        /**
+         * The entry, or {@code null} if it can't be used: like the CLI's {@code _valid_entry}, every field must
+         * be a string and the contract id a UUID. {@code key} is the content hash of a version 1 entry.
+         */
+        static @Nullable Entry fromJson(String key, JsonObject json) {
+            String apiUrl = getString(json, "api_url");
+            String digest = json.has("sha256") ? getString(json, "sha256") : key;
+            String fileName = getString(json, "filename");
+            String contractId = getString(json, "contract_id");
+            if (apiUrl == null || digest == null || fileName == null || contractId == null) {
+                return null;
+            }
+            try {
+                UUID.fromString(contractId);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            JsonElement savedAt = json.get("saved_at");
+            return new Entry(apiUrl, digest, fileName, contractId,
+                    savedAt != null && savedAt.isJsonPrimitive() && savedAt.getAsJsonPrimitive().isNumber()
+                            ? savedAt.getAsDouble() : 0);
+        }
+
+        private static @Nullable String getString(JsonObject object, String name) {
+            JsonElement element = object.get(name);
+            return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.blocksecops.intellij;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.datatransfer.StringSelection;
+
+/**
+ * Action to copy the scan timing diagnostics to the clipboard, for bug reports.
+ */
+public class BlockSecOpsCopyDiagnosticsAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        copyDiagnostics(event.getProject());
+    }
+
+    static void copyDiagnostics(@Nullable Project project) {
+        CopyPasteManager.getInstance().setContents(
+                new StringSelection(BlockSecOpsMetrics.getInstance().getDiagnostics()));
+
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("BlockSecOps Notifications")
+                .createNotification("Scan diagnostics copied to the clipboard", NotificationType.INFORMATION)
+                .notify(project);
+    }
+}
@@ -0,0 +1,81 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable copy of a document's text captured in {@code collectInformation}.
+ * <p>
+ * The scan runs against this text rather than the saved file, and findings are mapped to offsets using
+ * this snapshot's own line table so they line up with what was actually scanned.
+ */
+final class BlockSecOpsDocumentSnapshot {
+
+    final Project project;
+    final String path;
+    final CharSequence text;
+    final long modificationStamp;
+    private int[] lineStarts;
+
+    BlockSecOpsDocumentSnapshot(@NotNull Project project, @NotNull String path,
+                                @NotNull CharSequence text, long modificationStamp) {
+        this.project = project;
+        this.path = path;
+        this.text = text;
+        this.modificationStamp = modificationStamp;
+    }
+
+    byte[] getBytes() {
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    int getTextLength() {
+        return text.length();
+    }
+
+    int getLineCount() {
+        return lineStarts().length;
+    }
+
+    int getLineStartOffset(int line) {
+        return lineStarts()[line];
+    }
+
+    /**
+     * End of the line, excluding the line separator.
+     */
+    int getLineEndOffset(int line) {
+        int[] starts = lineStarts();
+        if (line + 1 >= starts.length) {
+            return text.length();
+        }
+        int end = starts[line + 1] - 1;
+        if (end > starts[line] && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private synchronized int[] lineStarts() {
+        if (lineStarts == null) {
+            int count = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+
+            int[] starts = new int[count];
+            int line = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    starts[line++] = i + 1;
+                }
+            }
+            lineStarts = starts;
+        }
+        return lineStarts;
+    }
+}
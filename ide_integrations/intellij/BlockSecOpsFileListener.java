@@ -0,0 +1,37 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Records which Solidity files under the project were written since the last project scan.
+ */
+public final class BlockSecOpsFileListener implements BulkFileListener {
+
+    private final Project project;
+
+    public BlockSecOpsFileListener(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        String basePath = project.getBasePath();
+        if (basePath == null || project.isDisposed()) {
+            return;
+        }
+
+        BlockSecOpsResultsService resultsService = BlockSecOpsResultsService.getInstance(project);
+        for (VFileEvent event : events) {
+            // Created, moved and deleted files are found by comparing the project against the index
+            String path = event.getPath();
+            if (path.endsWith(".sol") && path.startsWith(basePath + "/")) {
+                resultsService.markDirty(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.blocksecops.intellij;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of parsed findings for the external annotator.
+ * <p>
+ * Entries are keyed on a hash of the scanned content plus the CLI version and scanner set, so identical
+ * content is never scanned twice. A per-file modification stamp map sits in front of it as a fast path
+ * that avoids re-hashing the file when nothing has changed.
+ */
+final class BlockSecOpsFindingsCache {
+
+    private final Map<Key, List<BlockSecOpsExternalAnnotator.Finding>> byContent;
+    private final Map<String, StampEntry> byPath;
+
+    BlockSecOpsFindingsCache(int maxEntries) {
+        this.byContent = lruMap(maxEntries);
+        this.byPath = lruMap(maxEntries);
+    }
+
+    /**
+     * Fast path: findings for a file whose modification stamp hasn't changed since it was cached.
+     */
+    synchronized @Nullable List<BlockSecOpsExternalAnnotator.Finding> getByStamp(
+            @NotNull String path, long stamp, @NotNull String cliVersion, @NotNull String scannerSet) {
+        StampEntry entry = byPath.get(path);
+        if (entry == null || entry.stamp != stamp
+                || !entry.key.cliVersion.equals(cliVersion) || !entry.key.scannerSet.equals(scannerSet)) {
+            return null;
+        }
+        return byContent.get(entry.key);
+    }
+
+    /**
+     * Findings for identical content, remembering the new stamp on a hit.
+     */
+    synchronized @Nullable List<BlockSecOpsExternalAnnotator.Finding> get(
+            @NotNull String path, long stamp, @NotNull Key key) {
+        List<BlockSecOpsExternalAnnotator.Finding> findings = byContent.get(key);
+        if (findings != null) {
+            byPath.put(path, new StampEntry(stamp, key));
+        }
+        return findings;
+    }
+
+    synchronized void put(@NotNull String path, long stamp, @NotNull Key key,
+                          @NotNull List<BlockSecOpsExternalAnnotator.Finding> findings) {
+        byContent.put(key, Collections.unmodifiableList(findings));
+        byPath.put(path, new StampEntry(stamp, key));
+    }
+
+    synchronized void clear() {
+        byContent.clear();
+        byPath.clear();
+    }
+
+    static Key key(@NotNull byte[] content, @NotNull String cliVersion, @NotNull String scannerSet) {
+        return new Key(sha256(content), cliVersion, scannerSet);
+    }
+
+    static String sha256(@NotNull byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static <K, V> Map<K, V> lruMap(int maxEntries) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static final class Key {
+        final String contentHash;
+        final String cliVersion;
+        final String scannerSet;
+
+        Key(String contentHash, String cliVersion, String scannerSet) {
+            this.contentHash = contentHash;
+            this.cliVersion = cliVersion;
+            this.scannerSet = scannerSet;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return contentHash.equals(other.contentHash)
+                    && cliVersion.equals(other.cliVersion)
+                    && scannerSet.equals(other.scannerSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contentHash, cliVersion, scannerSet);
+        }
+    }
+
+    private static final class StampEntry {
+        final long stamp;
+        final Key key;
+
+        StampEntry(long stamp, Key key) {
+            this.stamp = stamp;
+            this.key = key;
+        }
+    }
+}
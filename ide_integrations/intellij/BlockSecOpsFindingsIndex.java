@@ -0,0 +1,67 @@
+package com.blocksecops.intellij;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project scan results, partitioned per file.
+ * <p>
+ * Each partition remembers the hash of the content that was scanned, so a partition is only served while
+ * the file still has exactly that content.
+ */
+final class BlockSecOpsFindingsIndex {
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    /**
+     * Findings for a file, or {@code null} if it wasn't scanned or its content has changed since.
+     */
+    @Nullable List<BlockSecOpsExternalAnnotator.Finding> get(@NotNull String path, @NotNull String contentHash) {
+        Partition partition = partitions.get(path);
+        if (partition == null || !partition.contentHash.equals(contentHash)) {
+            return null;
+        }
+        return partition.findings;
+    }
+
+    void put(@NotNull String path, @NotNull String contentHash,
+             @NotNull List<BlockSecOpsExternalAnnotator.Finding> findings) {
+        partitions.put(path, new Partition(contentHash, Collections.unmodifiableList(findings)));
+    }
+
+    void remove(@NotNull String path) {
+        partitions.remove(path);
+    }
+
+    void clear() {
+        partitions.clear();
+    }
+
+    Set<String> getPaths() {
+        return Collections.unmodifiableSet(partitions.keySet());
+    }
+
+    int getFindingCount() {
+        int count = 0;
+        for (Partition partition : partitions.values()) {
+            count += partition.findings.size();
+        }
+        return count;
+    }
+
+    private static final class Partition {
+        final String contentHash;
+        final List<BlockSecOpsExternalAnnotator.Finding> findings;
+
+        Partition(String contentHash, List<BlockSecOpsExternalAnnotator.Finding> findings) {
+            this.contentHash = contentHash;
+            this.findings = findings;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Findings persisted across IDE restarts, in {@code <system dir>/blocksecops/findings.<generation>.dat}.
+ * <p>
+ * The file is an append-only log of records, each holding the findings for one (path, content hash,
+ * CLI version). Opening it only reads record headers; findings are decoded from the memory-mapped file
+ * when asked for. The latest record per path wins, and the file is compacted once superseded records make
+ * up most of it. Compaction writes the next generation rather than replacing the file, since a file that is
+ * still mapped can't be replaced on Windows; older generations are deleted once they can be. The file is
+ * capped at {@link #MAX_FILE_BYTES}, well inside what one mapping and {@code int} offsets can address. The
+ * store is a cache: if the file can't be used, or has no room, lookups just miss.
+ */
+public final class BlockSecOpsFindingsStore implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsFindingsStore.class);
+
+    private static final int MAGIC = 0x42534F46; // "BSOF"
+    // 2: findings from the direct engine carry the CLI's rule ids
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024;
+    private static final long MAX_FILE_BYTES = 256L * 1024 * 1024;
+
+    // E.g. findings.3.dat; plain findings.dat is generation 0
+    private static final Pattern GENERATION_NAME = Pattern.compile("(.+?)(?:\\.(\\d+))?\\.dat");
+
+    private final Path base;
+    private final String stem;
+    private Path file;
+    private long generation;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long size;
+    private long liveBytes;
+    private boolean opened;
+
+    public BlockSecOpsFindingsStore() {
+        this(Paths.get(PathManager.getSystemPath(), "blocksecops", "findings.dat"));
+    }
+
+    BlockSecOpsFindingsStore(Path base) {
+        this.base = base;
+        this.file = base;
+        Matcher name = GENERATION_NAME.matcher(base.getFileName().toString());
+        this.stem = name.matches() ? name.group(1) : base.getFileName().toString();
+    }
+
+    public static BlockSecOpsFindingsStore getInstance() {
+        return ApplicationManager.getApplication().getService(BlockSecOpsFindingsStore.class);
+    }
+
+    /**
+     * Stored findings for this exact content and CLI version, or {@code null}.
+     */
+    synchronized @Nullable List<BlockSecOpsExternalAnnotator.Finding> get(@NotNull String path,
+                                                                          @NotNull String contentHash,
+                                                                          @NotNull String cliVersion) {
+        if (!open()) {
+            return null;
+        }
+
+        Entry entry = entries.get(path);
+        if (entry == null || !entry.contentHash.equals(contentHash) || !entry.cliVersion.equals(cliVersion)) {
+            return null;
+        }
+
+        try {
+            return readFindings(entry);
+        } catch (IOException | RuntimeException e) {
+            // Unreadable record; forget it and scan again
+            LOG.warn("Dropping unreadable findings record for " + path, e);
+            entries.remove(path);
+            return null;
+        }
+    }
+
+    synchronized void put(@NotNull String path, @NotNull String contentHash, @NotNull String cliVersion,
+                          @NotNull List<BlockSecOpsExternalAnnotator.Finding> findings) {
+        if (!open()) {
+            return;
+        }
+
+        Entry current = entries.get(path);
+        if (current != null && current.contentHash.equals(contentHash) && current.cliVersion.equals(cliVersion)) {
+            return;
+        }
+
+        try {
+            byte[] record = encode(path, contentHash, cliVersion, findings);
+            if (size + record.length > MAX_FILE_BYTES) {
+                if (liveBytes < size / 2) {
+                    compact();
+                }
+                if (size + record.length > MAX_FILE_BYTES) {
+                    // Full of live records; this file's findings just aren't persisted
+                    LOG.debug("Findings store full, not storing " + path);
+                    return;
+                }
+            }
+            channel.write(ByteBuffer.wrap(record), size);
+            if (current != null) {
+                liveBytes -= current.length;
+            }
+            entries.put(path, new Entry(contentHash, cliVersion, size, record.length));
+            size += record.length;
+            liveBytes += record.length;
+
+            if (size > COMPACT_THRESHOLD_BYTES && liveBytes < size / 2) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOG.warn("Findings store disabled after a write failure", e);
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void dispose() {
+        close();
+    }
+
+    private boolean open() {
+        if (opened) {
+            return channel != null;
+        }
+        opened = true;
+
+        try {
+            Files.createDirectories(base.getParent());
+            selectGeneration();
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (!loadEntries()) {
+                // Another format or garbage; start over
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip(), 0);
+                entries.clear();
+                mapped = null;
+                size = HEADER_SIZE;
+                liveBytes = 0;
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Cannot open findings store " + file, e);
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Use the newest generation, deleting the ones a compaction left behind. One still mapped by another
+     * process can't be deleted on Windows and is tried again next time.
+     */
+    private void selectGeneration() throws IOException {
+        List<Path> generations = new ArrayList<>();
+        file = base;
+        generation = 0;
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(base.getParent(), stem + "*.dat")) {
+            for (Path sibling : siblings) {
+                Matcher name = GENERATION_NAME.matcher(sibling.getFileName().toString());
+                if (!name.matches() || !name.group(1).equals(stem)) {
+                    continue;
+                }
+                generations.add(sibling);
+                long found = name.group(2) != null ? Long.parseLong(name.group(2)) : 0;
+                if (found >= generation) {
+                    generation = found;
+                    file = sibling;
+                }
+            }
+        }
+        for (Path old : generations) {
+            if (!old.equals(file)) {
+                deleteQuietly(old);
+            }
+        }
+    }
+
+    private Path generationFile(long generation) {
+        return base.resolveSibling(stem + "." + generation + ".dat");
+    }
+
+    /**
+     * Read every record header into {@link #entries}, cutting off a partly written record at the end.
+     */
+    private boolean loadEntries() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE || fileSize > MAX_FILE_BYTES) {
+            return false;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return false;
+        }
+
+        long position = HEADER_SIZE;
+        try {
+            while (position + 4 <= fileSize) {
+                buffer.position((int) position);
+                int length = buffer.getInt();
+                if (length < 4 || position + length > fileSize) {
+                    break;
+                }
+                String path = readString(buffer);
+                String contentHash = readString(buffer);
+                String cliVersion = readString(buffer);
+
+                Entry previous = entries.put(path, new Entry(contentHash, cliVersion, position, length));
+                if (previous != null) {
+                    liveBytes -= previous.length;
+                }
+                liveBytes += length;
+                position += length;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // Torn record; everything before it is intact
+        }
+
+        if (position < fileSize) {
+            try {
+                channel.truncate(position);
+            } catch (IOException e) {
+                // Some platforms refuse to truncate a mapped file; the next append overwrites the tail
+            }
+        }
+        size = position;
+        mapped = buffer;
+        return true;
+    }
+
+    private List<BlockSecOpsExternalAnnotator.Finding> readFindings(Entry entry) throws IOException {
+        if (mapped == null || entry.offset + entry.length > mapped.capacity()) {
+            // Appended since the last mapping
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) entry.offset + 4);
+        readString(buffer);
+        readString(buffer);
+        readString(buffer);
+
+        int count = buffer.getInt();
+        List<BlockSecOpsExternalAnnotator.Finding> findings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            findings.add(new BlockSecOpsExternalAnnotator.Finding(
+                    readString(buffer), readString(buffer), readString(buffer),
+                    buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        return findings;
+    }
+
+    /**
+     * Write the live records into the next generation and switch to it. The old file is never replaced, so
+     * the mapping of it that may still be alive doesn't get in the way.
+     */
+    private void compact() throws IOException {
+        Path next = generationFile(generation + 1);
+        Path compacted = next.resolveSibling(next.getFileName() + ".tmp");
+        Map<String, Entry> moved = new HashMap<>();
+        long position = HEADER_SIZE;
+
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                ByteBuffer record = ByteBuffer.allocate(entry.length);
+                channel.read(record, entry.offset);
+                out.write(record.flip());
+                moved.put(item.getKey(), new Entry(entry.contentHash, entry.cliVersion, position, entry.length));
+                position += entry.length;
+            }
+        }
+
+        // A crash from here on leaves both generations; the next open takes the newer one
+        Files.move(compacted, next, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        mapped = null;
+        Path previous = file;
+        file = next;
+        generation++;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        deleteQuietly(previous);
+
+        entries.clear();
+        entries.putAll(moved);
+        size = position;
+        liveBytes = position - HEADER_SIZE;
+    }
+
+    private void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+            // Nothing left to do with it
+        }
+        channel = null;
+        mapped = null;
+        entries.clear();
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped somewhere (Windows); deleted on a later open
+            LOG.debug("Cannot delete old findings store " + path + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] encode(String path, String contentHash, String cliVersion,
+                                 List<BlockSecOpsExternalAnnotator.Finding> findings) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Length, patched below
+        writeString(out, path);
+        writeString(out, contentHash);
+        writeString(out, cliVersion);
+        out.writeInt(findings.size());
+        for (BlockSecOpsExternalAnnotator.Finding finding : findings) {
+            writeString(out, finding.ruleId);
+            writeString(out, finding.level);
+            writeString(out, finding.message);
+            out.writeInt(finding.startLine);
+            out.writeInt(finding.endLine);
+            out.writeInt(finding.startColumn);
+        }
+
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(record.length);
+        return record;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @Nullable String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+        final String contentHash;
+        final String cliVersion;
+        final long offset;
+        final int length;
+
+        Entry(String contentHash, String cliVersion, long offset, int length) {
+            this.contentHash = contentHash;
+            this.cliVersion = cliVersion;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
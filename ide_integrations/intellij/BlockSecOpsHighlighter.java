@@ -0,0 +1,201 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.colors.CodeInsightColors;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.impl.DocumentMarkupModel;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Shows findings as range highlighters in the document's markup model, updating them in place.
+ * <p>
+ * Each pass is diffed against the highlighters already in the document: unchanged findings keep their
+ * highlighter, and only new or vanished findings add or remove one. Highlighters follow edits, so they are
+ * matched by their current range. Tooltips are only formatted when first shown, on the error stripe or, through
+ * {@link BlockSecOpsTooltipListener}, when the code is hovered.
+ */
+final class BlockSecOpsHighlighter {
+
+    private static final Key<FindingKey> FINDING = Key.create("blocksecops.finding");
+    private static final Key<LazyTooltip> TOOLTIP = Key.create("blocksecops.tooltip");
+
+    private BlockSecOpsHighlighter() {
+    }
+
+    /**
+     * Make the document's highlighters match the findings. Must be called on the EDT.
+     */
+    static void apply(@NotNull Project project, @NotNull Document document,
+                      @NotNull List<BlockSecOpsExternalAnnotator.Finding> findings) {
+        MarkupModel markupModel = DocumentMarkupModel.forDocument(document, project, true);
+
+        Map<FindingKey, RangeHighlighter> current = new HashMap<>();
+        for (RangeHighlighter highlighter : markupModel.getAllHighlighters()) {
+            FindingKey key = highlighter.getUserData(FINDING);
+            if (key == null) {
+                continue;
+            }
+            if (!highlighter.isValid()) {
+                markupModel.removeHighlighter(highlighter);
+                continue;
+            }
+            FindingKey moved = key.at(highlighter.getStartOffset(), highlighter.getEndOffset());
+            if (current.putIfAbsent(moved, highlighter) != null) {
+                markupModel.removeHighlighter(highlighter);
+            }
+        }
+
+        int textLength = document.getTextLength();
+        for (BlockSecOpsExternalAnnotator.Finding finding : findings) {
+            int endOffset = Math.min(finding.endOffset, textLength);
+            int startOffset = Math.min(finding.startOffset, endOffset);
+            FindingKey key = new FindingKey(finding, startOffset, endOffset);
+
+            if (current.remove(key) != null) {
+                continue;
+            }
+
+            RangeHighlighter highlighter = markupModel.addRangeHighlighter(attributesFor(finding.level),
+                    startOffset, endOffset, HighlighterLayer.WARNING, HighlighterTargetArea.EXACT_RANGE);
+            LazyTooltip tooltip = new LazyTooltip(finding);
+            highlighter.putUserData(FINDING, key);
+            highlighter.putUserData(TOOLTIP, tooltip);
+            highlighter.setErrorStripeTooltip(tooltip);
+        }
+
+        // Whatever is left no longer has a finding
+        for (RangeHighlighter stale : current.values()) {
+            markupModel.removeHighlighter(stale);
+        }
+    }
+
+    /**
+     * Remove all BlockSecOps highlighters from the document, e.g. after switching back to annotations.
+     */
+    static void clear(@NotNull Project project, @NotNull Document document) {
+        MarkupModel markupModel = DocumentMarkupModel.forDocument(document, project, false);
+        if (markupModel == null) {
+            return;
+        }
+        for (RangeHighlighter highlighter : markupModel.getAllHighlighters()) {
+            if (highlighter.getUserData(FINDING) != null) {
+                markupModel.removeHighlighter(highlighter);
+            }
+        }
+    }
+
+    /**
+     * The tooltip HTML of the findings highlighted at {@code offset}, or {@code null} if there are none.
+     */
+    static @Nullable String tooltipAt(@NotNull Project project, @NotNull Document document, int offset) {
+        MarkupModel markupModel = DocumentMarkupModel.forDocument(document, project, false);
+        if (markupModel == null) {
+            return null;
+        }
+
+        StringBuilder html = null;
+        for (RangeHighlighter highlighter : markupModel.getAllHighlighters()) {
+            LazyTooltip tooltip = highlighter.getUserData(TOOLTIP);
+            if (tooltip == null || !highlighter.isValid()
+                    || offset < highlighter.getStartOffset() || offset >= highlighter.getEndOffset()) {
+                continue;
+            }
+            if (html == null) {
+                html = new StringBuilder();
+            } else {
+                html.append("<hr>");
+            }
+            html.append(tooltip);
+        }
+        return html != null ? html.toString() : null;
+    }
+
+    private static TextAttributesKey attributesFor(String level) {
+        switch (Objects.toString(level, "").toLowerCase()) {
+            case "error":
+                return CodeInsightColors.ERRORS_ATTRIBUTES;
+            case "warning":
+                return CodeInsightColors.WARNINGS_ATTRIBUTES;
+            default:
+                return CodeInsightColors.WEAK_WARNING_ATTRIBUTES;
+        }
+    }
+
+    /**
+     * Identity of a finding's highlighter: what it reports and where.
+     */
+    private static final class FindingKey {
+        final String ruleId;
+        final String level;
+        final String message;
+        final int startOffset;
+        final int endOffset;
+
+        FindingKey(BlockSecOpsExternalAnnotator.Finding finding, int startOffset, int endOffset) {
+            this(finding.ruleId, finding.level, finding.message, startOffset, endOffset);
+        }
+
+        private FindingKey(String ruleId, String level, String message, int startOffset, int endOffset) {
+            this.ruleId = ruleId;
+            this.level = level;
+            this.message = message;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        FindingKey at(int startOffset, int endOffset) {
+            return new FindingKey(ruleId, level, message, startOffset, endOffset);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FindingKey)) {
+                return false;
+            }
+            FindingKey other = (FindingKey) o;
+            return startOffset == other.startOffset && endOffset == other.endOffset
+                    && Objects.equals(ruleId, other.ruleId) && Objects.equals(level, other.level)
+                    && Objects.equals(message, other.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ruleId, level, message, startOffset, endOffset);
+        }
+    }
+
+    /**
+     * Tooltip object the markup model renders via {@link #toString()} when hovered.
+     */
+    private static final class LazyTooltip {
+        private final BlockSecOpsExternalAnnotator.Finding finding;
+        private String html;
+
+        LazyTooltip(BlockSecOpsExternalAnnotator.Finding finding) {
+            this.finding = finding;
+        }
+
+        @Override
+        public String toString() {
+            if (html == null) {
+                html = BlockSecOpsExternalAnnotator.formatTooltip(finding);
+            }
+            return html;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.blocksecops.intellij;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with power-of-two buckets.
+ * <p>
+ * Recording is a handful of atomic increments, so it is safe on any thread, including the EDT. Percentiles
+ * are reported as the upper bound of the bucket they fall in, i.e. to within a factor of two.
+ */
+final class BlockSecOpsHistogram {
+
+    private static final int BUCKETS = 64;
+
+    // Bucket i holds values in [2^(i-1), 2^i); bucket 0 holds 0, bucket 63 everything from 2^62
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long value) {
+        long clamped = Math.max(0, value);
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(clamped));
+        sum.add(clamped);
+        max.accumulateAndGet(clamped, Math::max);
+    }
+
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    static final class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long sum;
+        final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, capped at the largest value seen.
+         */
+        long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long upper = (1L << i) - 1;
+                    return Math.min(upper, max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.blocksecops.intellij;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Which project Solidity files import which, used to find the files affected by a change.
+ * <p>
+ * Relative imports are resolved against the importing file. Anything else ({@code @openzeppelin/...},
+ * {@code src/...}) depends on compiler remappings we don't know, so it matches any file whose path ends
+ * with the import path. An occasional false match only costs an extra rescan.
+ */
+final class BlockSecOpsImportGraph {
+
+    // import "A.sol"; import "A.sol" as A; import {X} from "A.sol"; import * as A from "A.sol";
+    private static final Pattern IMPORT = Pattern.compile(
+            "^\\s*import\\s+(?:[^\"';]*?\\s+from\\s+)?[\"']([^\"']+)[\"']", Pattern.MULTILINE);
+
+    private final Map<String, Set<String>> imports = new HashMap<>();
+
+    synchronized void update(@NotNull String path, @NotNull CharSequence text) {
+        Set<String> resolved = new HashSet<>();
+        Matcher matcher = IMPORT.matcher(text);
+        while (matcher.find()) {
+            resolved.add(resolve(path, matcher.group(1)));
+        }
+        imports.put(path, resolved);
+    }
+
+    synchronized void remove(@NotNull String path) {
+        imports.remove(path);
+    }
+
+    synchronized void clear() {
+        imports.clear();
+    }
+
+    /**
+     * Every file that imports one of the given files, directly or transitively, excluding the files themselves.
+     */
+    synchronized Set<String> getImporters(@NotNull Collection<String> paths) {
+        Set<String> importers = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(paths);
+
+        while (!pending.isEmpty()) {
+            String target = pending.poll();
+            for (Map.Entry<String, Set<String>> entry : imports.entrySet()) {
+                String importer = entry.getKey();
+                if (!paths.contains(importer) && !importers.contains(importer)
+                        && importsFile(entry.getValue(), target)) {
+                    importers.add(importer);
+                    pending.add(importer);
+                }
+            }
+        }
+        return importers;
+    }
+
+    private static boolean importsFile(Set<String> specs, String path) {
+        for (String spec : specs) {
+            if (path.equals(spec) || path.endsWith("/" + spec)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String resolve(String importer, String spec) {
+        if (!spec.startsWith("./") && !spec.startsWith("../")) {
+            return spec;
+        }
+        return Paths.get(importer).resolveSibling(spec).normalize().toString();
+    }
+}
@@ -1,74 +1,285 @@
 package com.blocksecops.intellij;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.CapturingProcessHandler;
-import com.intellij.execution.process.ProcessOutput;
+import com.intellij.execution.process.OSProcessUtil;
 import com.intellij.lang.annotation.AnnotationHolder;
 import com.intellij.lang.annotation.ExternalAnnotator;
 import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * External annotator that runs blocksecops-cli and displays results as editor annotations.
+ * Scans run against a snapshot of the document text, so findings track unsaved edits.
  */
-public class BlockSecOpsExternalAnnotator extends ExternalAnnotator<PsiFile, List<BlockSecOpsExternalAnnotator.Finding>> {
+public class BlockSecOpsExternalAnnotator extends ExternalAnnotator<BlockSecOpsDocumentSnapshot, List<BlockSecOpsExternalAnnotator.Finding>> {
 
-    private static final Gson GSON = new Gson();
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsExternalAnnotator.class);
+
+    private static final int SCAN_TIMEOUT_MS = 60000;
+
+    // Re-highlighting an unchanged file is answered from here instead of spawning a scan
+    private static final BlockSecOpsFindingsCache CACHE = new BlockSecOpsFindingsCache(256);
+
+    // The annotator always scans with the CLI's default scanner set
+    private static final String DEFAULT_SCANNERS = "default";
+
+    // At most one scan per file; a burst of edits within the window produces a single scan
+    private static final BlockSecOpsScanScheduler SCHEDULER = new BlockSecOpsScanScheduler(250);
 
     @Override
-    public @Nullable PsiFile collectInformation(@NotNull PsiFile file, @NotNull Editor editor, boolean hasErrors) {
-        if (!file.getName().endsWith(".sol")) {
+    public @Nullable BlockSecOpsDocumentSnapshot collectInformation(@NotNull PsiFile file, @NotNull Editor editor,
+                                                                    boolean hasErrors) {
+        if (!file.getName().endsWith(".sol") || file.getVirtualFile() == null) {
             return null;
         }
-        return file;
+
+        // Scan what the user sees, not the last saved bytes
+        Document document = editor.getDocument();
+        return new BlockSecOpsDocumentSnapshot(file.getProject(), file.getVirtualFile().getPath(),
+                document.getImmutableCharSequence(), document.getModificationStamp());
     }
 
     @Override
-    public @Nullable List<Finding> doAnnotate(PsiFile file) {
-        if (file == null || file.getVirtualFile() == null) {
+    public @Nullable List<Finding> doAnnotate(BlockSecOpsDocumentSnapshot snapshot) {
+        if (snapshot == null) {
+            return null;
+        }
+
+        // Supersedes (and tears down) any scan of an older snapshot of this file
+        BlockSecOpsScanScheduler.ScanTicket ticket = SCHEDULER.begin(snapshot.path);
+        try {
+            return annotate(snapshot, ticket);
+        } catch (ProcessCanceledException e) {
+            BlockSecOpsScanEvents.scanCancelled(snapshot.path, BlockSecOpsScanEvents.ANNOTATOR,
+                    "highlighting cancelled");
+            throw e;
+        } finally {
+            SCHEDULER.finish(snapshot.path, ticket);
+        }
+    }
+
+    private @Nullable List<Finding> annotate(BlockSecOpsDocumentSnapshot snapshot,
+                                             BlockSecOpsScanScheduler.ScanTicket ticket) {
+        BlockSecOpsScanServer server = BlockSecOpsScanServer.getInstance(snapshot.project);
+
+        // Engine mode skips the CLI, so don't start its server just to ask for a version
+        Path engine = BlockSecOpsSettings.getInstance().isDirectEngine()
+                ? BlockSecOpsSolidityDefend.findBinary() : null;
+        BlockSecOpsBaseline baseline = BlockSecOpsBaseline.getInstance(snapshot.project);
+        String version = engine != null ? BlockSecOpsSolidityDefend.getVersion() : server.getCliVersion();
+        // Findings stored under an unknown version would never match a later lookup, so they aren't cached
+        String cliVersion = version != null ? baseline.qualify(version) : null;
+
+        byte[] content = snapshot.getBytes();
+        BlockSecOpsFindingsCache.Key key = null;
+        if (cliVersion != null) {
+            List<Finding> cached = CACHE.getByStamp(
+                    snapshot.path, snapshot.modificationStamp, cliVersion, DEFAULT_SCANNERS);
+            if (cached != null) {
+                return cached;
+            }
+
+            key = BlockSecOpsFindingsCache.key(content, cliVersion, DEFAULT_SCANNERS);
+            cached = CACHE.get(snapshot.path, snapshot.modificationStamp, key);
+            if (cached != null) {
+                return cached;
+            }
+
+            // A project scan, or a scan from an earlier session, of this exact content already has the answer
+            List<Finding> indexed = BlockSecOpsResultsService.getInstance(snapshot.project)
+                    .findFindings(snapshot.path, key.contentHash, cliVersion);
+            if (indexed != null) {
+                List<Finding> findings = locateFindings(indexed, snapshot);
+                CACHE.put(snapshot.path, snapshot.modificationStamp, key, findings);
+                return findings;
+            }
+        }
+
+        if (!SCHEDULER.debounce(ticket)) {
+            return null;
+        }
+        BlockSecOpsScanEvents.scanRequested(snapshot.path, BlockSecOpsScanEvents.ANNOTATOR, content.length);
+
+        List<Finding> findings;
+        BlockSecOpsBaseline.Matcher matcher = baseline.matcher(snapshot.text);
+        try (BlockSecOpsScanGovernor.Permit permit = BlockSecOpsScanGovernor.getInstance().acquire(ticket)) {
+            findings = engine != null
+                    ? BlockSecOpsSolidityDefend.scan(engine, snapshot.path, content, SCAN_TIMEOUT_MS, ticket, matcher)
+                    : scan(server, snapshot, content, ticket, matcher);
+        } catch (CancellationException e) {
+            // Superseded while queued behind other scans
+            BlockSecOpsScanEvents.scanCancelled(snapshot.path, BlockSecOpsScanEvents.ANNOTATOR,
+                    "superseded while queued");
+            return null;
+        }
+        if (ticket.isCancelled()) {
+            BlockSecOpsScanEvents.scanCancelled(snapshot.path, BlockSecOpsScanEvents.ANNOTATOR,
+                    "cancelled or timed out");
+            return null;
+        }
+        if (findings == null) {
             return null;
         }
 
-        String filePath = file.getVirtualFile().getPath();
+        if (key == null) {
+            return locateFindings(findings, snapshot);
+        }
+        BlockSecOpsFindingsStore.getInstance().put(snapshot.path, key.contentHash, cliVersion, findings);
+        findings = locateFindings(findings, snapshot);
+        CACHE.put(snapshot.path, snapshot.modificationStamp, key, findings);
+        return findings;
+    }
+
+    private @Nullable List<Finding> scan(BlockSecOpsScanServer server, BlockSecOpsDocumentSnapshot snapshot,
+                                         byte[] content, BlockSecOpsScanScheduler.ScanTicket ticket,
+                                         @Nullable BlockSecOpsBaseline.Matcher baseline) {
+        try {
+            BlockSecOpsSarifReader.FileFindings handler =
+                    new BlockSecOpsSarifReader.FileFindings(snapshot.path, snapshot.project.getBasePath(), baseline);
+            boolean found = server.scan(snapshot.path, snapshot.text.toString(), SCAN_TIMEOUT_MS, ticket, handler,
+                    BlockSecOpsScanEvents.ANNOTATOR);
+            return found ? handler.findings : null;
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (CancellationException | BlockSecOpsServerProcess.ServerError e) {
+            // Superseded, or the scan itself failed and a one-shot process would fail the same way
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            // Server unavailable (e.g. an older CLI without server mode), fall back to a one-shot process
+            LOG.info("blocksecops server unavailable, scanning with a one-shot process: " + e.getMessage());
+        }
+
+        return runCliProcess(snapshot.path, content, ticket, baseline);
+    }
+
+    private @Nullable List<Finding> runCliProcess(String filePath, byte[] content,
+                                                  BlockSecOpsScanScheduler.ScanTicket ticket,
+                                                  @Nullable BlockSecOpsBaseline.Matcher baseline) {
         BlockSecOpsSettings settings = BlockSecOpsSettings.getInstance();
         String cliPath = settings.getCliPath();
 
+        // The snapshot is piped over stdin; findings are reported against the real path
         GeneralCommandLine commandLine = new GeneralCommandLine()
                 .withExePath(cliPath)
-                .withParameters("scan", "run", filePath, "--output", "sarif")
+                .withParameters("scan", "run", "-", "--stdin-filename", filePath, "--output", "sarif")
                 .withCharset(StandardCharsets.UTF_8);
+        if (settings.isOfflineMode()) {
+            commandLine.addParameter("--offline");
+        }
 
+        BlockSecOpsMetrics metrics = BlockSecOpsMetrics.getInstance();
+        long spawnStart = System.nanoTime();
+        BlockSecOpsScanEvents.ProcessStarted started =
+                BlockSecOpsScanEvents.processStarting(filePath, BlockSecOpsScanEvents.ANNOTATOR, "scan run");
+        Process process;
         try {
-            CapturingProcessHandler handler = new CapturingProcessHandler(commandLine);
-            ProcessOutput output = handler.runProcess(60000); // 60 second timeout
+            process = commandLine.createProcess();
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to run blocksecops-cli: " + e.getMessage());
+            return null;
+        }
+        long runStart = System.nanoTime();
+        metrics.recordSince(BlockSecOpsMetrics.Stage.SPAWN, spawnStart);
+        BlockSecOpsScanEvents.processStarted(started, process.pid());
+
+        // The CLI spawns SolidityDefend, so kill the whole tree rather than just the Python process
+        ticket.onCancel(() -> OSProcessUtil.killProcessTree(process));
+
+        // SARIF is decoded straight off stdout; stderr is drained so the process never blocks on it
+        Application application = ApplicationManager.getApplication();
+        application.executeOnPooledThread(() -> drain(process.getErrorStream()));
+        BlockSecOpsCountingReader stdout = new BlockSecOpsCountingReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        Future<List<Finding>> parsed = application.executeOnPooledThread(() -> {
+            try (Reader in = stdout) {
+                return BlockSecOpsSarifReader.readFindings(in, filePath, baseline);
+            }
+        });
 
-            if (output.getExitCode() == 0 || output.getExitCode() == 1) {
-                return parseFindings(output.getStdout(), filePath);
+        try {
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(content);
+            }
+
+            long deadline = System.currentTimeMillis() + SCAN_TIMEOUT_MS;
+            while (!process.waitFor(BlockSecOpsScanScheduler.POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                BlockSecOpsScanScheduler.checkCanceled(ticket);
+                if (ticket.isCancelled() || System.currentTimeMillis() > deadline) {
+                    ticket.cancel();
+                    return null;
+                }
             }
+
+            metrics.recordSince(BlockSecOpsMetrics.Stage.CLI_RUNTIME, runStart);
+
+            int exitCode = process.exitValue();
+            if (exitCode == 0 || exitCode == 1) {
+                // Decoding streams alongside the run; this is what is left of it once the CLI exits
+                long parseStart = System.nanoTime();
+                BlockSecOpsScanEvents.OutputParsed event =
+                        BlockSecOpsScanEvents.parsing(filePath, BlockSecOpsScanEvents.ANNOTATOR);
+                List<Finding> findings = parsed.get(SCAN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                metrics.recordSince(BlockSecOpsMetrics.Stage.PARSE, parseStart);
+                metrics.recordOutputSize(stdout.getCount());
+                BlockSecOpsScanEvents.parsed(event, stdout.getCount(), findings.size());
+                return findings;
+            }
+            LOG.warn("blocksecops-cli exited with code " + exitCode + " scanning " + filePath);
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ticket.cancel();
         } catch (Exception e) {
-            // Log but don't crash - annotation failures shouldn't block the user
+            // Annotation failures shouldn't block the user, but they shouldn't vanish either
+            LOG.warn("blocksecops scan of " + filePath + " failed", e);
+            ticket.cancel();
         }
 
         return null;
     }
 
+    private static void drain(InputStream stream) {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = stream) {
+            while (in.read(buffer) != -1) {
+                // Discard
+            }
+        } catch (IOException ignored) {
+            // Process exited
+        }
+    }
+
     @Override
     public void apply(@NotNull PsiFile file, List<Finding> findings, @NotNull AnnotationHolder holder) {
-        if (findings == null || findings.isEmpty()) {
+        if (findings == null) {
             return;
         }
 
@@ -77,22 +288,31 @@ public class BlockSecOpsExternalAnnotator extends ExternalAnnotator<PsiFile, Lis
             return;
         }
 
-        for (Finding finding : findings) {
-            int startLine = Math.max(0, finding.startLine - 1);
-            int endLine = Math.max(startLine, finding.endLine - 1);
-
-            if (startLine >= document.getLineCount()) {
-                continue;
-            }
+        long start = System.nanoTime();
+        BlockSecOpsScanEvents.AnnotationsApplied event = BlockSecOpsScanEvents.applying(
+                file.getVirtualFile() != null ? file.getVirtualFile().getPath() : file.getName(),
+                BlockSecOpsScanEvents.ANNOTATOR, findings.size());
+        try {
+            applyFindings(file, document, findings, holder);
+        } finally {
+            BlockSecOpsMetrics.getInstance().recordSince(BlockSecOpsMetrics.Stage.APPLY, start);
+            BlockSecOpsScanEvents.applied(event);
+        }
+    }
 
-            int startOffset = document.getLineStartOffset(startLine);
-            int endOffset = endLine < document.getLineCount()
-                    ? document.getLineEndOffset(endLine)
-                    : document.getTextLength();
+    private void applyFindings(PsiFile file, Document document, List<Finding> findings, AnnotationHolder holder) {
+        // Highlighter mode updates the markup model in place instead of rebuilding every annotation
+        if (BlockSecOpsSettings.getInstance().isIncrementalHighlighting()) {
+            BlockSecOpsHighlighter.apply(file.getProject(), document, findings);
+            return;
+        }
+        BlockSecOpsHighlighter.clear(file.getProject(), document);
 
-            if (finding.startColumn > 0) {
-                startOffset = Math.min(startOffset + finding.startColumn - 1, endOffset);
-            }
+        // Offsets were resolved against the scanned snapshot; clamp in case the document moved on since
+        int textLength = document.getTextLength();
+        for (Finding finding : findings) {
+            int endOffset = Math.min(finding.endOffset, textLength);
+            int startOffset = Math.min(finding.startOffset, endOffset);
 
             TextRange range = new TextRange(startOffset, endOffset);
             HighlightSeverity severity = mapSeverity(finding.level);
@@ -104,78 +324,33 @@ public class BlockSecOpsExternalAnnotator extends ExternalAnnotator<PsiFile, Lis
         }
     }
 
-    private List<Finding> parseFindings(String sarifJson, String filePath) {
-        List<Finding> findings = new ArrayList<>();
+    /**
+     * Resolve line/column positions to offsets using the snapshot's line table.
+     */
+    static List<Finding> locateFindings(List<Finding> findings, BlockSecOpsDocumentSnapshot snapshot) {
+        List<Finding> located = new ArrayList<>(findings.size());
 
-        try {
-            JsonObject sarif = GSON.fromJson(sarifJson, JsonObject.class);
-            JsonArray runs = sarif.getAsJsonArray("runs");
-
-            if (runs == null || runs.isEmpty()) {
-                return findings;
-            }
-
-            JsonObject run = runs.get(0).getAsJsonObject();
-            JsonArray results = run.getAsJsonArray("results");
-
-            if (results == null) {
-                return findings;
-            }
+        for (Finding finding : findings) {
+            int startLine = Math.max(0, finding.startLine - 1);
+            int endLine = Math.max(startLine, finding.endLine - 1);
 
-            for (JsonElement resultElement : results) {
-                JsonObject result = resultElement.getAsJsonObject();
-                Finding finding = parseFinding(result, filePath);
-                if (finding != null) {
-                    findings.add(finding);
-                }
+            if (startLine >= snapshot.getLineCount()) {
+                continue;
             }
-        } catch (Exception e) {
-            // Parsing failed, return empty list
-        }
 
-        return findings;
-    }
-
-    private Finding parseFinding(JsonObject result, String expectedFilePath) {
-        String ruleId = result.has("ruleId") ? result.get("ruleId").getAsString() : "unknown";
-        String level = result.has("level") ? result.get("level").getAsString() : "warning";
-        String message = "";
-
-        if (result.has("message") && result.getAsJsonObject("message").has("text")) {
-            message = result.getAsJsonObject("message").get("text").getAsString();
-        }
-
-        JsonArray locations = result.getAsJsonArray("locations");
-        if (locations == null || locations.isEmpty()) {
-            return null;
-        }
+            int startOffset = snapshot.getLineStartOffset(startLine);
+            int endOffset = endLine < snapshot.getLineCount()
+                    ? snapshot.getLineEndOffset(endLine)
+                    : snapshot.getTextLength();
 
-        JsonObject location = locations.get(0).getAsJsonObject();
-        JsonObject physicalLocation = location.getAsJsonObject("physicalLocation");
-
-        if (physicalLocation == null) {
-            return null;
-        }
-
-        // Check if this finding is for the current file
-        if (physicalLocation.has("artifactLocation")) {
-            String uri = physicalLocation.getAsJsonObject("artifactLocation").get("uri").getAsString();
-            uri = uri.replace("file://", "");
-            if (!uri.equals(expectedFilePath) && !expectedFilePath.endsWith(uri)) {
-                return null;
+            if (finding.startColumn > 0) {
+                startOffset = Math.min(startOffset + finding.startColumn - 1, endOffset);
             }
-        }
-
-        int startLine = 1, endLine = 1, startColumn = 0;
 
-        if (physicalLocation.has("region")) {
-            JsonObject region = physicalLocation.getAsJsonObject("region");
-            startLine = region.has("startLine") ? region.get("startLine").getAsInt() : 1;
-            endLine = region.has("endLine") ? region.get("endLine").getAsInt() : startLine;
-            startColumn = region.has("startColumn") ? region.get("startColumn").getAsInt() : 0;
+            located.add(finding.withRange(startOffset, endOffset));
         }
 
-        return new Finding(ruleId, level, message, startLine, endLine, startColumn);
+        return located;
     }
 
     private HighlightSeverity mapSeverity(String level) {
@@ -191,7 +366,7 @@ public class BlockSecOpsExternalAnnotator extends ExternalAnnotator<PsiFile, Lis
         }
     }
 
-    private String formatTooltip(Finding finding) {
+    static String formatTooltip(Finding finding) {
         return String.format("<b>%s</b><br>%s<br><i>Rule: %s</i>",
                 finding.level.toUpperCase(),
                 finding.message,
@@ -205,14 +380,27 @@ public class BlockSecOpsExternalAnnotator extends ExternalAnnotator<PsiFile, Lis
         final int startLine;
         final int endLine;
         final int startColumn;
+        final int startOffset;
+        final int endOffset;
 
         Finding(String ruleId, String level, String message, int startLine, int endLine, int startColumn) {
+            this(ruleId, level, message, startLine, endLine, startColumn, -1, -1);
+        }
+
+        private Finding(String ruleId, String level, String message, int startLine, int endLine, int startColumn,
+                        int startOffset, int endOffset) {
             this.ruleId = ruleId;
             this.level = level;
             this.message = message;
             this.startLine = startLine;
             this.endLine = endLine;
             this.startColumn = startColumn;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        Finding withRange(int startOffset, int endOffset) {
+            return new Finding(ruleId, level, message, startLine, endLine, startColumn, startOffset, endOffset);
         }
     }
 }
@@ -0,0 +1,85 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage timings of every scan the plugin runs, for the status-bar widget and diagnostics.
+ * <p>
+ * Keeping process start-up apart from CLI runtime tells a slow analysis from a slow machine. With streamed
+ * output, parsing overlaps the CLI run; {@link Stage#PARSE} is the decoding left once output arrives.
+ */
+public final class BlockSecOpsMetrics {
+
+    enum Stage {
+        SPAWN("Process spawn", true),
+        CLI_RUNTIME("CLI runtime", true),
+        OUTPUT_SIZE("Output size", false),
+        PARSE("Parse", true),
+        APPLY("Apply", true);
+
+        final String label;
+        final boolean timing;
+
+        Stage(String label, boolean timing) {
+            this.label = label;
+            this.timing = timing;
+        }
+    }
+
+    private final Map<Stage, BlockSecOpsHistogram> histograms = new EnumMap<>(Stage.class);
+
+    public BlockSecOpsMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new BlockSecOpsHistogram());
+        }
+    }
+
+    public static BlockSecOpsMetrics getInstance() {
+        return ApplicationManager.getApplication().getService(BlockSecOpsMetrics.class);
+    }
+
+    /**
+     * Record the time since {@code startNanos} (a {@link System#nanoTime()} value) for a timing stage.
+     */
+    void recordSince(@NotNull Stage stage, long startNanos) {
+        histograms.get(stage).record(System.nanoTime() - startNanos);
+    }
+
+    void recordOutputSize(long bytes) {
+        histograms.get(Stage.OUTPUT_SIZE).record(bytes);
+    }
+
+    BlockSecOpsHistogram.Snapshot snapshot(@NotNull Stage stage) {
+        return histograms.get(stage).snapshot();
+    }
+
+    /**
+     * Plain-text report of every stage and the scan governor, for pasting into a bug report.
+     */
+    public String getDiagnostics() {
+        StringBuilder report = new StringBuilder("BlockSecOps scan diagnostics\n");
+        report.append(String.format("%-16s %8s %10s %10s %10s %10s%n", "stage", "count", "mean", "p50", "p95", "max"));
+        for (Stage stage : Stage.values()) {
+            BlockSecOpsHistogram.Snapshot snapshot = snapshot(stage);
+            report.append(String.format("%-16s %8d %10s %10s %10s %10s%n", stage.label, snapshot.count,
+                    format(stage, snapshot.mean()), format(stage, snapshot.percentile(50)),
+                    format(stage, snapshot.percentile(95)), format(stage, snapshot.max)));
+        }
+        report.append("Scan governor: ").append(BlockSecOpsScanGovernor.getInstance().getMetrics()).append('\n');
+        report.append("CLI path: ").append(BlockSecOpsSettings.getInstance().getCliPath()).append('\n');
+        return report.toString();
+    }
+
+    static String format(Stage stage, long value) {
+        if (!stage.timing) {
+            return value < 1024 ? value + " B" : value / 1024 + " KB";
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(value);
+        return millis < 10000 ? millis + " ms" : String.format("%.1f s", millis / 1000.0);
+    }
+}
@@ -0,0 +1,85 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project service holding the latest scan results for the tool window and the annotator.
+ */
+public final class BlockSecOpsResultsService {
+
+    private final BlockSecOpsFindingsIndex index = new BlockSecOpsFindingsIndex();
+    private final BlockSecOpsImportGraph importGraph = new BlockSecOpsImportGraph();
+    private final Set<String> dirtyPaths = ConcurrentHashMap.newKeySet();
+    private BlockSecOpsScanOutput lastOutput;
+
+    public static BlockSecOpsResultsService getInstance(@NotNull Project project) {
+        return project.getService(BlockSecOpsResultsService.class);
+    }
+
+    /**
+     * Raw SARIF output of the last file scan, or the merged log of the last full project scan.
+     */
+    synchronized void updateResults(@NotNull BlockSecOpsScanOutput output) {
+        if (lastOutput != null) {
+            lastOutput.delete();
+        }
+        lastOutput = output;
+    }
+
+    synchronized @Nullable BlockSecOpsScanOutput getLastOutput() {
+        return lastOutput;
+    }
+
+    /**
+     * Per-file findings from the last project scan.
+     */
+    BlockSecOpsFindingsIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Findings for this exact content from the last project scan, or failing that from the persistent store.
+     */
+    @Nullable List<BlockSecOpsExternalAnnotator.Finding> findFindings(@NotNull String path, @NotNull String contentHash,
+                                                                      @NotNull String cliVersion) {
+        List<BlockSecOpsExternalAnnotator.Finding> findings = index.get(path, contentHash);
+        if (findings == null) {
+            findings = BlockSecOpsFindingsStore.getInstance().get(path, contentHash, cliVersion);
+        }
+        return findings;
+    }
+
+    /**
+     * Imports between the files in the index, for finding the files a change affects.
+     */
+    BlockSecOpsImportGraph getImportGraph() {
+        return importGraph;
+    }
+
+    /**
+     * Note that a Solidity file changed on disk since the last project scan.
+     */
+    void markDirty(@NotNull String path) {
+        dirtyPaths.add(path);
+    }
+
+    /**
+     * Take the files changed since the last call. Changes made while a scan runs stay for the next one.
+     */
+    Set<String> drainDirtyPaths() {
+        Set<String> drained = new HashSet<>();
+        for (Iterator<String> it = dirtyPaths.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+}
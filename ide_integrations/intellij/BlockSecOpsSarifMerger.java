@@ -0,0 +1,249 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the results of many scans into a single SARIF run.
+ * <p>
+ * Results arrive decoded, through the {@link BlockSecOpsSarifReader.Handler} of {@link #including}, so a
+ * scan's log is read once as a stream rather than parsed into a tree for the merge. The merged log keeps what
+ * the reader decodes (rule, level, message, location and severity), results without a location included, and
+ * the rule objects as the scans wrote them, unified by id. Results are deduplicated by rule, location and
+ * message.
+ * <p>
+ * Each scan contributes only the results for the file it scanned, minus those in that file's baseline, so
+ * baseline findings never reach the merged log. A result the CLI reports against an imported file comes in
+ * through that file's own scan instead, where its own baseline applies.
+ */
+final class BlockSecOpsSarifMerger {
+
+    private static final String SCHEMA =
+            "https://raw.githubusercontent.com/oasis-tcs/sarif-spec/master/Schemata/sarif-schema-2.1.0.json";
+
+    private static final Gson GSON = new Gson();
+
+    private final Map<String, Result> results = new LinkedHashMap<>();
+    private final Set<String> ruleIds = new LinkedHashSet<>();
+    private final Map<String, JsonObject> rules = new LinkedHashMap<>();
+
+    /**
+     * Add one decoded result.
+     *
+     * @param severity the result's own severity, {@code null} to leave it to its rule
+     * @return whether it was new
+     */
+    synchronized boolean add(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding,
+                             @Nullable String severity) {
+        ruleIds.add(finding.ruleId);
+        return results.putIfAbsent(fingerprint(uri, finding), new Result(uri, finding, severity)) == null;
+    }
+
+    /**
+     * Add a result without a location.
+     *
+     * @return whether it was new
+     */
+    synchronized boolean addUnlocated(@NotNull String ruleId, @NotNull String level, @NotNull String message,
+                                      @Nullable String severity) {
+        BlockSecOpsExternalAnnotator.Finding finding = new BlockSecOpsExternalAnnotator.Finding(
+                ruleId, level, message, 0, 0, 0);
+        ruleIds.add(ruleId);
+        return results.putIfAbsent(fingerprint(null, finding), new Result(null, finding, severity)) == null;
+    }
+
+    /**
+     * Add a rule object; the first one seen for an id is kept.
+     */
+    synchronized void addRule(@NotNull JsonObject rule) {
+        JsonElement id = rule.get("id");
+        if (id != null && id.isJsonPrimitive()) {
+            ruleIds.add(id.getAsString());
+            rules.putIfAbsent(id.getAsString(), rule);
+        }
+    }
+
+    /**
+     * A handler for one scan's log that adds the results {@code file} accepts, and doesn't have in its
+     * baseline, to the merge and passes them on to it. Results without a location are only added to the merge.
+     */
+    @NotNull BlockSecOpsSarifReader.Handler including(@NotNull BlockSecOpsSarifReader.Handler file) {
+        return new BlockSecOpsSarifReader.Handler() {
+            @Override
+            public boolean accept(@Nullable String uri) {
+                return file.accept(uri);
+            }
+
+            // Checked by the reader before a result is built, so baseline results never get to the merge
+            @Override
+            public boolean isBaseline(@Nullable String uri, @NotNull String ruleId, int startLine, int endLine) {
+                return file.isBaseline(uri, ruleId, startLine, endLine);
+            }
+
+            @Override
+            public void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding) {
+                finding(uri, finding, null);
+            }
+
+            @Override
+            public void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding,
+                                @Nullable String severity) {
+                add(uri, finding, severity);
+                file.finding(uri, finding);
+            }
+
+            @Override
+            public void unlocated(@NotNull String ruleId, @NotNull String level, @NotNull String message,
+                                  @Nullable String severity) {
+                addUnlocated(ruleId, level, message, severity);
+            }
+
+            // Only for the result properties and unlocated results; the counts themselves aren't needed
+            @Override
+            public boolean wantsSeverity() {
+                return true;
+            }
+
+            @Override
+            public boolean wantsRules() {
+                return true;
+            }
+
+            @Override
+            public void rule(@NotNull JsonObject rule) {
+                addRule(rule);
+            }
+        };
+    }
+
+    synchronized int getResultCount() {
+        return results.size();
+    }
+
+    /**
+     * Write the merged log as one run.
+     */
+    synchronized void write(@NotNull Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("$schema").value(SCHEMA);
+        writer.name("version").value("2.1.0");
+        writer.name("runs").beginArray().beginObject();
+        writer.name("tool").beginObject().name("driver").beginObject();
+        writer.name("name").value("BlockSecOps");
+        writer.name("rules").beginArray();
+        for (String id : ruleIds) {
+            JsonObject rule = rules.get(id);
+            if (rule != null) {
+                GSON.toJson(rule, writer);
+            } else {
+                writer.beginObject().name("id").value(id).endObject();
+            }
+        }
+        writer.endArray();
+        writer.endObject().endObject();
+        // Results one at a time, so a large merge isn't copied into a tree first
+        writer.name("results").beginArray();
+        for (Result result : results.values()) {
+            result.write(writer);
+        }
+        writer.endArray();
+        writer.endObject().endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * The merged log as scan output for {@link BlockSecOpsResultsService}.
+     */
+    @NotNull BlockSecOpsScanOutput toOutput() throws IOException {
+        BlockSecOpsScanOutput output = new BlockSecOpsScanOutput();
+        try (Writer out = output.writer()) {
+            write(out);
+        }
+        return output;
+    }
+
+    /**
+     * Number of results in a SARIF log, over all runs.
+     */
+    static int countResults(@NotNull JsonObject log) {
+        int count = 0;
+        for (JsonElement run : getArray(log, "runs")) {
+            if (run.isJsonObject()) {
+                count += getArray(run.getAsJsonObject(), "results").size();
+            }
+        }
+        return count;
+    }
+
+    static @NotNull String fingerprint(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding) {
+        String key = finding.ruleId + '\0' + uri + '\0' + finding.startLine + ':' + finding.startColumn
+                + '\0' + finding.message;
+        return BlockSecOpsFindingsCache.sha256(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonArray getArray(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return element != null && element.isJsonArray() ? element.getAsJsonArray() : new JsonArray();
+    }
+
+    private static final class Result {
+        final String uri;
+        final BlockSecOpsExternalAnnotator.Finding finding;
+        final String severity;
+
+        /**
+         * @param finding the decoded result; a start line of 0 marks a result without a location
+         */
+        Result(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding,
+               @Nullable String severity) {
+            this.uri = uri;
+            this.finding = finding;
+            this.severity = severity;
+        }
+
+        /**
+         * Locations first, like the CLI, so the merged log streams as well as the per-file ones.
+         */
+        void write(JsonWriter writer) throws IOException {
+            writer.beginObject();
+            writer.name("locations").beginArray();
+            if (finding.startLine > 0) {
+                writer.beginObject().name("physicalLocation").beginObject();
+                if (uri != null) {
+                    writer.name("artifactLocation").beginObject().name("uri").value(uri).endObject();
+                }
+                writer.name("region").beginObject();
+                writer.name("startLine").value(finding.startLine);
+                writer.name("endLine").value(finding.endLine);
+                if (finding.startColumn > 0) {
+                    writer.name("startColumn").value(finding.startColumn);
+                }
+                writer.endObject();
+                writer.endObject().endObject();
+            }
+            writer.endArray();
+            writer.name("ruleId").value(finding.ruleId);
+            writer.name("level").value(finding.level);
+            writer.name("message").beginObject().name("text").value(finding.message).endObject();
+            if (severity != null) {
+                writer.name("properties").beginObject().name("severity").value(severity).endObject();
+            }
+            writer.endObject();
+        }
+    }
+}
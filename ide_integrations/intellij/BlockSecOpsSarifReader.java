@@ -0,0 +1,637 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Streaming SARIF decoder.
+ * <p>
+ * Walks the log with a {@link JsonReader} instead of building a JSON tree, so memory use stays flat no
+ * matter how large the CLI output is. Results are handed to a {@link Handler} as {@code Finding}s; results
+ * the handler doesn't want are dropped before a {@code Finding} is built. The CLI writes a result's
+ * {@code locations} first, so for results of other files the rule, level and message are skipped unread.
+ */
+final class BlockSecOpsSarifReader {
+
+    private BlockSecOpsSarifReader() {
+    }
+
+    /**
+     * Receives decoded results.
+     */
+    interface Handler {
+        /**
+         * Whether to keep a result reported against {@code uri} ({@code null} if it has no artifact location).
+         */
+        boolean accept(@Nullable String uri);
+
+        void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding);
+
+        /**
+         * Receives a kept result with a location, along with its own {@code properties.severity} ({@code null}
+         * if it has none, or if {@link #wantsSeverity} is off). Passes it on to the two-argument
+         * {@code finding} by default.
+         */
+        default void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding,
+                             @Nullable String severity) {
+            finding(uri, finding);
+        }
+
+        /**
+         * Receives a kept result without a location. Only called if {@link #wantsSeverity} is on; otherwise
+         * such results are skipped unread.
+         */
+        default void unlocated(@NotNull String ruleId, @NotNull String level, @NotNull String message,
+                               @Nullable String severity) {
+        }
+
+        /**
+         * Whether a result is in the {@link BlockSecOpsBaseline} of accepted findings, in which case it is
+         * dropped before a {@code Finding} is built.
+         */
+        default boolean isBaseline(@Nullable String uri, @NotNull String ruleId, int startLine, int endLine) {
+            return false;
+        }
+
+        /**
+         * Whether to decode severities for {@link #severity}. Off by default, so reading one file's findings
+         * skips result properties and rule metadata.
+         */
+        default boolean wantsSeverity() {
+            return false;
+        }
+
+        /**
+         * Receives the severity of {@code count} kept results, including results without a location, which
+         * never reach {@link #finding}. The severity is the result's {@code properties.severity}, else its
+         * rule's, else one derived from the SARIF level.
+         */
+        default void severity(@NotNull String severity, int count) {
+        }
+
+        /**
+         * Whether to decode the run's rules for {@link #rule}.
+         */
+        default boolean wantsRules() {
+            return false;
+        }
+
+        /**
+         * Receives each object of {@code tool.driver.rules}, as written.
+         */
+        default void rule(@NotNull JsonObject rule) {
+        }
+    }
+
+    /**
+     * Decode the findings reported against {@code filePath} from a complete SARIF document.
+     */
+    static List<BlockSecOpsExternalAnnotator.Finding> readFindings(@NotNull Reader in, @NotNull String filePath)
+            throws IOException {
+        return readFindings(in, filePath, null);
+    }
+
+    /**
+     * Decode the findings reported against {@code filePath}, leaving out those in the baseline.
+     */
+    static List<BlockSecOpsExternalAnnotator.Finding> readFindings(@NotNull Reader in, @NotNull String filePath,
+                                                                   @Nullable BlockSecOpsBaseline.Matcher baseline)
+            throws IOException {
+        return readFindings(in, filePath, null, baseline);
+    }
+
+    /**
+     * Decode the findings reported against {@code filePath}, with relative URIs also resolved against
+     * {@code basePath}, the directory the CLI ran in.
+     */
+    static List<BlockSecOpsExternalAnnotator.Finding> readFindings(@NotNull Reader in, @NotNull String filePath,
+                                                                   @Nullable String basePath,
+                                                                   @Nullable BlockSecOpsBaseline.Matcher baseline)
+            throws IOException {
+        FileFindings handler = new FileFindings(filePath, basePath, baseline);
+        JsonReader reader = new JsonReader(in);
+        read(reader, handler);
+        return handler.findings;
+    }
+
+    /**
+     * Decode a SARIF log that was already parsed into a tree. The tree is written out and read back, as Gson's
+     * reader over a tree is internal API.
+     */
+    static void read(@NotNull JsonObject log, @NotNull Handler handler) throws IOException {
+        read(new JsonReader(new StringReader(log.toString())), handler);
+    }
+
+    /**
+     * Decode the SARIF log object at the reader's current position.
+     */
+    static void read(@NotNull JsonReader reader, @NotNull Handler handler) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("runs".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readRun(reader, handler);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readRun(JsonReader reader, Handler handler) throws IOException {
+        RunSeverities severities = handler.wantsSeverity() ? new RunSeverities() : null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("results".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readResult(reader, handler, severities);
+                }
+                reader.endArray();
+            } else if ("tool".equals(name) && (severities != null || handler.wantsRules())
+                    && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readTool(reader, handler, severities);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (severities != null) {
+            severities.flush(handler);
+        }
+    }
+
+    /**
+     * Reads {@code tool.driver.rules[].properties.severity}, which the CLI sets on every rule, and the rules
+     * themselves if the handler wants them.
+     */
+    private static void readTool(JsonReader reader, Handler handler, @Nullable RunSeverities severities)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("driver".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("rules".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            readRule(reader, handler, severities);
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readRule(JsonReader reader, Handler handler, @Nullable RunSeverities severities)
+            throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        if (handler.wantsRules()) {
+            // Rules are few and small, so the whole object is kept
+            JsonObject rule = JsonParser.parseReader(reader).getAsJsonObject();
+            handler.rule(rule);
+            if (severities != null) {
+                JsonElement properties = rule.get("properties");
+                String id = getString(rule, "id");
+                String severity = properties != null && properties.isJsonObject()
+                        ? getString(properties.getAsJsonObject(), "severity") : null;
+                if (id != null && severity != null) {
+                    severities.byRule.put(id, severity.toLowerCase(Locale.ROOT));
+                }
+            }
+            return;
+        }
+        if (severities == null) {
+            reader.skipValue();
+            return;
+        }
+
+        String id = null;
+        String severity = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = nextString(reader, null);
+                    break;
+                case "properties":
+                    severity = readSeverity(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id != null && severity != null) {
+            severities.byRule.put(id, severity);
+        }
+    }
+
+    private static void readResult(JsonReader reader, Handler handler, @Nullable RunSeverities severities)
+            throws IOException {
+        String ruleId = "unknown";
+        String level = "warning";
+        String message = "";
+        String severity = null;
+        Location location = null;
+        boolean rejected = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (rejected) {
+                // Another file's result: skip the rest without building strings for it
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "ruleId":
+                    ruleId = nextString(reader, ruleId);
+                    break;
+                case "level":
+                    level = nextString(reader, level);
+                    break;
+                case "message":
+                    message = readMessage(reader, message);
+                    break;
+                case "locations":
+                    location = readFirstLocation(reader);
+                    // A result without a location still counts towards the severities
+                    rejected = location != null ? !handler.accept(location.uri) : severities == null;
+                    break;
+                case "properties":
+                    if (severities != null) {
+                        severity = readSeverity(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (rejected || (location != null
+                && handler.isBaseline(location.uri, ruleId, location.startLine, location.endLine))) {
+            return;
+        }
+
+        if (severities != null) {
+            if (severity != null) {
+                handler.severity(severity, 1);
+            } else {
+                severities.pending(ruleId, level);
+            }
+        }
+        if (location != null) {
+            handler.finding(location.uri, new BlockSecOpsExternalAnnotator.Finding(
+                    ruleId, level, message, location.startLine, location.endLine, location.startColumn), severity);
+        } else if (severities != null) {
+            handler.unlocated(ruleId, level, message, severity);
+        }
+    }
+
+    /**
+     * The {@code severity} of a result's or rule's {@code properties} object, lower-cased.
+     */
+    private static @Nullable String readSeverity(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String severity = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("severity".equals(reader.nextName())) {
+                severity = nextString(reader, null);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return severity != null ? severity.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private static String readMessage(JsonReader reader, String fallback) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return fallback;
+        }
+
+        String text = fallback;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("text".equals(reader.nextName())) {
+                text = nextString(reader, fallback);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return text;
+    }
+
+    /**
+     * Only the first location is used; a result without a physical location only counts towards severities.
+     */
+    private static @Nullable Location readFirstLocation(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+
+        Location location = null;
+        reader.beginArray();
+        if (reader.hasNext()) {
+            location = readLocation(reader);
+        }
+        while (reader.hasNext()) {
+            reader.skipValue();
+        }
+        reader.endArray();
+        return location;
+    }
+
+    private static @Nullable Location readLocation(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        Location location = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("physicalLocation".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                location = readPhysicalLocation(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return location;
+    }
+
+    private static Location readPhysicalLocation(JsonReader reader) throws IOException {
+        Location location = new Location();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("artifactLocation".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("uri".equals(reader.nextName())) {
+                        String uri = nextString(reader, null);
+                        location.uri = uri != null ? uri.replace("file://", "") : null;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("region".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readRegion(reader, location);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return location;
+    }
+
+    private static void readRegion(JsonReader reader, Location location) throws IOException {
+        int endLine = -1;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "startLine":
+                    location.startLine = nextInt(reader, 1);
+                    break;
+                case "endLine":
+                    endLine = nextInt(reader, -1);
+                    break;
+                case "startColumn":
+                    location.startColumn = nextInt(reader, 0);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        location.endLine = endLine >= 0 ? endLine : location.startLine;
+    }
+
+    private static String nextString(JsonReader reader, String fallback) throws IOException {
+        if (reader.peek() == JsonToken.STRING || reader.peek() == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return fallback;
+    }
+
+    private static @Nullable String getString(JsonObject object, String name) {
+        JsonElement element = object.get(name);
+        return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+    }
+
+    private static int nextInt(JsonReader reader, int fallback) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return reader.nextInt();
+        }
+        reader.skipValue();
+        return fallback;
+    }
+
+    /**
+     * Rule severities of one run. Results without a severity of their own are tallied by rule and level
+     * and resolved when the run ends, since {@code tool} may come after {@code results}.
+     */
+    private static final class RunSeverities {
+        final Map<String, String> byRule = new HashMap<>();
+        private final Map<String, Map<String, Integer>> pending = new HashMap<>();
+
+        void pending(String ruleId, String level) {
+            pending.computeIfAbsent(ruleId, id -> new HashMap<>()).merge(level, 1, Integer::sum);
+        }
+
+        void flush(Handler handler) {
+            pending.forEach((ruleId, levels) -> {
+                String severity = byRule.get(ruleId);
+                levels.forEach((level, count) ->
+                        handler.severity(severity != null ? severity : fromLevel(level), count));
+            });
+        }
+
+        /**
+         * The inverse of the CLI's severity-to-level mapping, taking the lower severity where two share a level.
+         */
+        private static String fromLevel(String level) {
+            switch (level.toLowerCase(Locale.ROOT)) {
+                case "error":
+                    return "high";
+                case "note":
+                    return "low";
+                case "none":
+                    return "info";
+                default:
+                    return "medium";
+            }
+        }
+    }
+
+    private static final class Location {
+        String uri;
+        int startLine = 1;
+        int endLine = 1;
+        int startColumn = 0;
+    }
+
+    /**
+     * Collects the findings for a single file, matching artifact URIs the same way the CLI reports them
+     * (absolute, or relative to the directory the CLI ran in or, for an uploaded file, to the file's own
+     * directory), and leaving out those in the baseline.
+     */
+    static final class FileFindings implements Handler {
+        final List<BlockSecOpsExternalAnnotator.Finding> findings = new ArrayList<>();
+        private final String filePath;
+        private final String basePath;
+        private final String fileDir;
+        private final BlockSecOpsBaseline.Matcher baseline;
+
+        FileFindings(@NotNull String filePath) {
+            this(filePath, null, null);
+        }
+
+        FileFindings(@NotNull String filePath, @Nullable BlockSecOpsBaseline.Matcher baseline) {
+            this(filePath, null, baseline);
+        }
+
+        FileFindings(@NotNull String filePath, @Nullable String basePath,
+                     @Nullable BlockSecOpsBaseline.Matcher baseline) {
+            this.filePath = filePath;
+            this.basePath = basePath;
+            this.fileDir = filePath.substring(0, filePath.lastIndexOf('/') + 1);
+            this.baseline = baseline;
+        }
+
+        /**
+         * Only the full path counts: a suffix match would take another file with the same name, e.g. an
+         * imported {@code interfaces/IERC20.sol}, for this one.
+         */
+        @Override
+        public boolean accept(@Nullable String uri) {
+            if (uri == null || uri.equals(filePath)) {
+                return true;
+            }
+            if (uri.startsWith("/") || (uri.length() > 2 && uri.charAt(1) == ':')) {
+                return false;
+            }
+            String relative = uri.startsWith("./") ? uri.substring(2) : uri;
+            return filePath.equals(fileDir + relative)
+                    || (basePath != null && filePath.equals(basePath + "/" + relative));
+        }
+
+        @Override
+        public void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding) {
+            findings.add(finding);
+        }
+
+        @Override
+        public boolean isBaseline(@Nullable String uri, @NotNull String ruleId, int startLine, int endLine) {
+            return baseline != null && baseline.isBaseline(ruleId, startLine, endLine);
+        }
+    }
+
+    /**
+     * Counts every result, located or not, by severity, e.g. for a scan summary.
+     */
+    static final class SeverityCounts implements Handler {
+        // CLI severities from most to least severe; anything else sorts after them
+        private static final List<String> SEVERITIES = Arrays.asList("critical", "high", "medium", "low", "info");
+
+        private final Map<String, Integer> counts = new TreeMap<>(
+                Comparator.comparingInt(SeverityCounts::rank).thenComparing(Comparator.naturalOrder()));
+        private int total;
+
+        @Override
+        public boolean accept(@Nullable String uri) {
+            return true;
+        }
+
+        @Override
+        public void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding) {
+        }
+
+        @Override
+        public boolean wantsSeverity() {
+            return true;
+        }
+
+        @Override
+        public void severity(@NotNull String severity, int count) {
+            counts.merge(severity, count, Integer::sum);
+            total += count;
+        }
+
+        int getTotal() {
+            return total;
+        }
+
+        int get(@NotNull String severity) {
+            return counts.getOrDefault(severity, 0);
+        }
+
+        /**
+         * E.g. {@code "1 critical, 3 medium"}, most severe first.
+         */
+        @Override
+        public String toString() {
+            StringJoiner joiner = new StringJoiner(", ");
+            counts.forEach((severity, count) -> joiner.add(count + " " + severity));
+            return joiner.toString();
+        }
+
+        private static int rank(String severity) {
+            int rank = SEVERITIES.indexOf(severity);
+            return rank >= 0 ? rank : SEVERITIES.size();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.blocksecops.intellij;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * JDK Flight Recorder events for the scan lifecycle.
+ * <p>
+ * They show up under "BlockSecOps" in any JFR recording of the IDE, on the thread that did the work, next to
+ * GC and EDT activity. Events are only built when a recording has them enabled, so they cost a flag check
+ * otherwise; the builders for timed events then return {@code null}, which their finishers accept. The
+ * {@code source} field says which part of the plugin scanned: {@code annotator}, {@code scan-file} or
+ * {@code project}, or {@code server} for starting the shared server process.
+ */
+final class BlockSecOpsScanEvents {
+
+    static final String ANNOTATOR = "annotator";
+    static final String SCAN_FILE = "scan-file";
+    static final String PROJECT = "project";
+    static final String SERVER = "server";
+
+    private static final EventType SCAN_REQUESTED = EventType.getEventType(ScanRequested.class);
+    private static final EventType PROCESS_STARTED = EventType.getEventType(ProcessStarted.class);
+    private static final EventType OUTPUT_PARSED = EventType.getEventType(OutputParsed.class);
+    private static final EventType ANNOTATIONS_APPLIED = EventType.getEventType(AnnotationsApplied.class);
+    private static final EventType SCAN_CANCELLED = EventType.getEventType(ScanCancelled.class);
+
+    private BlockSecOpsScanEvents() {
+    }
+
+    @Name("com.blocksecops.ScanRequested")
+    @Label("Scan Requested")
+    @Category("BlockSecOps")
+    @Description("A scan that caches could not answer is about to run")
+    @StackTrace(false)
+    public static final class ScanRequested extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Source")
+        String source;
+
+        @Label("Content Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.blocksecops.ProcessStarted")
+    @Label("Process Started")
+    @Category("BlockSecOps")
+    @Description("A blocksecops process was spawned; the duration is the spawn time")
+    @StackTrace(false)
+    public static final class ProcessStarted extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Source")
+        String source;
+
+        @Label("Command")
+        String command;
+
+        @Label("PID")
+        long pid;
+    }
+
+    @Name("com.blocksecops.OutputParsed")
+    @Label("Output Parsed")
+    @Category("BlockSecOps")
+    @Description("CLI output was decoded into findings")
+    @StackTrace(false)
+    public static final class OutputParsed extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Source")
+        String source;
+
+        @Label("Output Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Findings")
+        int findings;
+    }
+
+    @Name("com.blocksecops.AnnotationsApplied")
+    @Label("Annotations Applied")
+    @Category("BlockSecOps")
+    @Description("Findings were shown in the editor or reported")
+    @StackTrace(false)
+    public static final class AnnotationsApplied extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Source")
+        String source;
+
+        @Label("Findings")
+        int findings;
+    }
+
+    @Name("com.blocksecops.ScanCancelled")
+    @Label("Scan Cancelled")
+    @Category("BlockSecOps")
+    @Description("A scan was abandoned before it produced findings")
+    @StackTrace(false)
+    public static final class ScanCancelled extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Source")
+        String source;
+
+        @Label("Reason")
+        String reason;
+    }
+
+    static void scanRequested(String path, String source, long bytes) {
+        if (!SCAN_REQUESTED.isEnabled()) {
+            return;
+        }
+        ScanRequested event = new ScanRequested();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.source = source;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    static void scanCancelled(String path, String source, String reason) {
+        if (!SCAN_CANCELLED.isEnabled()) {
+            return;
+        }
+        ScanCancelled event = new ScanCancelled();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.source = source;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    static @Nullable ProcessStarted processStarting(String path, String source, String command) {
+        if (!PROCESS_STARTED.isEnabled()) {
+            return null;
+        }
+        ProcessStarted event = new ProcessStarted();
+        event.path = path;
+        event.source = source;
+        event.command = command;
+        event.begin();
+        return event;
+    }
+
+    static void processStarted(@Nullable ProcessStarted event, long pid) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.pid = pid;
+            event.commit();
+        }
+    }
+
+    static @Nullable OutputParsed parsing(String path, String source) {
+        if (!OUTPUT_PARSED.isEnabled()) {
+            return null;
+        }
+        OutputParsed event = new OutputParsed();
+        event.path = path;
+        event.source = source;
+        event.begin();
+        return event;
+    }
+
+    static void parsed(@Nullable OutputParsed event, long bytes, int findings) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.findings = findings;
+            event.commit();
+        }
+    }
+
+    static @Nullable AnnotationsApplied applying(String path, String source, int findings) {
+        if (!ANNOTATIONS_APPLIED.isEnabled()) {
+            return null;
+        }
+        AnnotationsApplied event = new AnnotationsApplied();
+        event.path = path;
+        event.source = source;
+        event.findings = findings;
+        event.begin();
+        return event;
+    }
+
+    static void applied(@Nullable AnnotationsApplied event) {
+        if (event != null) {
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.application.ApplicationManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application service limiting how many scans the plugin runs at once.
+ * <p>
+ * Every scan path (annotator, file scan, project scan) takes a permit before starting a scan and returns it
+ * when the scan ends. Waiters are served strictly in arrival order. The permit count follows
+ * {@link BlockSecOpsSettings#getMaxConcurrentScans()}.
+ */
+public final class BlockSecOpsScanGovernor {
+
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private int limit;
+    private int available;
+
+    private long acquiredCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public BlockSecOpsScanGovernor() {
+        limit = BlockSecOpsSettings.getInstance().getMaxConcurrentScans();
+        available = limit;
+    }
+
+    public static BlockSecOpsScanGovernor getInstance() {
+        return ApplicationManager.getApplication().getService(BlockSecOpsScanGovernor.class);
+    }
+
+    /**
+     * Wait for a permit.
+     *
+     * @throws CancellationException if the ticket is cancelled while waiting
+     * @throws com.intellij.openapi.progress.ProcessCanceledException if the current progress is cancelled
+     */
+    Permit acquire(@NotNull BlockSecOpsScanScheduler.ScanTicket ticket) {
+        long start = System.nanoTime();
+        Waiter waiter = new Waiter();
+
+        synchronized (this) {
+            syncLimit();
+            if (available > 0 && queue.isEmpty()) {
+                available--;
+                return granted(start);
+            }
+            queue.addLast(waiter);
+        }
+
+        try {
+            while (!waiter.latch.await(BlockSecOpsScanScheduler.POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                BlockSecOpsScanScheduler.checkCanceled(ticket);
+                if (ticket.isCancelled()) {
+                    throw new CancellationException("Scan was superseded while waiting for a permit");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(waiter);
+            throw new CancellationException("Interrupted while waiting for a permit");
+        } catch (RuntimeException e) {
+            abandon(waiter);
+            throw e;
+        }
+
+        synchronized (this) {
+            return granted(start);
+        }
+    }
+
+    public synchronized Metrics getMetrics() {
+        return new Metrics(limit, limit - available, queue.size(), acquiredCount,
+                acquiredCount == 0 ? 0 : totalWaitNanos / acquiredCount, maxWaitNanos);
+    }
+
+    private Permit granted(long start) {
+        long waited = System.nanoTime() - start;
+        acquiredCount++;
+        totalWaitNanos += waited;
+        maxWaitNanos = Math.max(maxWaitNanos, waited);
+        return new Permit();
+    }
+
+    private synchronized void abandon(Waiter waiter) {
+        if (!queue.remove(waiter)) {
+            // Granted after we gave up; pass the permit on
+            release();
+        }
+    }
+
+    private synchronized void release() {
+        syncLimit();
+        available++;
+        grantWaiting();
+    }
+
+    private void syncLimit() {
+        int configured = BlockSecOpsSettings.getInstance().getMaxConcurrentScans();
+        if (configured != limit) {
+            // May go negative when shrinking; running scans finish before new ones start
+            available += configured - limit;
+            limit = configured;
+            grantWaiting();
+        }
+    }
+
+    private void grantWaiting() {
+        while (available > 0 && !queue.isEmpty()) {
+            available--;
+            queue.pollFirst().latch.countDown();
+        }
+    }
+
+    private static final class Waiter {
+        final CountDownLatch latch = new CountDownLatch(1);
+    }
+
+    /**
+     * A held permit; closing it lets the next queued scan start.
+     */
+    final class Permit implements AutoCloseable {
+        private boolean released;
+
+        @Override
+        public void close() {
+            synchronized (BlockSecOpsScanGovernor.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                release();
+            }
+        }
+    }
+
+    /**
+     * Point-in-time view of the governor for diagnostics.
+     */
+    public static final class Metrics {
+        public final int permits;
+        public final int running;
+        public final int queueDepth;
+        public final long acquired;
+        public final long averageWaitNanos;
+        public final long maxWaitNanos;
+
+        Metrics(int permits, int running, int queueDepth, long acquired, long averageWaitNanos, long maxWaitNanos) {
+            this.permits = permits;
+            this.running = running;
+            this.queueDepth = queueDepth;
+            this.acquired = acquired;
+            this.averageWaitNanos = averageWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("running %d/%d, queued %d, acquired %d, wait avg %d ms, max %d ms",
+                    running, permits, queueDepth, acquired,
+                    TimeUnit.NANOSECONDS.toMillis(averageWaitNanos), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+        }
+    }
+}
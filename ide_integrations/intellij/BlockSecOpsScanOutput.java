@@ -0,0 +1,157 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Raw CLI output, kept in memory up to {@link #MEMORY_LIMIT} characters and spilled to a temporary file
+ * beyond that.
+ * <p>
+ * Output is captured as a side effect of reading it through {@link #capture}, so the same pass that decodes
+ * the SARIF also keeps a copy for Show Results, without holding a multi-megabyte log on the heap.
+ */
+final class BlockSecOpsScanOutput {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsScanOutput.class);
+
+    static final int MEMORY_LIMIT = 1 << 20;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private Path spillFile;
+    private Writer spill;
+    private long length;
+
+    /**
+     * A reader that records everything read through it into this output.
+     */
+    Reader capture(@NotNull Reader in) {
+        return new FilterReader(in) {
+            @Override
+            public int read() throws IOException {
+                int c = super.read();
+                if (c != -1) {
+                    append(new char[]{(char) c}, 0, 1);
+                }
+                return c;
+            }
+
+            @Override
+            public int read(char[] chars, int offset, int count) throws IOException {
+                int read = super.read(chars, offset, count);
+                if (read > 0) {
+                    append(chars, offset, read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // Skipped characters must still be captured
+                char[] chars = new char[(int) Math.min(n, 8192)];
+                int read = read(chars, 0, chars.length);
+                return Math.max(read, 0);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    finish();
+                }
+            }
+        };
+    }
+
+    /**
+     * A writer for output produced by the plugin itself, such as a merged SARIF log. Closing it finishes the
+     * output, like closing a capturing reader.
+     */
+    Writer writer() {
+        return new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int count) throws IOException {
+                BlockSecOpsScanOutput.this.append(chars, offset, count);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+            }
+        };
+    }
+
+    private synchronized void append(char[] chars, int offset, int count) throws IOException {
+        length += count;
+        if (spill == null && buffer.length() + count <= MEMORY_LIMIT) {
+            buffer.append(chars, offset, count);
+            return;
+        }
+        if (spill == null) {
+            spillFile = Files.createTempFile("blocksecops-scan", ".sarif");
+            spillFile.toFile().deleteOnExit();
+            spill = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8);
+            spill.append(buffer);
+            buffer.setLength(0);
+            buffer.trimToSize();
+        }
+        spill.write(chars, offset, count);
+    }
+
+    private synchronized void finish() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    /**
+     * Characters captured so far.
+     */
+    synchronized long length() {
+        return length;
+    }
+
+    synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Read the captured output from the start; only valid once the capturing reader is closed.
+     */
+    synchronized Reader openReader() throws IOException {
+        if (spillFile != null) {
+            return Files.newBufferedReader(spillFile, StandardCharsets.UTF_8);
+        }
+        return new StringReader(buffer.toString());
+    }
+
+    /**
+     * Delete the spill file, if any; the output can't be read afterwards.
+     */
+    synchronized void delete() {
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            LOG.debug("Failed to delete " + spillFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.blocksecops.intellij;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Action to scan the Solidity files in the project.
+ * The first scan covers the whole project, split into shards that scan in parallel; later ones only rescan the
+ * files changed since, plus the files importing them. The results fill the project findings index, so opening a
+ * scanned file needs no further scan.
+ */
+public class BlockSecOpsScanProjectAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsScanProjectAction.class);
+
+    private static final int PROJECT_SCAN_TIMEOUT_MS = 600000;
+
+    // Past this share of changed files one project scan beats many single-file scans
+    private static final double FULL_SCAN_RATIO = 0.25;
+
+    /**
+     * Shards in flight when scanning through the API client, which multiplexes them over one HTTP/2
+     * connection instead of tying up a CLI process each.
+     */
+    private static final int API_SHARDS = 16;
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        if (project == null || project.getBasePath() == null) {
+            return;
+        }
+
+        new Task.Backgroundable(project, "BlockSecOps: Scanning project", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                scanProject(project, indicator);
+            }
+        }.queue();
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent event) {
+        event.getPresentation().setEnabled(event.getProject() != null);
+    }
+
+    private void scanProject(Project project, ProgressIndicator indicator) {
+        indicator.setIndeterminate(true);
+        indicator.setText("Collecting Solidity files...");
+
+        BlockSecOpsResultsService resultsService = BlockSecOpsResultsService.getInstance(project);
+        BlockSecOpsFindingsIndex index = resultsService.getIndex();
+
+        Map<String, VirtualFile> files = collectSolidityFiles(project);
+        if (files.isEmpty()) {
+            showNotification(project, "No Solidity files found in project", NotificationType.INFORMATION);
+            return;
+        }
+
+        // Written since the last scan, plus anything the index hasn't seen (created, moved in)
+        Set<String> dirty = resultsService.drainDirtyPaths();
+        Set<String> changed = new HashSet<>(dirty);
+        changed.retainAll(files.keySet());
+        Set<String> indexed = index.getPaths();
+        for (String path : files.keySet()) {
+            if (!indexed.contains(path)) {
+                changed.add(path);
+            }
+        }
+
+        boolean completed = false;
+        try {
+            if (indexed.isEmpty() || changed.size() > files.size() * FULL_SCAN_RATIO) {
+                completed = scanAll(project, files, indicator);
+            } else {
+                completed = scanChanged(project, files, changed, indicator);
+            }
+        } finally {
+            if (!completed) {
+                // Keep the changes for the next attempt
+                dirty.forEach(resultsService::markDirty);
+            }
+        }
+    }
+
+    /**
+     * Scan every file and replace the index.
+     * <p>
+     * The files are split into one shard per server process (or {@link #API_SHARDS} with the API client),
+     * balanced by size, and the shards scan in parallel. As each shard finishes, its findings go into the index
+     * and the log merged from the shards done so far goes to the results service, so results show up while the
+     * rest of the project is still scanning.
+     */
+    private boolean scanAll(Project project, Map<String, VirtualFile> files, ProgressIndicator indicator) {
+        BlockSecOpsResultsService resultsService = BlockSecOpsResultsService.getInstance(project);
+        BlockSecOpsImportGraph importGraph = resultsService.getImportGraph();
+
+        // Hash what is on disk now, which is what the CLI is about to scan
+        importGraph.clear();
+        Map<String, String> contentHashes = hashFiles(files, files.keySet(), importGraph);
+
+        int shardCount = BlockSecOpsApiClient.isEnabled() ? API_SHARDS : BlockSecOpsScanServer.getPoolSize();
+        List<List<String>> shards = shard(files, contentHashes.keySet(), Math.min(shardCount, contentHashes.size()));
+        indicator.setText("Scanning " + contentHashes.size() + " Solidity files in " + shards.size() + " shard"
+                + (shards.size() != 1 ? "s" : "") + "...");
+        indicator.setIndeterminate(false);
+
+        BlockSecOpsSarifMerger merger = new BlockSecOpsSarifMerger();
+        AtomicInteger scanned = new AtomicInteger();
+        List<BlockSecOpsScanScheduler.ScanTicket> tickets = new ArrayList<>();
+        CompletionService<Map<String, List<BlockSecOpsExternalAnnotator.Finding>>> completion =
+                new ExecutorCompletionService<>(AppExecutorUtil.getAppExecutorService());
+        for (List<String> shard : shards) {
+            BlockSecOpsScanScheduler.ScanTicket ticket = new BlockSecOpsScanScheduler.ScanTicket();
+            tickets.add(ticket);
+            completion.submit(() -> scanShard(project, files, shard, ticket, merger, scanned));
+        }
+
+        Set<String> stale = new HashSet<>(resultsService.getIndex().getPaths());
+        stale.removeAll(files.keySet());
+        try {
+            for (int done = 0; done < shards.size(); ) {
+                indicator.setFraction((double) scanned.get() / contentHashes.size());
+                Future<Map<String, List<BlockSecOpsExternalAnnotator.Finding>>> finished =
+                        completion.poll(BlockSecOpsScanScheduler.POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (finished == null) {
+                    indicator.checkCanceled();
+                    continue;
+                }
+                done++;
+
+                Map<String, List<BlockSecOpsExternalAnnotator.Finding>> findings;
+                try {
+                    findings = finished.get();
+                } catch (java.util.concurrent.ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    return scanFailed(project, cause instanceof Exception ? (Exception) cause : e);
+                }
+                if (findings == null) {
+                    showNotification(project, "Project scan returned no results", NotificationType.WARNING);
+                    return false;
+                }
+
+                Map<String, String> shardHashes = new HashMap<>();
+                findings.keySet().forEach(path -> shardHashes.put(path, contentHashes.get(path)));
+                merge(project, shardHashes, findings);
+                resultsService.updateResults(merger.toOutput());
+            }
+        } catch (Exception e) {
+            return scanFailed(project, e);
+        } finally {
+            // Stops the remaining shards when one fails or the scan is cancelled
+            tickets.forEach(BlockSecOpsScanScheduler.ScanTicket::cancel);
+        }
+
+        BlockSecOpsFindingsIndex index = resultsService.getIndex();
+        stale.forEach(index::remove);
+        notifyComplete(project, index, contentHashes.size());
+        return true;
+    }
+
+    /**
+     * Scan a shard's files one after another, adding all of their results to {@code merger}.
+     *
+     * @return the findings of each file, or {@code null} if a scan returned no results
+     */
+    private static @Nullable Map<String, List<BlockSecOpsExternalAnnotator.Finding>> scanShard(
+            Project project, Map<String, VirtualFile> files, List<String> shard,
+            BlockSecOpsScanScheduler.ScanTicket ticket,
+            BlockSecOpsSarifMerger merger, AtomicInteger scanned) throws Exception {
+        BlockSecOpsScanServer server = BlockSecOpsScanServer.getInstance(project);
+        Map<String, List<BlockSecOpsExternalAnnotator.Finding>> findings = new HashMap<>();
+
+        for (String path : shard) {
+            // Only the scanned file's own findings; its imports get theirs from their own scans
+            BlockSecOpsSarifReader.FileFindings handler =
+                    new BlockSecOpsSarifReader.FileFindings(path, project.getBasePath(),
+                            baselineMatcher(project, files.get(path)));
+            BlockSecOpsScanEvents.scanRequested(path, BlockSecOpsScanEvents.PROJECT, files.get(path).getLength());
+            if (!scanFile(server, path, ticket, merger.including(handler))) {
+                return null;
+            }
+            findings.put(path, handler.findings);
+            scanned.incrementAndGet();
+        }
+        return findings;
+    }
+
+    /**
+     * Scan one file for a project scan, holding a scan permit for just this file so editor scans can take
+     * turns with a long project scan.
+     */
+    private static boolean scanFile(BlockSecOpsScanServer server, String path,
+                                    BlockSecOpsScanScheduler.ScanTicket ticket,
+                                    BlockSecOpsSarifReader.Handler handler) throws Exception {
+        // Remote scans don't run on this machine, so they don't count against the local scan limit
+        try (BlockSecOpsScanGovernor.Permit permit = BlockSecOpsApiClient.isEnabled()
+                ? null : BlockSecOpsScanGovernor.getInstance().acquire(ticket)) {
+            return server.scan(path, null, PROJECT_SCAN_TIMEOUT_MS, ticket, handler, BlockSecOpsScanEvents.PROJECT);
+        }
+    }
+
+    /**
+     * Split the files into at most {@code count} shards of about the same total size, largest files first.
+     */
+    static List<List<String>> shard(Map<String, VirtualFile> files, Collection<String> paths, int count) {
+        List<String> bySize = new ArrayList<>(paths);
+        bySize.sort(Comparator.comparingLong((String path) -> files.get(path).getLength()).reversed());
+
+        List<List<String>> shards = new ArrayList<>();
+        long[] sizes = new long[Math.max(1, count)];
+        for (int i = 0; i < sizes.length; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (String path : bySize) {
+            int smallest = 0;
+            for (int i = 1; i < sizes.length; i++) {
+                if (sizes[i] < sizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            shards.get(smallest).add(path);
+            sizes[smallest] += files.get(path).getLength();
+        }
+        shards.removeIf(List::isEmpty);
+        return shards;
+    }
+
+    /**
+     * Rescan the changed files and the files importing them, one file at a time, and merge the results
+     * into the index.
+     */
+    private boolean scanChanged(Project project, Map<String, VirtualFile> files, Set<String> changed,
+                                ProgressIndicator indicator) {
+        BlockSecOpsResultsService resultsService = BlockSecOpsResultsService.getInstance(project);
+        BlockSecOpsFindingsIndex index = resultsService.getIndex();
+        BlockSecOpsImportGraph importGraph = resultsService.getImportGraph();
+
+        Set<String> deleted = new HashSet<>(index.getPaths());
+        deleted.removeAll(files.keySet());
+        for (String path : deleted) {
+            index.remove(path);
+            importGraph.remove(path);
+        }
+
+        // A save without an actual edit doesn't need a scan
+        Map<String, String> contentHashes = hashFiles(files, changed, importGraph);
+        contentHashes.entrySet().removeIf(entry -> index.get(entry.getKey(), entry.getValue()) != null);
+
+        Set<String> affected = new HashSet<>(contentHashes.keySet());
+        affected.addAll(deleted);
+        Set<String> importers = importGraph.getImporters(affected);
+        importers.retainAll(files.keySet());
+        contentHashes.putAll(hashFiles(files, importers, importGraph));
+
+        if (contentHashes.isEmpty()) {
+            notifyComplete(project, index, 0);
+            return true;
+        }
+
+        Map<String, List<BlockSecOpsExternalAnnotator.Finding>> findings = new HashMap<>();
+        BlockSecOpsScanServer server = BlockSecOpsScanServer.getInstance(project);
+        BlockSecOpsScanScheduler.ScanTicket ticket = new BlockSecOpsScanScheduler.ScanTicket();
+
+        indicator.setIndeterminate(false);
+        try {
+            int done = 0;
+            for (String path : contentHashes.keySet()) {
+                indicator.checkCanceled();
+                indicator.setText("Scanning " + files.get(path).getName() + "...");
+                indicator.setFraction((double) done++ / contentHashes.size());
+
+                BlockSecOpsSarifReader.FileFindings handler =
+                        new BlockSecOpsSarifReader.FileFindings(path, project.getBasePath(),
+                                baselineMatcher(project, files.get(path)));
+                BlockSecOpsScanEvents.scanRequested(path, BlockSecOpsScanEvents.PROJECT, files.get(path).getLength());
+                if (!scanFile(server, path, ticket, handler)) {
+                    showNotification(project, "Scan of " + path + " returned no results", NotificationType.WARNING);
+                    return false;
+                }
+                findings.put(path, handler.findings);
+            }
+        } catch (Exception e) {
+            return scanFailed(project, e);
+        }
+
+        // Merge only once every file scanned, so a failed rescan leaves the previous results intact
+        merge(project, contentHashes, findings);
+
+        notifyComplete(project, index, contentHashes.size());
+        return true;
+    }
+
+    /**
+     * Record the scanned files' findings in the index and, for later sessions, in the persistent store.
+     */
+    private void merge(Project project, Map<String, String> contentHashes,
+                       Map<String, List<BlockSecOpsExternalAnnotator.Finding>> findings) {
+        BlockSecOpsFindingsIndex index = BlockSecOpsResultsService.getInstance(project).getIndex();
+        BlockSecOpsFindingsStore store = BlockSecOpsFindingsStore.getInstance();
+        String version = BlockSecOpsScanServer.getInstance(project).getCliVersion();
+        // Stored under an unknown version, findings would never be read back
+        String cliVersion = version != null ? BlockSecOpsBaseline.getInstance(project).qualify(version) : null;
+
+        for (Map.Entry<String, String> entry : contentHashes.entrySet()) {
+            List<BlockSecOpsExternalAnnotator.Finding> fileFindings =
+                    findings.getOrDefault(entry.getKey(), new ArrayList<>());
+            index.put(entry.getKey(), entry.getValue(), fileFindings);
+            if (cliVersion != null) {
+                store.put(entry.getKey(), entry.getValue(), cliVersion, fileFindings);
+            }
+        }
+    }
+
+    private boolean scanFailed(Project project, Exception e) {
+        if (e instanceof RuntimeException) {
+            // Includes ProcessCanceledException
+            throw (RuntimeException) e;
+        }
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        LOG.warn("Project scan failed", e);
+        if (e instanceof BlockSecOpsServerProcess.ServerError) {
+            showNotification(project, "Project scan failed: " + e.getMessage(), NotificationType.ERROR);
+        } else if (e instanceof IOException) {
+            showNotification(project,
+                    "Failed to run blocksecops-cli: " + e.getMessage() +
+                            "\nMake sure blocksecops is installed and in your PATH.",
+                    NotificationType.ERROR);
+        }
+        return false;
+    }
+
+    private void notifyComplete(Project project, BlockSecOpsFindingsIndex index, int scanned) {
+        int count = index.getFindingCount();
+        showNotification(project,
+                "Project scan complete: " + count + " issue" + (count != 1 ? "s" : "") +
+                        " in " + index.getPaths().size() + " files (" + scanned + " scanned)",
+                count > 0 ? NotificationType.WARNING : NotificationType.INFORMATION);
+    }
+
+    /**
+     * Every Solidity file in the project content, keyed by path.
+     */
+    static Map<String, VirtualFile> collectSolidityFiles(Project project) {
+        return ReadAction.compute(() -> {
+            Map<String, VirtualFile> files = new HashMap<>();
+            ProjectFileIndex.getInstance(project).iterateContent(file -> {
+                if (!file.isDirectory() && file.getName().endsWith(".sol")) {
+                    files.put(file.getPath(), file);
+                }
+                return true;
+            });
+            return files;
+        });
+    }
+
+    /**
+     * Content hash of each of the given files, recording their imports along the way. The read lock is only
+     * held while a file loads, not while it is hashed, so a large project doesn't block writes for the whole
+     * pass.
+     */
+    private static Map<String, String> hashFiles(Map<String, VirtualFile> files, Collection<String> paths,
+                                                 BlockSecOpsImportGraph importGraph) {
+        Map<String, String> hashes = new HashMap<>();
+        for (String path : paths) {
+            VirtualFile file = files.get(path);
+            CharSequence text = ReadAction.compute(() -> LoadTextUtil.loadText(file));
+            hashes.put(path, contentHash(text));
+            importGraph.update(path, text);
+        }
+        return hashes;
+    }
+
+    /**
+     * Matcher for the file's current text, or {@code null} when the project has no baseline.
+     */
+    private static @Nullable BlockSecOpsBaseline.Matcher baselineMatcher(Project project, VirtualFile file) {
+        BlockSecOpsBaseline baseline = BlockSecOpsBaseline.getInstance(project);
+        if (baseline.isEmpty()) {
+            return null;
+        }
+        return baseline.matcher(ReadAction.compute(() -> LoadTextUtil.loadText(file)));
+    }
+
+    /**
+     * Hash of the file's text as the editor would load it, comparable with a document snapshot's hash.
+     */
+    static String contentHash(CharSequence text) {
+        return BlockSecOpsFindingsCache.sha256(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void showNotification(Project project, String message, NotificationType type) {
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("BlockSecOps Notifications")
+                .createNotification(message, type)
+                .notify(project);
+    }
+}
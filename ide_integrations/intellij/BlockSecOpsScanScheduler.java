@@ -0,0 +1,119 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps at most one annotator scan per file in flight.
+ * <p>
+ * Starting a scan supersedes the previous one for the same file: its ticket is cancelled, which kills the
+ * one-shot CLI process tree or cancels the request on the scan server. New scans also wait out a short
+ * debounce window so a burst of edits results in a single scan.
+ */
+final class BlockSecOpsScanScheduler {
+
+    static final long POLL_INTERVAL_MS = 50;
+
+    private final long debounceMs;
+    private final Map<String, ScanTicket> active = new ConcurrentHashMap<>();
+
+    BlockSecOpsScanScheduler(long debounceMs) {
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * Register a new scan for a file, cancelling any scan it supersedes.
+     */
+    ScanTicket begin(@NotNull String path) {
+        ScanTicket ticket = new ScanTicket();
+        ScanTicket previous = active.put(path, ticket);
+        if (previous != null) {
+            previous.cancel();
+        }
+        return ticket;
+    }
+
+    void finish(@NotNull String path, @NotNull ScanTicket ticket) {
+        active.remove(path, ticket);
+    }
+
+    /**
+     * Wait out the debounce window.
+     *
+     * @return {@code false} if a newer edit superseded this scan in the meantime
+     * @throws ProcessCanceledException if the highlighting pass was cancelled
+     */
+    boolean debounce(@NotNull ScanTicket ticket) {
+        long deadline = System.currentTimeMillis() + debounceMs;
+        while (System.currentTimeMillis() < deadline) {
+            checkCanceled(ticket);
+            if (ticket.isCancelled()) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(POLL_INTERVAL_MS, Math.max(1, deadline - System.currentTimeMillis())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ticket.cancel();
+                return false;
+            }
+        }
+        return !ticket.isCancelled();
+    }
+
+    /**
+     * Propagate progress indicator cancellation to the ticket, so the scan behind it is torn down too.
+     */
+    static void checkCanceled(@NotNull ScanTicket ticket) {
+        try {
+            ProgressManager.checkCanceled();
+        } catch (ProcessCanceledException e) {
+            ticket.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancellation handle for one scan; the running scan registers how to tear itself down.
+     */
+    static final class ScanTicket {
+        private volatile boolean cancelled;
+        private Runnable onCancel;
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Set the action that stops the running scan; runs immediately if already cancelled.
+         */
+        void onCancel(@NotNull Runnable action) {
+            synchronized (this) {
+                if (!cancelled) {
+                    onCancel = action;
+                    return;
+                }
+            }
+            action.run();
+        }
+
+        void cancel() {
+            Runnable action;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                action = onCancel;
+                onCancel = null;
+            }
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+}
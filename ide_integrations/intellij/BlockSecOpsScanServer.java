@@ -0,0 +1,499 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonToken;
+import com.intellij.execution.ExecutionException;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Project service that keeps a small pool of warm {@code blocksecops server} processes for the annotator.
+ * <p>
+ * {@link BlockSecOpsServerWarmup} fills the pool when the project opens, so even the first scan skips
+ * interpreter start-up. Each request goes to the least busy process; another one is started when all are
+ * busy, up to the pool size. After a few idle minutes the pool shrinks back to a single process. Crashed
+ * processes are replaced on demand, and all of them are stopped when the project closes.
+ */
+public final class BlockSecOpsScanServer implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsScanServer.class);
+
+    // The server's error code for a failed scan
+    private static final int SCAN_ERROR = -32000;
+
+    // Scans the plugin sends to the API itself are attributed to the IDE
+    private static final String REMOTE_SCAN_SOURCE = "jetbrains";
+    static final String REMOTE_VERSION = "api";
+
+    // Give up restarting if the server keeps dying; callers fall back to one-shot processes
+    private static final int MAX_RESTARTS = 3;
+    private static final long RESTART_WINDOW_MS = 60000;
+
+    // A server process is a Python interpreter plus the CLI, roughly this much resident memory
+    private static final long WORKER_MEMORY_BYTES = 128L << 20;
+    private static final int MAX_POOL_SIZE = 4;
+    private static final long IDLE_SHRINK_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Project project;
+    private final Deque<Long> recentCrashes = new ArrayDeque<>();
+    private final List<BlockSecOpsServerProcess> workers = new ArrayList<>();
+    private final ScheduledFuture<?> reaper;
+    // Starts in progress, so concurrent callers don't overshoot the pool size
+    private int starting;
+    private boolean disposed;
+
+    public BlockSecOpsScanServer(@NotNull Project project) {
+        this.project = project;
+        this.reaper = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                this::shrinkIfIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public static BlockSecOpsScanServer getInstance(@NotNull Project project) {
+        return project.getService(BlockSecOpsScanServer.class);
+    }
+
+    /**
+     * Scan a file, streaming the SARIF results into {@code handler} as the response is read.
+     *
+     * @param content text to scan instead of the file on disk, or {@code null} to scan the saved file
+     * @param ticket cancels the request on the server when the scan is superseded
+     * @param source which part of the plugin is scanning, for {@link BlockSecOpsScanEvents}
+     * @return {@code false} if the response contained no SARIF log
+     * @throws IOException if the server cannot be started or died mid-request
+     * @throws BlockSecOpsServerProcess.ServerError if the scan itself failed
+     * @throws CancellationException if the ticket was cancelled
+     */
+    public boolean scan(@NotNull String filePath, @Nullable String content, long timeoutMs,
+                        @NotNull BlockSecOpsScanScheduler.ScanTicket ticket,
+                        @NotNull BlockSecOpsSarifReader.Handler handler, @NotNull String source)
+            throws IOException, BlockSecOpsServerProcess.ServerError, InterruptedException {
+        if (BlockSecOpsApiClient.isEnabled()) {
+            scanRemote(filePath, content, timeoutMs, ticket, handler, source);
+            return true;
+        }
+
+        JsonObject params = scanParams(filePath, content);
+        BlockSecOpsServerProcess server = ensureStarted();
+        return call(server, "scan", params, timeoutMs, ticket, reader -> {
+            BlockSecOpsScanEvents.OutputParsed event = BlockSecOpsScanEvents.parsing(filePath, source);
+            long outputStart = server.getOutputCount();
+            CountingHandler counting = new CountingHandler(handler);
+
+            boolean found = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("sarif".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    BlockSecOpsSarifReader.read(reader, counting);
+                    found = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            BlockSecOpsScanEvents.parsed(event, server.getOutputCount() - outputStart, counting.count);
+            return found;
+        });
+    }
+
+    /**
+     * Scan through {@link BlockSecOpsApiClient} instead of a server process; no process is started for it.
+     */
+    private static void scanRemote(String filePath, @Nullable String content, long timeoutMs,
+                                   BlockSecOpsScanScheduler.ScanTicket ticket,
+                                   BlockSecOpsSarifReader.Handler handler, String source)
+            throws IOException, BlockSecOpsServerProcess.ServerError, InterruptedException {
+        byte[] bytes = content != null
+                ? content.getBytes(StandardCharsets.UTF_8)
+                : Files.readAllBytes(Paths.get(filePath));
+        BlockSecOpsScanEvents.OutputParsed event = BlockSecOpsScanEvents.parsing(filePath, source);
+        CompletableFuture<BlockSecOpsApiClient.ScanResults> future = BlockSecOpsApiClient.getInstance()
+                .scan(Paths.get(filePath).getFileName().toString(), bytes, REMOTE_SCAN_SOURCE, timeoutMs);
+        ticket.onCancel(() -> future.cancel(true));
+
+        BlockSecOpsApiClient.ScanResults results;
+        try {
+            results = await(future, timeoutMs, ticket, "BlockSecOps API");
+        } catch (IOException e) {
+            if (e.getCause() instanceof BlockSecOpsApiClient.ApiError) {
+                // Rejected by the API; a CLI process would get the same answer
+                throw new BlockSecOpsServerProcess.ServerError(SCAN_ERROR, e.getCause().getMessage());
+            }
+            throw e;
+        }
+
+        CountingHandler counting = new CountingHandler(handler);
+        BlockSecOpsSarifReader.read(results.sarif, counting);
+        // The results response is the remote counterpart of a server process's output
+        BlockSecOpsMetrics.getInstance().recordOutputSize(results.responseBytes);
+        BlockSecOpsScanEvents.parsed(event, results.responseBytes, counting.count);
+    }
+
+    private static JsonObject scanParams(String filePath, @Nullable String content) {
+        JsonObject params = new JsonObject();
+        params.addProperty("path", filePath);
+        if (content != null) {
+            params.addProperty("content", content);
+        }
+        if (BlockSecOpsSettings.getInstance().isOfflineMode()) {
+            params.addProperty("offline", true);
+        }
+        return params;
+    }
+
+    /**
+     * Version reported by the server, starting it if needed; {@code null} when it can't be started. Scans
+     * through the API client don't need a server, so they report {@value #REMOTE_VERSION} instead.
+     */
+    @Nullable
+    public String getCliVersion() {
+        if (BlockSecOpsApiClient.isEnabled()) {
+            return REMOTE_VERSION;
+        }
+        synchronized (this) {
+            for (BlockSecOpsServerProcess worker : workers) {
+                if (worker.isAlive() && worker.getCliVersion() != null) {
+                    return worker.getCliVersion();
+                }
+            }
+        }
+        try {
+            return ensureStarted().getCliVersion();
+        } catch (IOException e) {
+            LOG.debug("blocksecops server unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Start processes until the pool is full; called off the EDT when the project opens.
+     */
+    void warmUp() {
+        int size = getPoolSize();
+        while (true) {
+            synchronized (this) {
+                if (disposed || workers.size() + starting >= size) {
+                    return;
+                }
+                starting++;
+            }
+            try {
+                addWorker(startProcess());
+            } catch (IOException e) {
+                // Scans start a process on demand and report the problem then
+                LOG.info("Could not pre-start blocksecops server: " + e.getMessage());
+                return;
+            } finally {
+                startFinished();
+            }
+        }
+    }
+
+    /**
+     * Number of server processes to keep: the setting, or one per four cores as long as the pool stays within
+     * a sixteenth of physical memory. Never more than scans can run at once.
+     */
+    static int getPoolSize() {
+        BlockSecOpsSettings settings = BlockSecOpsSettings.getInstance();
+        int size = settings.getServerPoolSize();
+        if (size <= 0) {
+            size = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+            long memory = getPhysicalMemory();
+            if (memory > 0) {
+                size = (int) Math.min(size, Math.max(1, memory / 16 / WORKER_MEMORY_BYTES));
+            }
+            size = Math.min(size, MAX_POOL_SIZE);
+        }
+        return Math.max(1, Math.min(size, settings.getMaxConcurrentScans()));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long getPhysicalMemory() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        return -1;
+    }
+
+    private <T> T call(BlockSecOpsServerProcess server, String method, JsonObject params, long timeoutMs,
+                       BlockSecOpsScanScheduler.ScanTicket ticket,
+                       BlockSecOpsServerProcess.ResultDecoder<T> decoder)
+            throws IOException, BlockSecOpsServerProcess.ServerError, InterruptedException {
+        return await(server.request(method, params, ticket, decoder), timeoutMs, ticket, "blocksecops server");
+    }
+
+    /**
+     * Wait for a request, checking for cancellation in between.
+     */
+    private static <T> T await(CompletableFuture<T> future, long timeoutMs,
+                               BlockSecOpsScanScheduler.ScanTicket ticket, String target)
+            throws IOException, BlockSecOpsServerProcess.ServerError, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        while (true) {
+            try {
+                return future.get(BlockSecOpsScanScheduler.POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (java.util.concurrent.ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof BlockSecOpsServerProcess.ServerError) {
+                    throw (BlockSecOpsServerProcess.ServerError) cause;
+                }
+                throw new IOException(target + " request failed", cause);
+            } catch (TimeoutException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    ticket.cancel();
+                    throw new IOException(target + " timed out after " + timeoutMs + "ms", e);
+                }
+                BlockSecOpsScanScheduler.checkCanceled(ticket);
+            }
+        }
+    }
+
+    /**
+     * The least busy live process. When every process is busy and the pool isn't full, another one is
+     * started in the background for the requests after this one.
+     */
+    private BlockSecOpsServerProcess ensureStarted() throws IOException {
+        synchronized (this) {
+            if (disposed) {
+                throw new IOException("Project is closing");
+            }
+            removeDeadWorkers();
+
+            BlockSecOpsServerProcess best = null;
+            for (BlockSecOpsServerProcess worker : workers) {
+                if (best == null || worker.getPendingCount() < best.getPendingCount()) {
+                    best = worker;
+                }
+            }
+            if (best != null) {
+                if (best.getPendingCount() > 0 && workers.size() + starting < getPoolSize()) {
+                    starting++;
+                    ApplicationManager.getApplication().executeOnPooledThread(this::growPool);
+                }
+                return best;
+            }
+            if (starting > 0) {
+                // Warm-up is already starting one; waiting for it beats starting another
+                return awaitWorker();
+            }
+            checkCrashRate();
+            starting++;
+        }
+
+        try {
+            BlockSecOpsServerProcess started = startProcess();
+            addWorker(started);
+            return started;
+        } finally {
+            startFinished();
+        }
+    }
+
+    private void growPool() {
+        try {
+            addWorker(startProcess());
+        } catch (IOException e) {
+            LOG.info("Could not grow blocksecops server pool: " + e.getMessage());
+        } finally {
+            startFinished();
+        }
+    }
+
+    private synchronized void startFinished() {
+        starting--;
+        notifyAll();
+    }
+
+    private BlockSecOpsServerProcess awaitWorker() throws IOException {
+        assert Thread.holdsLock(this);
+        long deadline = System.currentTimeMillis() + RESTART_WINDOW_MS;
+        while (workers.isEmpty() && starting > 0 && !disposed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(Math.min(remaining, BlockSecOpsScanScheduler.POLL_INTERVAL_MS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for blocksecops server", e);
+            }
+        }
+        if (workers.isEmpty()) {
+            throw new IOException("blocksecops server did not start");
+        }
+        return workers.get(0);
+    }
+
+    private void removeDeadWorkers() {
+        assert Thread.holdsLock(this);
+        for (Iterator<BlockSecOpsServerProcess> it = workers.iterator(); it.hasNext(); ) {
+            BlockSecOpsServerProcess worker = it.next();
+            if (!worker.isAlive()) {
+                LOG.info("blocksecops server exited, restarting");
+                worker.destroy();
+                it.remove();
+                recentCrashes.addLast(System.currentTimeMillis());
+            }
+        }
+    }
+
+    private void checkCrashRate() throws IOException {
+        assert Thread.holdsLock(this);
+        long now = System.currentTimeMillis();
+        while (!recentCrashes.isEmpty() && now - recentCrashes.peekFirst() > RESTART_WINDOW_MS) {
+            recentCrashes.pollFirst();
+        }
+        if (recentCrashes.size() >= MAX_RESTARTS) {
+            throw new IOException("blocksecops server restarted too often, not restarting");
+        }
+    }
+
+    private BlockSecOpsServerProcess startProcess() throws IOException {
+        long start = System.nanoTime();
+        BlockSecOpsScanEvents.ProcessStarted event = BlockSecOpsScanEvents.processStarting(
+                project.getBasePath(), BlockSecOpsScanEvents.SERVER, "server");
+        try {
+            BlockSecOpsServerProcess process = BlockSecOpsServerProcess.start(
+                    BlockSecOpsSettings.getInstance().getCliPath(), project.getBasePath());
+            BlockSecOpsMetrics.getInstance().recordSince(BlockSecOpsMetrics.Stage.SPAWN, start);
+            BlockSecOpsScanEvents.processStarted(event, process.pid());
+            return process;
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to start blocksecops server: " + e.getMessage(), e);
+        }
+    }
+
+    private void addWorker(BlockSecOpsServerProcess process) {
+        synchronized (this) {
+            if (!disposed) {
+                workers.add(process);
+                notifyAll();
+                return;
+            }
+        }
+        process.shutdown();
+    }
+
+    /**
+     * Stop all but one process once none has had a request for a while.
+     */
+    private void shrinkIfIdle() {
+        List<BlockSecOpsServerProcess> toStop = new ArrayList<>();
+        synchronized (this) {
+            if (workers.size() <= 1) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (BlockSecOpsServerProcess worker : workers) {
+                if (worker.getPendingCount() > 0 || now - worker.getLastRequestMillis() < IDLE_SHRINK_MS) {
+                    return;
+                }
+            }
+            toStop.addAll(workers.subList(1, workers.size()));
+            workers.subList(1, workers.size()).clear();
+        }
+        for (BlockSecOpsServerProcess worker : toStop) {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * Passes results through, counting them for the {@link BlockSecOpsScanEvents.OutputParsed} event.
+     */
+    private static final class CountingHandler implements BlockSecOpsSarifReader.Handler {
+        private final BlockSecOpsSarifReader.Handler delegate;
+        int count;
+
+        CountingHandler(BlockSecOpsSarifReader.Handler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean accept(@Nullable String uri) {
+            return delegate.accept(uri);
+        }
+
+        @Override
+        public void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding) {
+            finding(uri, finding, null);
+        }
+
+        @Override
+        public void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding,
+                            @Nullable String severity) {
+            count++;
+            delegate.finding(uri, finding, severity);
+        }
+
+        @Override
+        public void unlocated(@NotNull String ruleId, @NotNull String level, @NotNull String message,
+                              @Nullable String severity) {
+            delegate.unlocated(ruleId, level, message, severity);
+        }
+
+        @Override
+        public boolean isBaseline(@Nullable String uri, @NotNull String ruleId, int startLine, int endLine) {
+            return delegate.isBaseline(uri, ruleId, startLine, endLine);
+        }
+
+        @Override
+        public boolean wantsSeverity() {
+            return delegate.wantsSeverity();
+        }
+
+        @Override
+        public void severity(@NotNull String severity, int count) {
+            delegate.severity(severity, count);
+        }
+
+        @Override
+        public boolean wantsRules() {
+            return delegate.wantsRules();
+        }
+
+        @Override
+        public void rule(@NotNull JsonObject rule) {
+            delegate.rule(rule);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        reaper.cancel(false);
+        List<BlockSecOpsServerProcess> toStop;
+        synchronized (this) {
+            disposed = true;
+            toStop = new ArrayList<>(workers);
+            workers.clear();
+            notifyAll();
+        }
+        for (BlockSecOpsServerProcess worker : toStop) {
+            worker.shutdown();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single {@code blocksecops server} process, spoken to with newline-delimited JSON-RPC over stdio.
+ * <p>
+ * Responses are decoded straight off the process output with a streaming reader; each request supplies a
+ * {@link ResultDecoder} for its {@code result} member, so large SARIF payloads never become a JSON tree.
+ * The server always writes {@code id} before {@code result}, which is what makes this possible.
+ */
+final class BlockSecOpsServerProcess {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsServerProcess.class);
+    private static final Gson GSON = new Gson();
+    private static final long INITIALIZE_TIMEOUT_MS = 30000;
+
+    private final Process process;
+    private final Writer stdin;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Map<Integer, PendingCall<?>> pending = new ConcurrentHashMap<>();
+    private volatile String cliVersion;
+    private volatile BlockSecOpsCountingReader output;
+    private volatile long lastRequestMillis = System.currentTimeMillis();
+
+    private BlockSecOpsServerProcess(Process process) {
+        this.process = process;
+        this.stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Start the server and wait for the {@code initialize} handshake.
+     */
+    static BlockSecOpsServerProcess start(@NotNull String cliPath, @Nullable String workDir)
+            throws ExecutionException, IOException {
+        GeneralCommandLine commandLine = new GeneralCommandLine()
+                .withExePath(cliPath)
+                .withParameters("server")
+                .withCharset(StandardCharsets.UTF_8);
+
+        if (workDir != null) {
+            commandLine.withWorkDirectory(workDir);
+        }
+
+        BlockSecOpsServerProcess server = new BlockSecOpsServerProcess(commandLine.createProcess());
+        server.startReaders();
+
+        try {
+            // Warm-up has the server check SolidityDefend before the first scan needs it
+            JsonObject params = new JsonObject();
+            params.addProperty("warmup", true);
+            JsonElement info = server.request("initialize", params)
+                    .get(INITIALIZE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (info != null && info.isJsonObject() && info.getAsJsonObject().has("version")) {
+                server.cliVersion = info.getAsJsonObject().get("version").getAsString();
+            }
+        } catch (Exception e) {
+            server.destroy();
+            throw new IOException("blocksecops server failed to initialize: " + e.getMessage(), e);
+        }
+
+        return server;
+    }
+
+    /**
+     * Send a request; the future completes with the {@code result} member or fails with {@link ServerError}.
+     */
+    CompletableFuture<JsonElement> request(@NotNull String method, @NotNull JsonObject params) {
+        return request(method, params, null);
+    }
+
+    /**
+     * Send a request that is cancelled on the server when {@code ticket} is cancelled.
+     */
+    CompletableFuture<JsonElement> request(@NotNull String method, @NotNull JsonObject params,
+                                           @Nullable BlockSecOpsScanScheduler.ScanTicket ticket) {
+        return request(method, params, ticket, JsonParser::parseReader);
+    }
+
+    /**
+     * Send a request whose {@code result} is decoded by {@code decoder} as it streams in.
+     */
+    <T> CompletableFuture<T> request(@NotNull String method, @NotNull JsonObject params,
+                                     @Nullable BlockSecOpsScanScheduler.ScanTicket ticket,
+                                     @NotNull ResultDecoder<T> decoder) {
+        int id = nextId.getAndIncrement();
+        lastRequestMillis = System.currentTimeMillis();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        pending.put(id, new PendingCall<>(future, decoder, "scan".equals(method)));
+
+        JsonObject message = new JsonObject();
+        message.addProperty("jsonrpc", "2.0");
+        message.addProperty("id", id);
+        message.addProperty("method", method);
+        message.add("params", params);
+
+        try {
+            send(message);
+        } catch (IOException e) {
+            pending.remove(id);
+            future.completeExceptionally(e);
+        }
+
+        if (ticket != null) {
+            ticket.onCancel(() -> cancel(id));
+        }
+        return future;
+    }
+
+    /**
+     * Cancel an in-flight request; the server stops the scan behind it.
+     */
+    void cancel(int id) {
+        PendingCall<?> call = pending.remove(id);
+        if (call == null) {
+            return;
+        }
+        call.future.cancel(false);
+
+        JsonObject params = new JsonObject();
+        params.addProperty("id", id);
+        JsonObject message = new JsonObject();
+        message.addProperty("jsonrpc", "2.0");
+        message.addProperty("method", "$/cancelRequest");
+        message.add("params", params);
+
+        try {
+            send(message);
+        } catch (IOException e) {
+            LOG.debug("Failed to cancel blocksecops server request: " + e.getMessage());
+        }
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Requests sent and not yet answered.
+     */
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    long getLastRequestMillis() {
+        return lastRequestMillis;
+    }
+
+    long pid() {
+        return process.pid();
+    }
+
+    /**
+     * Characters read from the server's output so far, to size individual responses.
+     */
+    long getOutputCount() {
+        BlockSecOpsCountingReader counter = output;
+        return counter == null ? 0 : counter.getCount();
+    }
+
+    @Nullable
+    String getCliVersion() {
+        return cliVersion;
+    }
+
+    /**
+     * Ask the server to exit, then make sure it does.
+     */
+    void shutdown() {
+        try {
+            request("shutdown", new JsonObject()).get(2, TimeUnit.SECONDS);
+            stdin.close();
+            if (process.waitFor(2, TimeUnit.SECONDS)) {
+                return;
+            }
+        } catch (Exception e) {
+            LOG.debug("blocksecops server did not shut down cleanly: " + e.getMessage());
+        }
+        destroy();
+    }
+
+    void destroy() {
+        process.destroyForcibly();
+        failPending(new IOException("blocksecops server was stopped"));
+    }
+
+    private synchronized void send(JsonObject message) throws IOException {
+        stdin.write(GSON.toJson(message));
+        stdin.write('\n');
+        stdin.flush();
+    }
+
+    private void startReaders() {
+        Thread stdout = new Thread(this::readResponses, "BlockSecOps server reader");
+        stdout.setDaemon(true);
+        stdout.start();
+
+        Thread stderr = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    LOG.debug("blocksecops server: " + line);
+                }
+            } catch (IOException ignored) {
+                // Process exited
+            }
+        }, "BlockSecOps server stderr");
+        stderr.setDaemon(true);
+        stderr.start();
+    }
+
+    private void readResponses() {
+        BlockSecOpsCountingReader counter = new BlockSecOpsCountingReader(new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)));
+        output = counter;
+        try (JsonReader reader = new JsonReader(counter)) {
+            // Lenient mode reads the newline-separated messages as a sequence of top-level values
+            reader.setLenient(true);
+            while (reader.peek() != JsonToken.END_DOCUMENT) {
+                long start = counter.getCount();
+                PendingCall<?> call = readMessage(reader);
+                if (call != null && call.timed) {
+                    // Accurate to the JSON reader's buffer, which is plenty for SARIF-sized responses
+                    BlockSecOpsMetrics.getInstance().recordOutputSize(counter.getCount() - start);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Either the process exited or the stream can no longer be trusted; a new server is started on demand
+            LOG.debug("blocksecops server output closed: " + e.getMessage());
+            process.destroyForcibly();
+        }
+        failPending(new IOException("blocksecops server exited"));
+    }
+
+    private @Nullable PendingCall<?> readMessage(JsonReader reader) throws IOException {
+        PendingCall<?> call = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    if (reader.peek() == JsonToken.NUMBER) {
+                        call = pending.remove(reader.nextInt());
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "result":
+                    if (call != null) {
+                        call.recordRuntime();
+                        call.complete(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "error":
+                    JsonElement error = JsonParser.parseReader(reader);
+                    if (call != null) {
+                        call.recordRuntime();
+                        call.future.completeExceptionally(toServerError(error));
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return call;
+    }
+
+    private static ServerError toServerError(JsonElement element) {
+        if (element == null || !element.isJsonObject()) {
+            return new ServerError(0, "Unknown error");
+        }
+        JsonObject error = element.getAsJsonObject();
+        return new ServerError(
+                error.has("code") ? error.get("code").getAsInt() : 0,
+                error.has("message") ? error.get("message").getAsString() : "Unknown error");
+    }
+
+    private void failPending(Exception cause) {
+        for (Integer id : pending.keySet()) {
+            PendingCall<?> call = pending.remove(id);
+            if (call != null) {
+                call.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Decodes a response's {@code result} member in place from the protocol stream.
+     */
+    interface ResultDecoder<T> {
+        T decode(JsonReader reader) throws IOException;
+    }
+
+    private static final class PendingCall<T> {
+        final CompletableFuture<T> future;
+        final ResultDecoder<T> decoder;
+        // Scans are recorded in the metrics; handshakes and shutdowns are not
+        final boolean timed;
+        final long sentNanos = System.nanoTime();
+
+        PendingCall(CompletableFuture<T> future, ResultDecoder<T> decoder, boolean timed) {
+            this.future = future;
+            this.decoder = decoder;
+            this.timed = timed;
+        }
+
+        /**
+         * The server has started answering, so the CLI's part is done.
+         */
+        void recordRuntime() {
+            if (timed) {
+                BlockSecOpsMetrics.getInstance().recordSince(BlockSecOpsMetrics.Stage.CLI_RUNTIME, sentNanos);
+            }
+        }
+
+        void complete(JsonReader reader) throws IOException {
+            long start = System.nanoTime();
+            try {
+                future.complete(decoder.decode(reader));
+                if (timed) {
+                    BlockSecOpsMetrics.getInstance().recordSince(BlockSecOpsMetrics.Stage.PARSE, start);
+                }
+            } catch (IOException | RuntimeException e) {
+                // A decoder that fails mid-value leaves the stream unusable
+                future.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * JSON-RPC error returned by the server; the transport itself is still healthy.
+     */
+    static class ServerError extends Exception {
+        final int code;
+
+        ServerError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fills the project's {@link BlockSecOpsScanServer} pool in the background when the project opens, so the
+ * first scan of each file doesn't wait for a Python interpreter to start.
+ */
+public final class BlockSecOpsServerWarmup implements StartupActivity.Background {
+
+    @Override
+    public void runActivity(@NotNull Project project) {
+        // Engine mode and the API client never talk to the CLI from the editor
+        if (BlockSecOpsSettings.getInstance().isDirectEngine() || BlockSecOpsApiClient.isEnabled()) {
+            return;
+        }
+        BlockSecOpsScanServer.getInstance(project).warmUp();
+    }
+}
@@ -0,0 +1,118 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Application-level BlockSecOps settings, persisted in {@code blocksecops.xml}.
+ */
+@State(name = "BlockSecOpsSettings", storages = @Storage("blocksecops.xml"))
+public final class BlockSecOpsSettings implements PersistentStateComponent<BlockSecOpsSettings.State> {
+
+    private State state = new State();
+
+    public static BlockSecOpsSettings getInstance() {
+        return ApplicationManager.getApplication().getService(BlockSecOpsSettings.class);
+    }
+
+    @Override
+    public @NotNull State getState() {
+        return state;
+    }
+
+    @Override
+    public void loadState(@NotNull State state) {
+        this.state = state;
+    }
+
+    public String getCliPath() {
+        return state.cliPath;
+    }
+
+    public void setCliPath(String cliPath) {
+        state.cliPath = cliPath;
+    }
+
+    /**
+     * Maximum number of scans the plugin runs at once, across all projects.
+     */
+    public int getMaxConcurrentScans() {
+        return Math.max(1, state.maxConcurrentScans);
+    }
+
+    public void setMaxConcurrentScans(int maxConcurrentScans) {
+        state.maxConcurrentScans = maxConcurrentScans;
+    }
+
+    /**
+     * Show findings as range highlighters that are updated in place, rather than as annotations rebuilt
+     * on every highlighting pass.
+     */
+    public boolean isIncrementalHighlighting() {
+        return state.incrementalHighlighting;
+    }
+
+    public void setIncrementalHighlighting(boolean incrementalHighlighting) {
+        state.incrementalHighlighting = incrementalHighlighting;
+    }
+
+    /**
+     * Run the cached SolidityDefend binary directly for editor scans instead of going through the CLI.
+     */
+    public boolean isDirectEngine() {
+        return state.directEngine;
+    }
+
+    public void setDirectEngine(boolean directEngine) {
+        state.directEngine = directEngine;
+    }
+
+    /**
+     * Scan with the local engine and let the CLI upload results in the background, instead of waiting for
+     * the API on every scan.
+     */
+    public boolean isOfflineMode() {
+        return state.offlineMode;
+    }
+
+    public void setOfflineMode(boolean offlineMode) {
+        state.offlineMode = offlineMode;
+    }
+
+    /**
+     * Number of {@code blocksecops server} processes kept per project; 0 sizes the pool from cores and memory.
+     */
+    public int getServerPoolSize() {
+        return state.serverPoolSize;
+    }
+
+    public void setServerPoolSize(int serverPoolSize) {
+        state.serverPoolSize = serverPoolSize;
+    }
+
+    /**
+     * Send remote scans straight to the API from the IDE instead of through a CLI process. Credentials and
+     * the API URL are shared with the CLI.
+     */
+    public boolean isNativeApiClient() {
+        return state.nativeApiClient;
+    }
+
+    public void setNativeApiClient(boolean nativeApiClient) {
+        state.nativeApiClient = nativeApiClient;
+    }
+
+    public static class State {
+        public String cliPath = "blocksecops";
+        // A quarter of the cores leaves room for the IDE itself
+        public int maxConcurrentScans = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        public boolean incrementalHighlighting = false;
+        public boolean directEngine = false;
+        public boolean offlineMode = false;
+        public int serverPoolSize = 0;
+        public boolean nativeApiClient = false;
+    }
+}
@@ -0,0 +1,70 @@
+package com.blocksecops.intellij;
+
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.testFramework.LightVirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Action to open the raw SARIF of the last scan, file or project, in a read-only editor tab.
+ */
+public class BlockSecOpsShowResultsAction extends AnAction {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsShowResultsAction.class);
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        Project project = event.getProject();
+        if (project == null) {
+            return;
+        }
+
+        BlockSecOpsScanOutput output = BlockSecOpsResultsService.getInstance(project).getLastOutput();
+        if (output == null) {
+            showNotification(project, "No scan results yet", NotificationType.INFORMATION);
+            return;
+        }
+
+        // A project scan's log can be spilled to disk and many megabytes long; read it off the EDT
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            StringBuilder text = new StringBuilder((int) Math.min(output.length(), Integer.MAX_VALUE - 8));
+            try (Reader in = output.openReader()) {
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    text.append(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                // Replaced by a newer scan, which deletes the previous spill file
+                LOG.debug("Failed to read scan results: " + e.getMessage());
+                showNotification(project, "Scan results are no longer available", NotificationType.WARNING);
+                return;
+            }
+
+            ApplicationManager.getApplication().invokeLater(() -> {
+                if (project.isDisposed()) {
+                    return;
+                }
+                LightVirtualFile file = new LightVirtualFile("blocksecops-results.sarif", text);
+                file.setWritable(false);
+                FileEditorManager.getInstance(project).openFile(file, true);
+            });
+        });
+    }
+
+    private static void showNotification(Project project, String message, NotificationType type) {
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("BlockSecOps Notifications")
+                .createNotification(message, type)
+                .notify(project);
+    }
+}
@@ -0,0 +1,377 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Runs the SolidityDefend binary the CLI keeps in {@code ~/.blocksecops/bin} directly, without a Python
+ * process in between.
+ * <p>
+ * For local scans the CLI does little more than find this binary, run it with {@code -f json} and reshape
+ * its findings, so the editor can do that itself. The binary is only used once the CLI has downloaded it;
+ * installing and updating it stays the CLI's job.
+ */
+final class BlockSecOpsSolidityDefend {
+
+    private static final Logger LOG = Logger.getInstance(BlockSecOpsSolidityDefend.class);
+
+    // Python's uuid.NAMESPACE_URL
+    private static final UUID URL_NAMESPACE = UUID.fromString("6ba7b811-9dad-11d1-80b4-00c04fd430c8");
+
+    private static final Path INSTALL_DIR = Paths.get(System.getProperty("user.home"), ".blocksecops", "bin");
+    private static final String VERSION_FILE = ".soliditydefend_version";
+
+    // Same as the CLI's snapshots: tmpfs keeps the scanned buffer off the disk
+    private static final Path RAM_DIR = Paths.get("/dev/shm");
+
+    private BlockSecOpsSolidityDefend() {
+    }
+
+    /**
+     * The installed binary, or {@code null} if the CLI hasn't downloaded it yet.
+     */
+    static @Nullable Path findBinary() {
+        String name = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows")
+                ? "soliditydefend.exe" : "soliditydefend";
+        Path binary = INSTALL_DIR.resolve(name);
+        return Files.isExecutable(binary) ? binary : null;
+    }
+
+    /**
+     * Identifies the engine in cache keys, so its results are never mixed up with the CLI's; {@code null} when
+     * the installed version can't be read.
+     */
+    static @Nullable String getVersion() {
+        try {
+            return "soliditydefend-" + new String(Files.readAllBytes(INSTALL_DIR.resolve(VERSION_FILE)),
+                    StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scan {@code content} as the file at {@code filePath}.
+     *
+     * @return the findings, or {@code null} if the scan failed or was cancelled
+     */
+    static @Nullable List<BlockSecOpsExternalAnnotator.Finding> scan(
+            @NotNull Path binary, @NotNull String filePath, byte[] content, long timeoutMs,
+            @NotNull BlockSecOpsScanScheduler.ScanTicket ticket, @Nullable BlockSecOpsBaseline.Matcher baseline) {
+        Path snapshotDir = null;
+        try {
+            // The binary needs a real file; keeping the name keeps its language detection working
+            snapshotDir = Files.isDirectory(RAM_DIR) && Files.isWritable(RAM_DIR)
+                    ? Files.createTempDirectory(RAM_DIR, "blocksecops-")
+                    : Files.createTempDirectory("blocksecops-");
+            Path snapshot = snapshotDir.resolve(Paths.get(filePath).getFileName().toString());
+            Files.write(snapshot, content);
+            return run(binary, filePath, snapshot, timeoutMs, ticket, baseline);
+        } catch (IOException e) {
+            LOG.warn("Failed to snapshot " + filePath + " for SolidityDefend", e);
+            return null;
+        } finally {
+            if (snapshotDir != null) {
+                deleteSnapshot(snapshotDir);
+            }
+        }
+    }
+
+    private static @Nullable List<BlockSecOpsExternalAnnotator.Finding> run(
+            Path binary, String filePath, Path snapshot, long timeoutMs, BlockSecOpsScanScheduler.ScanTicket ticket,
+            BlockSecOpsBaseline.Matcher baseline) {
+        GeneralCommandLine commandLine = new GeneralCommandLine()
+                .withExePath(binary.toString())
+                .withParameters(snapshot.toString(), "-f", "json")
+                .withCharset(StandardCharsets.UTF_8);
+
+        BlockSecOpsMetrics metrics = BlockSecOpsMetrics.getInstance();
+        long spawnStart = System.nanoTime();
+        BlockSecOpsScanEvents.ProcessStarted started =
+                BlockSecOpsScanEvents.processStarting(filePath, BlockSecOpsScanEvents.ANNOTATOR, "soliditydefend");
+        Process process;
+        try {
+            process = commandLine.createProcess();
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to run SolidityDefend: " + e.getMessage());
+            return null;
+        }
+        long runStart = System.nanoTime();
+        metrics.recordSince(BlockSecOpsMetrics.Stage.SPAWN, spawnStart);
+        BlockSecOpsScanEvents.processStarted(started, process.pid());
+
+        ticket.onCancel(process::destroyForcibly);
+
+        Application application = ApplicationManager.getApplication();
+        Future<String> stderr = application.executeOnPooledThread(() -> readErrors(process));
+        BlockSecOpsCountingReader stdout = new BlockSecOpsCountingReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String fileName = snapshot.getFileName().toString();
+        Future<List<BlockSecOpsExternalAnnotator.Finding>> parsed = application.executeOnPooledThread(() -> {
+            try (Reader in = stdout) {
+                return readFindings(in, fileName, baseline);
+            }
+        });
+
+        try {
+            process.getOutputStream().close();
+
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (!process.waitFor(BlockSecOpsScanScheduler.POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                BlockSecOpsScanScheduler.checkCanceled(ticket);
+                if (ticket.isCancelled() || System.currentTimeMillis() > deadline) {
+                    ticket.cancel();
+                    return null;
+                }
+            }
+            metrics.recordSince(BlockSecOpsMetrics.Stage.CLI_RUNTIME, runStart);
+
+            // Like the CLI, a non-zero exit still counts when the findings were written
+            long parseStart = System.nanoTime();
+            BlockSecOpsScanEvents.OutputParsed event =
+                    BlockSecOpsScanEvents.parsing(filePath, BlockSecOpsScanEvents.ANNOTATOR);
+            try {
+                List<BlockSecOpsExternalAnnotator.Finding> findings = parsed.get(timeoutMs, TimeUnit.MILLISECONDS);
+                metrics.recordSince(BlockSecOpsMetrics.Stage.PARSE, parseStart);
+                metrics.recordOutputSize(stdout.getCount());
+                BlockSecOpsScanEvents.parsed(event, stdout.getCount(), findings.size());
+                return findings;
+            } catch (java.util.concurrent.ExecutionException e) {
+                LOG.warn("SolidityDefend failed scanning " + filePath + " (exit code " + process.exitValue() + "): "
+                        + stderr.get(timeoutMs, TimeUnit.MILLISECONDS), e.getCause());
+            }
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ticket.cancel();
+        } catch (Exception e) {
+            LOG.warn("SolidityDefend scan of " + filePath + " failed", e);
+            ticket.cancel();
+        }
+
+        return null;
+    }
+
+    /**
+     * Decode the {@code findings} of SolidityDefend's JSON report, keeping those in the scanned file that aren't
+     * in the baseline.
+     * <p>
+     * Severities map to SARIF levels the same way the CLI's SARIF output does, so both engines look the same
+     * in the editor.
+     */
+    static List<BlockSecOpsExternalAnnotator.Finding> readFindings(@NotNull Reader in, @NotNull String fileName,
+                                                                   @Nullable BlockSecOpsBaseline.Matcher baseline)
+            throws IOException {
+        List<BlockSecOpsExternalAnnotator.Finding> findings = new ArrayList<>();
+        JsonReader reader = new JsonReader(in);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("findings".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    BlockSecOpsExternalAnnotator.Finding finding = readFinding(reader, fileName, baseline);
+                    if (finding != null) {
+                        findings.add(finding);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return findings;
+    }
+
+    private static @Nullable BlockSecOpsExternalAnnotator.Finding readFinding(
+            JsonReader reader, String fileName, @Nullable BlockSecOpsBaseline.Matcher baseline) throws IOException {
+        String detectorId = "unknown";
+        String category = null;
+        String severity = "info";
+        String message = "";
+        String file = null;
+        int line = 1;
+        int endLine = -1;
+        int column = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("location".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "file":
+                            file = nextString(reader, null);
+                            break;
+                        case "line":
+                            line = nextInt(reader, 1);
+                            break;
+                        case "end_line":
+                            endLine = nextInt(reader, -1);
+                            break;
+                        case "column":
+                            column = nextInt(reader, 0);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("detector_id".equals(name)) {
+                detectorId = nextString(reader, detectorId);
+            } else if ("category".equals(name)) {
+                category = nextString(reader, null);
+            } else if ("severity".equals(name)) {
+                severity = nextString(reader, severity);
+            } else if ("message".equals(name)) {
+                message = nextString(reader, message);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Imported files can be analyzed too; only the scanned file's findings belong to this editor
+        if (file != null && !Paths.get(file).getFileName().toString().equals(fileName)) {
+            return null;
+        }
+
+        // The rule id and message the CLI's SARIF formatter gives the same finding, so both engines agree on
+        // baselines and tooltips
+        String ruleId = category != null && !category.isEmpty()
+                ? category : "BSO-" + localVulnerabilityId(detectorId, line, message);
+        if (baseline != null && baseline.isBaseline(ruleId, line, Math.max(line, endLine))) {
+            return null;
+        }
+        return new BlockSecOpsExternalAnnotator.Finding(ruleId, toLevel(severity),
+                message.isEmpty() ? formatTitle(detectorId) : message, line, Math.max(line, endLine), column);
+    }
+
+    /**
+     * The CLI's {@code local_vulnerability_id}: a name-based (version 5) UUID in the URL namespace.
+     */
+    static UUID localVulnerabilityId(@NotNull String detectorId, int line, @NotNull String message) {
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer namespace = ByteBuffer.allocate(16);
+        namespace.putLong(URL_NAMESPACE.getMostSignificantBits()).putLong(URL_NAMESPACE.getLeastSignificantBits());
+        sha1.update(namespace.array());
+        sha1.update(("blocksecops:" + detectorId + ":" + line + ":" + message).getBytes(StandardCharsets.UTF_8));
+
+        byte[] hash = sha1.digest();
+        hash[6] = (byte) ((hash[6] & 0x0f) | 0x50);
+        hash[8] = (byte) ((hash[8] & 0x3f) | 0x80);
+        ByteBuffer bits = ByteBuffer.wrap(hash, 0, 16);
+        return new UUID(bits.getLong(), bits.getLong());
+    }
+
+    /**
+     * The CLI's {@code _format_title}: {@code "reentrancy-eth"} becomes {@code "Reentrancy Eth"}.
+     */
+    static String formatTitle(@NotNull String detectorId) {
+        StringBuilder title = new StringBuilder(detectorId.length());
+        boolean wordStart = true;
+        for (char c : detectorId.replace('-', ' ').replace('_', ' ').toCharArray()) {
+            title.append(wordStart ? Character.toUpperCase(c) : Character.toLowerCase(c));
+            wordStart = !Character.isLetter(c);
+        }
+        return title.toString();
+    }
+
+    /**
+     * SolidityDefend severity to SARIF level, as in the CLI's {@code SEVERITY_TO_SARIF_LEVEL}.
+     */
+    static String toLevel(@NotNull String severity) {
+        switch (severity.toLowerCase(Locale.ROOT)) {
+            case "critical":
+            case "high":
+            case "error":
+                return "error";
+            case "medium":
+            case "warning":
+                return "warning";
+            case "low":
+                return "note";
+            default:
+                return "none";
+        }
+    }
+
+    private static String nextString(JsonReader reader, String fallback) throws IOException {
+        if (reader.peek() == JsonToken.STRING || reader.peek() == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return fallback;
+    }
+
+    private static int nextInt(JsonReader reader, int fallback) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return reader.nextInt();
+        }
+        reader.skipValue();
+        return fallback;
+    }
+
+    private static String readErrors(Process process) {
+        StringBuilder errors = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // The binary's diagnostics are short; keep the first few lines for the log
+                if (errors.length() < 4096) {
+                    errors.append(line).append('\n');
+                }
+            }
+        } catch (IOException ignored) {
+            // Process exited
+        }
+        return errors.toString().trim();
+    }
+
+    private static void deleteSnapshot(Path snapshotDir) {
+        try (Stream<Path> files = Files.list(snapshotDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(snapshotDir);
+        } catch (IOException e) {
+            LOG.debug("Failed to delete " + snapshotDir + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.StatusBar;
+import com.intellij.openapi.wm.StatusBarWidget;
+import com.intellij.util.Consumer;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.Component;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows the median CLI runtime and process spawn time of recent scans.
+ */
+final class BlockSecOpsStatusBarWidget implements StatusBarWidget, StatusBarWidget.TextPresentation {
+
+    static final String ID = "BlockSecOps.Metrics";
+    private static final long REFRESH_SECONDS = 2;
+
+    private final Project project;
+    private ScheduledFuture<?> refresh;
+
+    BlockSecOpsStatusBarWidget(Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public @NotNull String ID() {
+        return ID;
+    }
+
+    @Override
+    public @Nullable WidgetPresentation getPresentation() {
+        return this;
+    }
+
+    @Override
+    public void install(@NotNull StatusBar statusBar) {
+        refresh = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                () -> ApplicationManager.getApplication().invokeLater(() -> statusBar.updateWidget(ID)),
+                REFRESH_SECONDS, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void dispose() {
+        if (refresh != null) {
+            refresh.cancel(false);
+        }
+    }
+
+    @Override
+    public @NotNull String getText() {
+        BlockSecOpsMetrics metrics = BlockSecOpsMetrics.getInstance();
+        BlockSecOpsHistogram.Snapshot runtime = metrics.snapshot(BlockSecOpsMetrics.Stage.CLI_RUNTIME);
+        if (runtime.count == 0) {
+            return "BlockSecOps: no scans";
+        }
+        BlockSecOpsHistogram.Snapshot spawn = metrics.snapshot(BlockSecOpsMetrics.Stage.SPAWN);
+        return "BlockSecOps: " + BlockSecOpsMetrics.format(BlockSecOpsMetrics.Stage.CLI_RUNTIME, runtime.percentile(50))
+                + " (spawn " + BlockSecOpsMetrics.format(BlockSecOpsMetrics.Stage.SPAWN, spawn.percentile(50)) + ")";
+    }
+
+    @Override
+    public float getAlignment() {
+        return Component.CENTER_ALIGNMENT;
+    }
+
+    @Override
+    public @Nullable String getTooltipText() {
+        return "Median BlockSecOps scan time and process start-up. Click to copy diagnostics.";
+    }
+
+    @Override
+    public @Nullable Consumer<MouseEvent> getClickConsumer() {
+        return event -> BlockSecOpsCopyDiagnosticsAction.copyDiagnostics(project);
+    }
+}
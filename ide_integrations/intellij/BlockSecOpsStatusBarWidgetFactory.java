@@ -0,0 +1,43 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.StatusBar;
+import com.intellij.openapi.wm.StatusBarWidget;
+import com.intellij.openapi.wm.StatusBarWidgetFactory;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Status-bar widget showing median scan timings; clicking it copies the full diagnostics.
+ */
+public class BlockSecOpsStatusBarWidgetFactory implements StatusBarWidgetFactory {
+
+    @Override
+    public @NotNull String getId() {
+        return BlockSecOpsStatusBarWidget.ID;
+    }
+
+    @Override
+    public @NotNull String getDisplayName() {
+        return "BlockSecOps Scan Timings";
+    }
+
+    @Override
+    public boolean isAvailable(@NotNull Project project) {
+        return true;
+    }
+
+    @Override
+    public @NotNull StatusBarWidget createWidget(@NotNull Project project) {
+        return new BlockSecOpsStatusBarWidget(project);
+    }
+
+    @Override
+    public void disposeWidget(@NotNull StatusBarWidget widget) {
+        widget.dispose();
+    }
+
+    @Override
+    public boolean canBeEnabledOn(@NotNull StatusBar statusBar) {
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.EditorMouseEvent;
+import com.intellij.openapi.editor.event.EditorMouseEventArea;
+import com.intellij.openapi.editor.event.EditorMouseMotionListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.JComponent;
+
+/**
+ * Shows the message of a {@link BlockSecOpsHighlighter} finding when the code under it is hovered.
+ * <p>
+ * The editor only shows hover tooltips for the highlighters of its own highlighting passes, so the plain range
+ * highlighters of the incremental mode get theirs here, as the editor component's tooltip text. The tooltip is
+ * only looked up when the mouse moves to another offset, and only formatted when first shown.
+ */
+public final class BlockSecOpsTooltipListener implements EditorMouseMotionListener {
+
+    // Last offset looked up, and whether the component's tooltip text is ours, so others' are left alone
+    private static final Key<Integer> LAST_OFFSET = Key.create("blocksecops.tooltip.offset");
+    private static final Key<Boolean> SHOWING = Key.create("blocksecops.tooltip.showing");
+
+    @Override
+    public void mouseMoved(@NotNull EditorMouseEvent event) {
+        Editor editor = event.getEditor();
+        Project project = editor.getProject();
+        boolean overText = event.getArea() == EditorMouseEventArea.EDITING_AREA && event.isOverText();
+        int offset = overText ? event.getOffset() : -1;
+
+        Integer last = editor.getUserData(LAST_OFFSET);
+        if (last != null && last == offset) {
+            return;
+        }
+        editor.putUserData(LAST_OFFSET, offset);
+
+        String tooltip = project != null && offset >= 0
+                ? BlockSecOpsHighlighter.tooltipAt(project, editor.getDocument(), offset)
+                : null;
+        JComponent component = editor.getContentComponent();
+        if (tooltip != null) {
+            component.setToolTipText("<html>" + tooltip + "</html>");
+            editor.putUserData(SHOWING, true);
+        } else if (editor.getUserData(SHOWING) != null) {
+            component.setToolTipText(null);
+            editor.putUserData(SHOWING, null);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.fixtures.CodeInsightTestFixture;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import com.intellij.testFramework.fixtures.impl.TempDirTestFixtureImpl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keystroke-to-annotation latency, measured in a headless IDE against {@code fake_cli.py}.
+ * <p>
+ * Opens a number of Solidity files, each in its own editor, and types into all of them at once: one thread
+ * per editor types a line and runs the annotator on the result, the way the daemon would, until its
+ * findings are in. The time from the keystroke to the findings being ready to apply is one sample, so
+ * debounce, contention for the scan governor and the server pool, the CLI itself and decoding are all
+ * included. At the end it prints latency percentiles and how many CLI processes were started.
+ * <p>
+ * This is a program, not a test: run its {@code main} with the plugin, the IntelliJ test framework and
+ * {@code fake_cli.py} available. Options (all {@code --name value}):
+ * <pre>
+ *   --editors 8  --keystrokes 200  --latency-ms 200  --jitter-ms 0  --results 5
+ *   --failure none|exit|crash|garbage|hang  --failure-rate 1.0  --fake-cli benchmarks/fake_cli.py
+ * </pre>
+ * {@code --keystrokes} is the total, spread evenly over the editors.
+ */
+public final class AnnotationLatencyHarness {
+
+    private static final String FINDING_PREFIX = "Fake finding";
+
+    private AnnotationLatencyHarness() {
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Map<String, String> options = parseOptions(args);
+        int editors = Integer.parseInt(options.getOrDefault("editors", "8"));
+        int keystrokes = Integer.parseInt(options.getOrDefault("keystrokes", "200"));
+
+        Path work = Files.createTempDirectory("blocksecops-latency");
+        Path processLog = work.resolve("processes.log");
+        Path launcher = writeLauncher(work, options, processLog);
+
+        IdeaTestFixtureFactory factory = IdeaTestFixtureFactory.getFixtureFactory();
+        TestFixtureBuilder<IdeaProjectTestFixture> builder = factory.createFixtureBuilder("blocksecops-latency");
+        CodeInsightTestFixture fixture = factory.createCodeInsightFixture(builder.getFixture(),
+                new TempDirTestFixtureImpl());
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger missing = new AtomicInteger();
+        List<PsiFile> files = new ArrayList<>();
+        List<Editor> openEditors = new ArrayList<>();
+
+        EdtTestUtil.runInEdtAndWait(() -> {
+            fixture.setUp();
+            BlockSecOpsSettings.getInstance().setCliPath(launcher.toString());
+            for (int i = 0; i < editors; i++) {
+                PsiFile file = fixture.addFileToProject("src/Contract" + i + ".sol", SarifGenerator.source(200));
+                files.add(file);
+                openEditors.add(EditorFactory.getInstance().createEditor(
+                        fixture.getDocument(file), fixture.getProject()));
+            }
+        });
+        try {
+            measure(fixture.getProject(), files, openEditors, keystrokes, latencies, missing);
+        } finally {
+            EdtTestUtil.runInEdtAndWait(() -> {
+                openEditors.forEach(EditorFactory.getInstance()::releaseEditor);
+                fixture.tearDown();
+            });
+        }
+
+        report(latencies, missing.get(), processLog);
+        System.exit(0);
+    }
+
+    private static void measure(Project project, List<PsiFile> files, List<Editor> editors, int keystrokes,
+                                List<Long> latencies, AtomicInteger missing) throws Exception {
+        BlockSecOpsExternalAnnotator annotator = new BlockSecOpsExternalAnnotator();
+
+        // First pass per file starts the server and fills caches; not measured
+        for (int i = 0; i < files.size(); i++) {
+            annotate(annotator, files.get(i), editors.get(i));
+        }
+
+        ExecutorService typists = Executors.newFixedThreadPool(files.size());
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                int editor = i;
+                running.add(typists.submit(() -> {
+                    for (int k = editor; k < keystrokes; k += files.size()) {
+                        long start = System.nanoTime();
+                        type(project, editors.get(editor).getDocument(), "\n// edit " + k);
+                        List<BlockSecOpsExternalAnnotator.Finding> findings =
+                                annotate(annotator, files.get(editor), editors.get(editor));
+                        long elapsed = System.nanoTime() - start;
+
+                        if (findings != null && findings.stream().anyMatch(finding -> finding.message != null
+                                && finding.message.startsWith(FINDING_PREFIX))) {
+                            latencies.add(elapsed);
+                        } else {
+                            // Failed or cancelled scan; counted, but not a latency sample
+                            missing.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> typist : running) {
+                typist.get();
+            }
+        } finally {
+            typists.shutdownNow();
+        }
+    }
+
+    private static void type(Project project, Document document, String text) {
+        EdtTestUtil.runInEdtAndWait(() -> WriteCommandAction.runWriteCommandAction(project,
+                () -> document.insertString(document.getTextLength(), text)));
+    }
+
+    /**
+     * The annotator's two background phases, as the daemon runs them for one highlighting pass.
+     */
+    private static List<BlockSecOpsExternalAnnotator.Finding> annotate(BlockSecOpsExternalAnnotator annotator,
+                                                                       PsiFile file, Editor editor) {
+        BlockSecOpsDocumentSnapshot snapshot =
+                ReadAction.compute(() -> annotator.collectInformation(file, editor, false));
+        return annotator.doAnnotate(snapshot);
+    }
+
+    private static void report(List<Long> latencies, int missing, Path processLog) throws IOException {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+
+        System.out.println("Keystroke to annotation");
+        System.out.printf("  samples   %d (%d without annotations)%n", sorted.length, missing);
+        if (sorted.length > 0) {
+            System.out.printf("  p50       %d ms%n", millis(percentile(sorted, 50)));
+            System.out.printf("  p95       %d ms%n", millis(percentile(sorted, 95)));
+            System.out.printf("  p99       %d ms%n", millis(percentile(sorted, 99)));
+            System.out.printf("  max       %d ms%n", millis(sorted[sorted.length - 1]));
+        }
+
+        Map<String, Integer> processes = new HashMap<>();
+        if (Files.exists(processLog)) {
+            for (String line : Files.readAllLines(processLog, StandardCharsets.UTF_8)) {
+                String[] fields = line.split(" ");
+                if (fields.length == 2) {
+                    processes.merge(fields[1], 1, Integer::sum);
+                }
+            }
+        }
+        System.out.printf("CLI processes started: %d (server %d, one-shot scan %d)%n",
+                processes.values().stream().mapToInt(Integer::intValue).sum(),
+                processes.getOrDefault("server", 0), processes.getOrDefault("scan", 0));
+    }
+
+    /**
+     * Nearest-rank percentile of sorted samples.
+     */
+    static long percentile(long[] sorted, int percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * A script that runs the fake CLI with this run's settings, to stand in for the {@code blocksecops}
+     * executable. Settings go through the environment, which the plugin passes on to the processes it starts.
+     */
+    private static Path writeLauncher(Path work, Map<String, String> options, Path processLog) throws IOException {
+        Path fakeCli = Paths.get(options.getOrDefault("fake-cli", "benchmarks/fake_cli.py")).toAbsolutePath();
+        String script = "#!/bin/sh\n"
+                + "export FAKE_CLI_LATENCY_MS=" + options.getOrDefault("latency-ms", "200") + "\n"
+                + "export FAKE_CLI_JITTER_MS=" + options.getOrDefault("jitter-ms", "0") + "\n"
+                + "export FAKE_CLI_RESULTS=" + options.getOrDefault("results", "5") + "\n"
+                + "export FAKE_CLI_FAILURE=" + options.getOrDefault("failure", "none") + "\n"
+                + "export FAKE_CLI_FAILURE_RATE=" + options.getOrDefault("failure-rate", "1.0") + "\n"
+                + "export FAKE_CLI_LOG='" + processLog + "'\n"
+                + "exec python3 '" + fakeCli + "' \"$@\"\n";
+
+        Path launcher = work.resolve("blocksecops");
+        Files.write(launcher, script.getBytes(StandardCharsets.UTF_8));
+        if (!launcher.toFile().setExecutable(true)) {
+            throw new IOException("Cannot make " + launcher + " executable");
+        }
+        return launcher;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value, got " + Arrays.toString(args));
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,123 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link BlockSecOpsApiClient} against a running {@code fake_api.py} and checks that it reuses its
+ * connections.
+ * <p>
+ * Runs {@code --scans} scans of distinct contents, {@code --concurrency} at a time, then reads the stub's
+ * {@code /stats}. Every request other than an event stream, which the stub ends by closing its connection,
+ * has to go over a connection that is already open, so the client may open at most one connection per
+ * concurrent scan plus one per event stream. Exits with status 1 if it opened more, or if a scan failed or
+ * came back without results.
+ * <p>
+ * This is a program, not a test: start {@code fake_api.py}, then run its {@code main} with the plugin and
+ * Gson on the classpath. Options (all {@code --name value}):
+ * <pre>
+ *   --url http://127.0.0.1:8765  --scans 20  --concurrency 4
+ * </pre>
+ * The contract map goes to a temporary home directory, so the check never reads or writes the real one.
+ */
+public final class ApiClientCheck {
+
+    private static final long SCAN_TIMEOUT_MS = 60000;
+
+    private ApiClientCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        URI url = URI.create(options.getOrDefault("url", "http://127.0.0.1:8765"));
+        int scans = Integer.parseInt(options.getOrDefault("scans", "20"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "4"));
+
+        // Before the client class loads, which resolves its config directory once
+        System.setProperty("user.home", Files.createTempDirectory("blocksecops-check").toString());
+        BlockSecOpsApiClient client = new BlockSecOpsApiClient(url, "test");
+
+        JsonObject before = stats(url);
+        List<String> failures = new ArrayList<>();
+        for (int start = 0; start < scans; start += concurrency) {
+            List<CompletableFuture<BlockSecOpsApiClient.ScanResults>> wave = new ArrayList<>();
+            for (int i = start; i < Math.min(scans, start + concurrency); i++) {
+                byte[] content = ("// check " + System.nanoTime() + "\ncontract Check" + i + " {}\n")
+                        .getBytes(StandardCharsets.UTF_8);
+                wave.add(client.scan("Check" + i + ".sol", content, "jetbrains", SCAN_TIMEOUT_MS));
+            }
+            for (CompletableFuture<BlockSecOpsApiClient.ScanResults> scan : wave) {
+                try {
+                    BlockSecOpsApiClient.ScanResults results = scan.get(SCAN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (BlockSecOpsSarifMerger.countResults(results.sarif) == 0) {
+                        failures.add("a scan returned no results");
+                    }
+                } catch (Exception e) {
+                    failures.add("a scan failed: " + e);
+                }
+            }
+        }
+        JsonObject after = stats(url);
+
+        // Each /stats read is a request on a connection of its own; leave the second one out
+        int connections = delta(before, after, "connections") - 1;
+        int requests = delta(before, after, "requests") - 1;
+        int streams = delta(before, after, "event_streams");
+        int allowed = Math.min(scans, concurrency) + streams;
+        System.out.printf("%d scans, %d at a time: %d requests, %d event streams over %d connections (at most %d)%n",
+                scans, concurrency, requests, streams, connections, allowed);
+        if (connections > allowed) {
+            failures.add("opened " + connections + " connections, expected at most " + allowed);
+        }
+
+        failures.forEach(failure -> System.out.println("FAIL: " + failure));
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * The stub's counters, read over a connection of its own so the client's pool isn't touched.
+     */
+    private static JsonObject stats(URI url) throws IOException {
+        int port = url.getPort() != -1 ? url.getPort() : 80;
+        try (Socket socket = new Socket(url.getHost(), port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /stats HTTP/1.1\r\nHost: " + url.getHost() + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            String response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return JsonParser.parseString(response.substring(response.indexOf("\r\n\r\n") + 4)).getAsJsonObject();
+        }
+    }
+
+    private static int delta(JsonObject before, JsonObject after, String name) {
+        return after.get(name).getAsInt() - before.get(name).getAsInt();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option value, got " + Arrays.toString(args));
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,76 @@
+package com.blocksecops.intellij;
+
+import com.intellij.openapi.project.Project;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping one file's findings from line/column to document offsets, including building the snapshot's line
+ * table, as the annotator does once per highlighting pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LocateFindingsBenchmark {
+
+    // Locating findings never touches the project, so a stub stands in for one without starting the platform
+    private static final Project PROJECT = (Project) Proxy.newProxyInstance(
+            Project.class.getClassLoader(), new Class<?>[]{Project.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "toString":
+                        return "LocateFindingsBenchmark project";
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException("Project." + method.getName());
+                }
+            });
+
+    @Param({"10", "1000", "100000"})
+    public int findings;
+
+    @Param({"500", "20000"})
+    public int lines;
+
+    private List<BlockSecOpsExternalAnnotator.Finding> decoded;
+    private String text;
+
+    @Setup
+    public void setUp() throws IOException {
+        // A single file, so every generated result belongs to it
+        byte[] sarif = SarifGenerator.generate(findings, 1, 42);
+        decoded = BlockSecOpsSarifReader.readFindings(
+                new InputStreamReader(new ByteArrayInputStream(sarif), StandardCharsets.UTF_8),
+                "/project/" + SarifGenerator.filePath(0), "/project", null);
+        text = SarifGenerator.source(lines);
+    }
+
+    @Benchmark
+    public List<BlockSecOpsExternalAnnotator.Finding> locate() {
+        BlockSecOpsDocumentSnapshot snapshot = new BlockSecOpsDocumentSnapshot(
+                PROJECT, "/project/" + SarifGenerator.filePath(0), text, 1);
+        return BlockSecOpsExternalAnnotator.locateFindings(decoded, snapshot);
+    }
+}
@@ -0,0 +1,122 @@
+package com.blocksecops.intellij;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Synthetic SARIF logs shaped like blocksecops-cli output, for benchmarks and the latency harness.
+ * <p>
+ * Results are spread round-robin over {@code files} files named {@code src/Contract<n>.sol}, with rule ids,
+ * levels and line numbers drawn from a seeded random, so the same arguments always produce the same bytes.
+ * The log is written as a stream, so a million results never sit in memory as a string.
+ * <p>
+ * Run directly to write a log to disk: {@code SarifGenerator <results> <files> <out.sarif>}.
+ */
+final class SarifGenerator {
+
+    static final String[] RULES = {
+            "reentrancy-eth", "unchecked-transfer", "tx-origin", "timestamp-dependence", "uninitialized-storage",
+            "arbitrary-send", "delegatecall-loop", "weak-prng", "locked-ether", "shadowing-state"
+    };
+    static final String[] LEVELS = {"error", "warning", "note"};
+    // The CLI severity behind each level
+    static final String[] SEVERITIES = {"high", "medium", "low"};
+
+    private SarifGenerator() {
+    }
+
+    static String filePath(int file) {
+        return "src/Contract" + file + ".sol";
+    }
+
+    static byte[] generate(int results, int files, long seed) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, results * 320));
+        try {
+            write(out, results, files, seed);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static void write(OutputStream stream, int results, int files, long seed) throws IOException {
+        Random random = new Random(seed);
+        Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+
+        out.write("{\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\",\"version\":\"2.1.0\",\"runs\":[{");
+        out.write("\"tool\":{\"driver\":{\"name\":\"BlockSecOps\",\"version\":\"0.0.0\",\"rules\":[");
+        for (int i = 0; i < RULES.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write("{\"id\":\"" + RULES[i] + "\",\"shortDescription\":{\"text\":\"" + RULES[i] + "\"}}");
+        }
+        out.write("]}},\"results\":[");
+
+        for (int i = 0; i < results; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            int rule = random.nextInt(RULES.length);
+            int startLine = 1 + random.nextInt(400);
+            int endLine = startLine + random.nextInt(5);
+            int startColumn = 1 + random.nextInt(40);
+
+            // Locations first, the way the CLI writes results
+            out.write("{\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":\"");
+            out.write(filePath(i % files));
+            out.write("\"},\"region\":{\"startLine\":");
+            out.write(Integer.toString(startLine));
+            out.write(",\"endLine\":");
+            out.write(Integer.toString(endLine));
+            out.write(",\"startColumn\":");
+            out.write(Integer.toString(startColumn));
+            out.write("}}}],\"ruleId\":\"");
+            out.write(RULES[rule]);
+            int level = random.nextInt(LEVELS.length);
+            out.write("\",\"level\":\"");
+            out.write(LEVELS[level]);
+            out.write("\",\"message\":{\"text\":\"Potential ");
+            out.write(RULES[rule]);
+            out.write(" issue in function f");
+            out.write(Integer.toString(i));
+            out.write("\"},\"partialFingerprints\":{\"primaryLocationLineHash\":\"");
+            out.write(Long.toHexString(random.nextLong()));
+            out.write("\"},\"properties\":{\"severity\":\"");
+            out.write(SEVERITIES[level]);
+            out.write("\"}}");
+        }
+
+        out.write("]}]}");
+        out.flush();
+    }
+
+    /**
+     * Solidity-like source with {@code lines} lines, long enough to hold every generated region.
+     */
+    static String source(int lines) {
+        StringBuilder text = new StringBuilder(lines * 40);
+        for (int i = 0; i < lines; i++) {
+            text.append("    uint256 public value").append(i).append(" = ").append(i).append(";\n");
+        }
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: SarifGenerator <results> <files> <out.sarif>");
+            System.exit(2);
+        }
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[2]))) {
+            write(out, Integer.parseInt(args[0]), Integer.parseInt(args[1]), 42);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.stream.JsonReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SARIF decoding: the whole log (project scan) and one file's results out of it (annotator).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SarifReaderBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int results;
+
+    @Param({"200"})
+    public int files;
+
+    private byte[] sarif;
+
+    @Setup
+    public void setUp() {
+        sarif = SarifGenerator.generate(results, files, 42);
+    }
+
+    @Benchmark
+    public void readAllFiles(Blackhole blackhole) throws IOException {
+        BlockSecOpsSarifReader.read(new JsonReader(reader()), new BlockSecOpsSarifReader.Handler() {
+            @Override
+            public boolean accept(@Nullable String uri) {
+                return true;
+            }
+
+            @Override
+            public void finding(@Nullable String uri, @NotNull BlockSecOpsExternalAnnotator.Finding finding) {
+                blackhole.consume(finding);
+            }
+        });
+    }
+
+    @Benchmark
+    public List<BlockSecOpsExternalAnnotator.Finding> readOneFile() throws IOException {
+        return BlockSecOpsSarifReader.readFindings(
+                reader(), "/project/" + SarifGenerator.filePath(0), "/project", null);
+    }
+
+    private Reader reader() {
+        return new InputStreamReader(new ByteArrayInputStream(sarif), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,56 @@
+package com.blocksecops.intellij;
+
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The file scan action's output pipeline: decoding SARIF into a severity histogram while capturing it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SeverityCountsBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int results;
+
+    private byte[] sarif;
+
+    @Setup
+    public void setUp() {
+        sarif = SarifGenerator.generate(results, 200, 42);
+    }
+
+    @Benchmark
+    public int severityCounts() throws IOException {
+        BlockSecOpsScanOutput output = new BlockSecOpsScanOutput();
+        BlockSecOpsSarifReader.SeverityCounts counts = new BlockSecOpsSarifReader.SeverityCounts();
+        try (Reader in = output.capture(
+                new InputStreamReader(new ByteArrayInputStream(sarif), StandardCharsets.UTF_8))) {
+            BlockSecOpsSarifReader.read(new JsonReader(in), counts);
+        } finally {
+            output.delete();
+        }
+        return counts.getTotal();
+    }
+}
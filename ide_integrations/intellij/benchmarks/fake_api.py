@@ -0,0 +1,327 @@
+#!/usr/bin/env python3
+"""Scriptable stand-in for the BlockSecOps API, for exercising the plugin's API client without a
+backend.
+
+Implements just what the client calls:
+
+    POST /api/v1/upload                 multipart upload of a file or .tar.gz bundle (chunked
+                                        bodies too), answers with a contract id
+    GET  /api/v1/contracts/by-hash/<h>  contract uploaded with this content SHA-256 (and
+                                        ?filename=), or 404
+    POST /api/v1/scans                  starts a scan of a contract
+    GET  /api/v1/scans/<id>             scan status
+    GET  /api/v1/scans/<id>/events      server-sent events with the scan's status, until it is final
+    GET  /api/v1/scans/<id>/results     findings of a completed scan
+    GET  /stats                         connection, request, upload (count and bytes) and poll
+                                        counts
+
+Point the plugin at it with ``BLOCKSECOPS_API_URL=http://127.0.0.1:<port>`` and any
+``BLOCKSECOPS_API_KEY``. The server speaks HTTP/1.1 with keep-alive; a client asking for HTTP/2
+falls back to that.
+
+Behaviour is set through environment variables:
+
+    FAKE_API_PORT           port to listen on (default 8765)
+    FAKE_API_REQUEST_MS     time every request takes (default 20)
+    FAKE_API_LATENCY_MS     time from starting a scan to its completion (default 1000)
+    FAKE_API_RESULTS        findings per scanned file (default 5)
+    FAKE_API_FAILURE        none | failed | unauthorized | error (default none)
+    FAKE_API_EVENTS         sse | none: whether scans have an event stream, or clients must poll
+                            (default sse)
+    FAKE_API_KEEPALIVE_MS   time between keep-alive comments on an event stream (default 500)
+    FAKE_API_LOG            file to append "<peer> connected" to on every new connection
+
+Failures: ``failed`` completes scans with status ``failed``, ``unauthorized`` answers every
+request with 401, and ``error`` answers every request with 500.
+"""
+
+import hashlib
+import io
+import json
+import os
+import sys
+import tarfile
+import threading
+import time
+import uuid
+from datetime import datetime, timezone
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+from urllib.parse import parse_qs, urlsplit
+
+PORT = int(os.environ.get("FAKE_API_PORT", "8765"))
+REQUEST_MS = int(os.environ.get("FAKE_API_REQUEST_MS", "20"))
+LATENCY_MS = int(os.environ.get("FAKE_API_LATENCY_MS", "1000"))
+RESULTS = int(os.environ.get("FAKE_API_RESULTS", "5"))
+FAILURE = os.environ.get("FAKE_API_FAILURE", "none")
+EVENTS = os.environ.get("FAKE_API_EVENTS", "sse")
+KEEPALIVE_MS = int(os.environ.get("FAKE_API_KEEPALIVE_MS", "500"))
+LOG = os.environ.get("FAKE_API_LOG")
+
+CATEGORIES = ["reentrancy-eth", "unchecked-transfer", "tx-origin", "timestamp-dependence"]
+SEVERITIES = ["critical", "high", "medium", "low", "info"]
+
+lock = threading.Lock()
+contracts = {}
+scans = {}
+stats = {
+    "connections": 0,
+    "requests": 0,
+    "uploads": 0,
+    "upload_bytes": 0,
+    "polls": 0,
+    "event_streams": 0,
+}
+
+
+def now():
+    return datetime.now(timezone.utc).isoformat()
+
+
+def parse_upload(body, content_type):
+    """Filename and content of the ``file`` part of a multipart body."""
+    boundary = content_type.split("boundary=", 1)[-1].strip('"').encode()
+    for part in body.split(b"--" + boundary):
+        head, _, data = part.partition(b"\r\n\r\n")
+        if b'name="file"' not in head:
+            continue
+        filename = "contract.sol"
+        for token in head.decode("utf-8", "replace").split(";"):
+            token = token.strip()
+            if token.startswith("filename="):
+                filename = token[len("filename="):].split("\r\n")[0].strip('"')
+        return filename, data.rsplit(b"\r\n", 1)[0]
+    return "contract.sol", b""
+
+
+def unpack(filename, content):
+    """The (path, text) sources of an upload: the file itself, or the members of a bundle."""
+    if not filename.endswith((".tar.gz", ".tgz")):
+        return [(filename, content.decode("utf-8", "replace"))]
+    sources = []
+    with tarfile.open(fileobj=io.BytesIO(content), mode="r:gz") as tar:
+        for member in tar:
+            if member.isfile():
+                text = tar.extractfile(member).read().decode("utf-8", "replace")
+                sources.append((member.name, text))
+    return sources or [(filename, "")]
+
+
+def build_results(contract):
+    vulnerabilities = []
+    for i in range(RESULTS):
+        path, text = contract["sources"][i % len(contract["sources"])]
+        lines = max(1, text.count("\n") + 1)
+        vulnerabilities.append({
+            "id": str(uuid.uuid4()),
+            "title": f"Fake finding {i}",
+            "description": f"Fake finding {i} in {path}",
+            "severity": SEVERITIES[i % len(SEVERITIES)],
+            "category": CATEGORIES[i % len(CATEGORIES)],
+            "file_path": path,
+            "line_number": 1 + (i * 7) % lines,
+            "created_at": now(),
+        })
+    return {
+        "total_vulnerabilities": len(vulnerabilities),
+        "vulnerabilities": vulnerabilities,
+        "scanners_used": ["fake"],
+    }
+
+
+def scan_view(scan):
+    """The scan as the API reports it, completing it once its latency has passed."""
+    if scan["status"] == "running" and time.monotonic() >= scan["done_at"]:
+        scan["status"] = "failed" if FAILURE == "failed" else "completed"
+        scan["completed_at"] = now()
+        if scan["status"] == "failed":
+            scan["error_message"] = "Fake scan failed"
+    return {key: value for key, value in scan.items() if key != "done_at"}
+
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+
+    def setup(self):
+        super().setup()
+        with lock:
+            stats["connections"] += 1
+        if LOG:
+            with open(LOG, "a") as f:
+                f.write(f"{self.client_address[0]}:{self.client_address[1]} connected\n")
+
+    def log_message(self, format, *args):
+        pass
+
+    def reply(self, status, payload):
+        body = json.dumps(payload).encode()
+        self.send_response(status)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(body)))
+        self.end_headers()
+        self.wfile.write(body)
+
+    def begin(self):
+        """Count and delay the request; False if it has already been answered with a failure."""
+        with lock:
+            stats["requests"] += 1
+        time.sleep(REQUEST_MS / 1000.0)
+        if FAILURE == "unauthorized":
+            self.reply(401, {"detail": "Invalid API key"})
+            return False
+        if FAILURE == "error":
+            self.reply(500, {"detail": "Fake server error"})
+            return False
+        return True
+
+    def stream_events(self, scan):
+        """Send the scan's status now and whenever it changes, with keep-alives in between."""
+        with lock:
+            stats["event_streams"] += 1
+        self.send_response(200)
+        self.send_header("Content-Type", "text/event-stream")
+        self.send_header("Cache-Control", "no-cache")
+        # No length for a stream, so the connection ends with it
+        self.send_header("Connection", "close")
+        self.end_headers()
+        self.close_connection = True
+
+        last = None
+        try:
+            while True:
+                with lock:
+                    view = scan_view(scan)
+                if view["status"] != last:
+                    last = view["status"]
+                    self.wfile.write(f"event: status\ndata: {json.dumps(view)}\n\n".encode())
+                    self.wfile.flush()
+                    if last != "running":
+                        return
+                time.sleep(min(KEEPALIVE_MS / 1000.0, max(0.0, scan["done_at"] - time.monotonic())))
+                if time.monotonic() < scan["done_at"]:
+                    self.wfile.write(b": keep-alive\n\n")
+                    self.wfile.flush()
+        except OSError:
+            # Client went away
+            pass
+
+    def read_body(self):
+        if self.headers.get("Transfer-Encoding", "").lower() == "chunked":
+            # Streamed uploads have no length up front
+            body = bytearray()
+            while True:
+                size = int(self.rfile.readline().split(b";")[0].strip() or b"0", 16)
+                if size == 0:
+                    # Trailer section up to the blank line
+                    while self.rfile.readline() not in (b"\r\n", b"\n", b""):
+                        pass
+                    return bytes(body)
+                body += self.rfile.read(size)
+                self.rfile.readline()
+        length = int(self.headers.get("Content-Length", "0"))
+        return self.rfile.read(length) if length else b""
+
+    def do_POST(self):
+        body = self.read_body()
+        if not self.begin():
+            return
+        if self.path == "/api/v1/upload":
+            filename, content = parse_upload(body, self.headers.get("Content-Type", ""))
+            contract_id = str(uuid.uuid4())
+            try:
+                sources = unpack(filename, content)
+            except (tarfile.TarError, OSError, EOFError):
+                self.reply(400, {"detail": "Unreadable archive"})
+                return
+            with lock:
+                stats["uploads"] += 1
+                stats["upload_bytes"] += len(content)
+                contracts[contract_id] = {
+                    "filename": filename,
+                    "sources": sources,
+                    "sha256": hashlib.sha256(content).hexdigest(),
+                    "created_at": now(),
+                }
+            self.reply(200, {"contract_id": contract_id, "filename": filename, "status": "uploaded",
+                             "message": "Contract uploaded"})
+        elif self.path == "/api/v1/scans":
+            request = json.loads(body or b"{}")
+            contract_id = request.get("contract_id")
+            if contract_id not in contracts:
+                self.reply(404, {"detail": "Contract not found"})
+                return
+            scan = {
+                "id": str(uuid.uuid4()),
+                "contract_id": contract_id,
+                "status": "running",
+                "scan_source": request.get("scan_source"),
+                "created_at": now(),
+                "done_at": time.monotonic() + LATENCY_MS / 1000.0,
+            }
+            with lock:
+                scans[scan["id"]] = scan
+                view = scan_view(scan)
+            self.reply(200, view)
+        else:
+            self.reply(404, {"detail": "Not found"})
+
+    def do_GET(self):
+        if not self.begin():
+            return
+        url = urlsplit(self.path)
+        parts = url.path.strip("/").split("/")
+        if parts == ["stats"]:
+            with lock:
+                self.reply(200, dict(stats))
+            return
+        if parts[:4] == ["api", "v1", "contracts", "by-hash"] and len(parts) == 5:
+            filename = parse_qs(url.query).get("filename", [None])[0]
+            with lock:
+                found = [(contract_id, c) for contract_id, c in contracts.items()
+                         if c["sha256"] == parts[4] and filename in (None, c["filename"])]
+            if not found:
+                self.reply(404, {"detail": "Contract not found"})
+            else:
+                contract_id, contract = found[0]
+                self.reply(200, {
+                    "id": contract_id,
+                    "name": contract["filename"],
+                    "status": "uploaded",
+                    "created_at": contract["created_at"],
+                })
+            return
+        if parts[:3] != ["api", "v1", "scans"] or len(parts) not in (4, 5):
+            self.reply(404, {"detail": "Not found"})
+            return
+        with lock:
+            scan = scans.get(parts[3])
+            view = scan_view(scan) if scan else None
+        if view is None:
+            self.reply(404, {"detail": "Scan not found"})
+        elif len(parts) == 4:
+            with lock:
+                stats["polls"] += 1
+            self.reply(200, view)
+        elif parts[4] == "events":
+            if EVENTS != "sse":
+                self.reply(404, {"detail": "Not found"})
+            else:
+                self.stream_events(scan)
+        elif view["status"] != "completed":
+            self.reply(409, {"detail": f"Scan is {view['status']}"})
+        else:
+            self.reply(200, build_results(contracts[view["contract_id"]]))
+
+
+def main():
+    server = ThreadingHTTPServer(("127.0.0.1", PORT), Handler)
+    server.daemon_threads = True
+    sys.stderr.write(f"fake API listening on http://127.0.0.1:{server.server_port}\n")
+    try:
+        server.serve_forever()
+    except KeyboardInterrupt:
+        pass
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,225 @@
+#!/usr/bin/env python3
+"""Scriptable stand-in for blocksecops-cli, for exercising the plugin without a backend.
+
+Implements just what the plugin calls:
+
+    fake_cli.py server                                  JSON-RPC server mode
+    fake_cli.py scan run <path|-> [--stdin-filename F] --output sarif
+
+Behaviour is set through environment variables:
+
+    FAKE_CLI_LATENCY_MS     time each scan takes (default 200)
+    FAKE_CLI_JITTER_MS      random extra latency, 0..N ms (default 0)
+    FAKE_CLI_RESULTS        findings per scanned file (default 5)
+    FAKE_CLI_FAILURE        none | exit | crash | garbage | hang (default none)
+    FAKE_CLI_FAILURE_RATE   share of scans that fail, 0.0-1.0 (default 1.0 when a failure is set)
+    FAKE_CLI_LOG            file to append "<pid> <mode>" to on every process start
+
+Failures: ``exit`` exits with status 2 (or answers with a scan error in server
+mode), ``crash`` dies halfway through the output, ``garbage`` prints non-JSON,
+and ``hang`` never answers.
+"""
+
+import json
+import os
+import random
+import sys
+import threading
+import time
+
+LATENCY_MS = int(os.environ.get("FAKE_CLI_LATENCY_MS", "200"))
+JITTER_MS = int(os.environ.get("FAKE_CLI_JITTER_MS", "0"))
+RESULTS = int(os.environ.get("FAKE_CLI_RESULTS", "5"))
+FAILURE = os.environ.get("FAKE_CLI_FAILURE", "none")
+FAILURE_RATE = float(os.environ.get("FAKE_CLI_FAILURE_RATE", "1.0"))
+LOG = os.environ.get("FAKE_CLI_LOG")
+
+RULES = ["reentrancy-eth", "unchecked-transfer", "tx-origin", "timestamp-dependence"]
+LEVELS = ["error", "warning", "note"]
+SEVERITIES = ["high", "medium", "low"]
+
+REQUEST_CANCELLED = -32800
+SCAN_ERROR = -32000
+
+
+def log_start(mode):
+    if LOG:
+        with open(LOG, "a") as f:
+            f.write(f"{os.getpid()} {mode}\n")
+
+
+def failure():
+    """The failure mode for this scan, or None."""
+    if FAILURE == "none" or random.random() >= FAILURE_RATE:
+        return None
+    return FAILURE
+
+
+def build_sarif(path, text):
+    lines = max(1, text.count("\n") + 1)
+    results = []
+    for i in range(RESULTS):
+        line = 1 + (i * 7) % lines
+        results.append({
+            "locations": [{"physicalLocation": {
+                "artifactLocation": {"uri": path},
+                "region": {"startLine": line, "endLine": line, "startColumn": 1},
+            }}],
+            "ruleId": RULES[i % len(RULES)],
+            "level": LEVELS[i % len(LEVELS)],
+            "message": {"text": f"Fake finding {i}"},
+            "properties": {"severity": SEVERITIES[i % len(SEVERITIES)]},
+        })
+    return {
+        "version": "2.1.0",
+        "runs": [{
+            "tool": {"driver": {"name": "BlockSecOps", "version": "fake"}},
+            "results": results,
+        }],
+    }
+
+
+def wait_latency(cancelled=None):
+    delay = (LATENCY_MS + random.randint(0, JITTER_MS)) / 1000.0
+    if cancelled is None:
+        time.sleep(delay)
+        return False
+    return cancelled.wait(delay)
+
+
+def scan_run(args):
+    log_start("scan")
+    target = args[0] if args else "."
+    filename = target
+    if "--stdin-filename" in args:
+        filename = args[args.index("--stdin-filename") + 1]
+
+    if target == "-":
+        text = sys.stdin.read()
+    else:
+        try:
+            with open(target, encoding="utf-8") as f:
+                text = f.read()
+        except OSError:
+            text = ""
+
+    wait_latency()
+    mode = failure()
+    if mode == "exit":
+        sys.stderr.write("fake scan failed\n")
+        return 2
+    if mode == "hang":
+        while True:
+            time.sleep(3600)
+    if mode == "garbage":
+        sys.stdout.write("Traceback (most recent call last):\n  not json\n")
+        return 1
+
+    output = json.dumps(build_sarif(filename, text))
+    if mode == "crash":
+        sys.stdout.write(output[: len(output) // 2])
+        sys.stdout.flush()
+        os._exit(137)
+
+    sys.stdout.write(output)
+    return 1 if RESULTS else 0
+
+
+class Server:
+    def __init__(self):
+        self.lock = threading.Lock()
+        self.cancels = {}
+        self.threads = []
+
+    def send(self, message):
+        data = json.dumps(message, separators=(",", ":")) + "\n"
+        with self.lock:
+            sys.stdout.write(data)
+            sys.stdout.flush()
+
+    def error(self, request_id, code, message):
+        self.send({"jsonrpc": "2.0", "id": request_id, "error": {"code": code, "message": message}})
+
+    def scan(self, request_id, params, cancelled):
+        if wait_latency(cancelled):
+            self.error(request_id, REQUEST_CANCELLED, "Request cancelled")
+            return
+        mode = failure()
+        if mode == "hang":
+            cancelled.wait()
+            self.error(request_id, REQUEST_CANCELLED, "Request cancelled")
+            return
+        if mode == "exit":
+            self.error(request_id, SCAN_ERROR, "Fake scan failed")
+            return
+        if mode == "garbage":
+            with self.lock:
+                sys.stdout.write("not json\n")
+                sys.stdout.flush()
+            return
+        if mode == "crash":
+            os._exit(137)
+
+        text = params.get("content")
+        if text is None:
+            try:
+                with open(params.get("path", ""), encoding="utf-8") as f:
+                    text = f.read()
+            except OSError:
+                text = ""
+        self.send({"jsonrpc": "2.0", "id": request_id,
+                   "result": {"sarif": build_sarif(params.get("path", ""), text)}})
+
+    def serve(self):
+        log_start("server")
+        for line in sys.stdin:
+            if not line.strip():
+                continue
+            message = json.loads(line)
+            method = message.get("method")
+            request_id = message.get("id")
+            params = message.get("params") or {}
+
+            if method == "$/cancelRequest":
+                event = self.cancels.get(params.get("id"))
+                if event:
+                    event.set()
+            elif method == "initialize":
+                result = {"version": "fake", "protocol": 1}
+                self.send({"jsonrpc": "2.0", "id": request_id, "result": result})
+            elif method == "shutdown":
+                self.send({"jsonrpc": "2.0", "id": request_id, "result": None})
+                return 0
+            elif method == "scan":
+                event = threading.Event()
+                self.cancels[request_id] = event
+                thread = threading.Thread(
+                    target=self.scan, args=(request_id, params, event), daemon=True
+                )
+                self.threads.append(thread)
+                thread.start()
+            else:
+                self.error(request_id, -32601, f"Method not found: {method}")
+
+        # Client went away: cancel what's left, like the real server
+        for event in self.cancels.values():
+            event.set()
+        for thread in self.threads:
+            thread.join(timeout=1)
+        return 0
+
+
+def main(argv):
+    if argv[:1] == ["server"]:
+        return Server().serve()
+    if argv[:2] == ["scan", "run"]:
+        return scan_run(argv[2:])
+    if argv[:1] == ["--version"]:
+        print("blocksecops fake")
+        return 0
+    sys.stderr.write(f"fake_cli: unsupported command: {' '.join(argv)}\n")
+    return 2
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv[1:]))
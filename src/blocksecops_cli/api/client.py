@@ -1,16 +1,28 @@
 """HTTP client for BlockSecOps API."""
 
 import asyncio
+import json
+import random
 import time
 from pathlib import Path
 from typing import Any, Dict, List, Optional
-from uuid import UUID
+from uuid import UUID, uuid4
 
 import httpx
 
+from ..bundle import ProjectBundle
 from ..config import get_api_key, get_api_url
+from ..contract_map import ContractMap, content_hash
 from .models import Contract, Scan, ScanResult, UploadResponse, UserInfo, Vulnerability
 
+FINAL_SCAN_STATUSES = ("completed", "failed", "cancelled")
+
+# Answers meaning the API has no event stream, as opposed to a failed request
+NO_EVENTS_STATUS_CODES = (404, 405, 406, 501)
+
+# Answers to scanning a remembered contract that mean it is gone from the server
+STALE_CONTRACT_STATUS_CODES = (404, 410)
+
 
 class APIError(Exception):
     """API request error."""
@@ -46,6 +58,9 @@ class BlockSecOpsClient:
         self.api_url = (api_url or get_api_url()).rstrip("/")
         self.api_key = api_key or get_api_key()
         self.timeout = timeout
+        # Unknown until the first wait; False once the API turned out not to stream scan events
+        self.scan_events: Optional[bool] = None
+        self.contracts = ContractMap()
 
     def _get_headers(self) -> Dict[str, str]:
         """Get request headers with authentication."""
@@ -138,6 +153,7 @@ class BlockSecOpsClient:
         file_path: Path,
         contract_name: Optional[str] = None,
         network: str = "ethereum",
+        content_sha256: Optional[str] = None,
     ) -> UploadResponse:
         """
         Upload a contract file for scanning.
@@ -146,6 +162,7 @@ class BlockSecOpsClient:
             file_path: Path to the contract file (.sol, .vy, .rs) or archive (.zip, .tar.gz)
             contract_name: Optional name for the contract
             network: Blockchain network (default: ethereum)
+            content_sha256: Hash of the file, so the API can find the contract by content later
 
         Returns:
             UploadResponse with contract details
@@ -158,6 +175,8 @@ class BlockSecOpsClient:
             data = {"network": network}
             if contract_name:
                 data["contract_name"] = contract_name
+            if content_sha256:
+                data["content_sha256"] = content_sha256
 
             result = await self._request(
                 "POST",
@@ -168,6 +187,59 @@ class BlockSecOpsClient:
 
         return UploadResponse(**result)
 
+    async def upload_bundle(
+        self,
+        bundle: ProjectBundle,
+        contract_name: Optional[str] = None,
+        network: str = "ethereum",
+        content_sha256: Optional[str] = None,
+    ) -> UploadResponse:
+        """
+        Upload a project's sources as one compressed archive, streamed as it is built.
+
+        The multipart body is produced chunk by chunk from the bundle, so
+        neither a temporary archive nor the whole bundle is ever held.
+
+        Args:
+            bundle: Sources to upload
+            contract_name: Optional name for the contract
+            network: Blockchain network (default: ethereum)
+            content_sha256: ``bundle.digest()``, so the API can find the contract by content later
+
+        Returns:
+            UploadResponse with contract details
+        """
+        boundary = f"blocksecops-{uuid4().hex}"
+        fields = {"network": network}
+        if contract_name:
+            fields["contract_name"] = contract_name
+        if content_sha256:
+            fields["content_sha256"] = content_sha256
+
+        head = "".join(
+            f'--{boundary}\r\nContent-Disposition: form-data; name="{name}"\r\n\r\n{value}\r\n'
+            for name, value in fields.items()
+        )
+        head += (
+            f'--{boundary}\r\nContent-Disposition: form-data; name="file"; '
+            f'filename="{bundle.filename.replace(chr(34), "")}"\r\n'
+            "Content-Type: application/gzip\r\n\r\n"
+        )
+
+        async def body():
+            yield head.encode("utf-8")
+            async for chunk in bundle.aiter_chunks():
+                yield chunk
+            yield f"\r\n--{boundary}--\r\n".encode("utf-8")
+
+        result = await self._request(
+            "POST",
+            "/api/v1/upload",
+            content=body(),
+            headers={"Content-Type": f"multipart/form-data; boundary={boundary}"},
+        )
+        return UploadResponse(**result)
+
     # =========================================================================
     # Scanning
     # =========================================================================
@@ -199,6 +271,73 @@ class BlockSecOpsClient:
         result = await self._request("POST", "/api/v1/scans", json=payload)
         return Scan(**result)
 
+    async def create_file_scan(
+        self,
+        file_path: Path,
+        scanners: Optional[List[str]] = None,
+        scan_source: str = "cli",
+        on_bundle: Optional[callable] = None,
+    ) -> Scan:
+        """
+        Create a scan of a file, uploading it only if its content isn't on the server yet.
+
+        The contract is looked up in the local contract map, then by content
+        hash on the API; the file is uploaded only when both miss. A remembered
+        contract the API no longer has is forgotten and the file uploaded again.
+        A directory is uploaded as a streamed project bundle.
+
+        Args:
+            file_path: Path to the contract file, archive or project directory
+            scanners: Optional list of specific scanners to use
+            scan_source: Source identifier (cli, vscode, jetbrains, neovim, github_actions, etc.)
+            on_bundle: Optional callback(bundle) once a directory's bundle is uploaded or reused
+
+        Returns:
+            Scan object with scan details
+        """
+        if not file_path.exists():
+            raise FileNotFoundError(f"File not found: {file_path}")
+
+        bundle = ProjectBundle(file_path) if file_path.is_dir() else None
+        if bundle is not None:
+            if not bundle.files:
+                raise FileNotFoundError(f"No Solidity or Vyper sources found in: {file_path}")
+            digest, filename = bundle.digest(), bundle.filename
+        else:
+            digest, filename = content_hash(file_path.read_bytes()), file_path.name
+
+        contract_id = self.contracts.lookup(self.api_url, digest, filename)
+        if contract_id is None:
+            found = await self.find_contract_by_hash(digest, filename)
+            if found is not None:
+                contract_id = str(found)
+                self.contracts.remember(self.api_url, digest, filename, contract_id)
+
+        if contract_id is not None:
+            try:
+                scan = await self.create_scan(
+                    UUID(contract_id), scanners=scanners, scan_source=scan_source
+                )
+            except APIError as e:
+                if e.status_code not in STALE_CONTRACT_STATUS_CODES:
+                    raise
+                self.contracts.forget(self.api_url, digest, filename)
+            else:
+                if bundle is not None and on_bundle:
+                    on_bundle(bundle)
+                return scan
+
+        if bundle is not None:
+            upload = await self.upload_bundle(bundle, content_sha256=digest)
+            if on_bundle:
+                on_bundle(bundle)
+        else:
+            upload = await self.upload_file(file_path, content_sha256=digest)
+        self.contracts.remember(self.api_url, digest, filename, str(upload.contract_id))
+        return await self.create_scan(
+            upload.contract_id, scanners=scanners, scan_source=scan_source
+        )
+
     async def get_scan(self, scan_id: UUID) -> Scan:
         """Get scan details by ID."""
         result = await self._request("GET", f"/api/v1/scans/{scan_id}")
@@ -226,37 +365,110 @@ class BlockSecOpsClient:
     async def wait_for_scan(
         self,
         scan_id: UUID,
-        poll_interval: float = 2.0,
+        poll_interval: float = 0.25,
         timeout: float = 600.0,
         progress_callback: Optional[callable] = None,
+        max_poll_interval: float = 10.0,
     ) -> Scan:
         """
         Wait for a scan to complete.
 
+        Status changes are pushed over the scan's server-sent event stream when the API offers one.
+        Otherwise, or when the stream drops, the scan is polled: first after ``poll_interval``, then
+        backing off exponentially up to ``max_poll_interval``, with jitter so clients that started
+        together don't poll in lockstep.
+
         Args:
             scan_id: Scan ID to wait for
-            poll_interval: Seconds between status checks
+            poll_interval: Seconds before the first status check when polling
             timeout: Maximum wait time in seconds
             progress_callback: Optional callback(scan) for progress updates
+            max_poll_interval: Longest wait between status checks when polling
 
         Returns:
             Completed Scan object
         """
-        start_time = time.time()
+        deadline = time.monotonic() + timeout
 
+        if self.scan_events is not False:
+            try:
+                scan = await asyncio.wait_for(
+                    self._follow_scan_events(scan_id, progress_callback),
+                    max(0.0, deadline - time.monotonic()),
+                )
+            except asyncio.TimeoutError:
+                raise TimeoutError(f"Scan timed out after {timeout}s") from None
+            if scan is not None:
+                return scan
+
+        delay = poll_interval
         while True:
             scan = await self.get_scan(scan_id)
 
             if progress_callback:
                 progress_callback(scan)
 
-            if scan.status in ("completed", "failed", "cancelled"):
+            if scan.status in FINAL_SCAN_STATUSES:
                 return scan
 
-            if time.time() - start_time > timeout:
+            remaining = deadline - time.monotonic()
+            if remaining <= 0:
                 raise TimeoutError(f"Scan timed out after {timeout}s")
 
-            await asyncio.sleep(poll_interval)
+            await asyncio.sleep(min(remaining, random.uniform(delay / 2, delay)))
+            delay = min(delay * 2, max_poll_interval)
+
+    async def _follow_scan_events(
+        self,
+        scan_id: UUID,
+        progress_callback: Optional[callable] = None,
+    ) -> Optional[Scan]:
+        """
+        Follow the scan's event stream until it reaches a final status.
+
+        Each event carries the scan as JSON. Returns None when there is no stream or it ends early;
+        request errors are left to the polling that follows, which reports them.
+        """
+        headers = self._get_headers()
+        headers["Accept"] = "text/event-stream"
+        # The stream is quiet while the scan runs, so only the overall deadline limits reads
+        timeout = httpx.Timeout(self.timeout, read=None)
+
+        try:
+            async with httpx.AsyncClient(timeout=timeout) as client:
+                async with client.stream(
+                    "GET", f"{self.api_url}/api/v1/scans/{scan_id}/events", headers=headers
+                ) as response:
+                    is_stream = response.headers.get("content-type", "").startswith(
+                        "text/event-stream"
+                    )
+                    if response.status_code in NO_EVENTS_STATUS_CODES or (
+                        response.status_code == 200 and not is_stream
+                    ):
+                        self.scan_events = False
+                        return None
+                    if response.status_code != 200:
+                        return None
+                    self.scan_events = True
+
+                    data: List[str] = []
+                    async for line in response.aiter_lines():
+                        if line.startswith("data:"):
+                            data.append(line[5:].removeprefix(" "))
+                            continue
+                        if line or not data:
+                            # Event names, ids and keep-alive comments carry nothing we need
+                            continue
+
+                        scan = Scan(**json.loads("\n".join(data)))
+                        data = []
+                        if progress_callback:
+                            progress_callback(scan)
+                        if scan.status in FINAL_SCAN_STATUSES:
+                            return scan
+        except (httpx.HTTPError, ValueError):
+            pass
+        return None
 
     # =========================================================================
     # Contracts
@@ -280,6 +492,25 @@ class BlockSecOpsClient:
         )
         return [Contract(**c) for c in result.get("contracts", [])]
 
+    async def find_contract_by_hash(self, digest: str, filename: str) -> Optional[UUID]:
+        """
+        Find a contract already uploaded with this content and file name.
+
+        Returns None when there is none, or the API can't look contracts up by hash.
+        """
+        try:
+            result = await self._request(
+                "GET",
+                f"/api/v1/contracts/by-hash/{digest}",
+                params={"filename": filename},
+            )
+        except AuthenticationError:
+            raise
+        except APIError:
+            return None
+        contract_id = result.get("id") if isinstance(result, dict) else None
+        return UUID(str(contract_id)) if contract_id else None
+
     async def delete_contract(self, contract_id: UUID) -> None:
         """Delete a contract."""
         await self._request("DELETE", f"/api/v1/contracts/{contract_id}")
@@ -295,28 +526,29 @@ class BlockSecOpsClient:
         scanners: Optional[List[str]] = None,
         scan_source: str = "cli",
         progress_callback: Optional[callable] = None,
+        on_bundle: Optional[callable] = None,
     ) -> tuple[Scan, Optional[ScanResult]]:
         """
-        Upload and scan a file in one operation.
+        Upload and scan a file in one operation, skipping the upload when the API already has
+        the content.
 
         Args:
-            file_path: Path to the contract file
+            file_path: Path to the contract file or project directory
             wait: Whether to wait for scan completion
             scanners: Optional list of specific scanners
             scan_source: Source identifier (cli, vscode, jetbrains, neovim, github_actions, etc.)
             progress_callback: Optional callback for progress updates
+            on_bundle: Optional callback(bundle) once a directory's bundle is uploaded or reused
 
         Returns:
             Tuple of (Scan, ScanResult or None)
         """
-        # Upload
-        upload = await self.upload_file(file_path)
-
-        # Create scan
-        scan = await self.create_scan(
-            upload.contract_id,
+        # Upload (unless unchanged) and create scan
+        scan = await self.create_file_scan(
+            file_path,
             scanners=scanners,
             scan_source=scan_source,
+            on_bundle=on_bundle,
         )
 
         if not wait:
@@ -0,0 +1,241 @@
+"""Streamed, compressed bundles of a project's sources for a single upload.
+
+Scanning a directory remotely uploads one ``.tar.gz`` of its sources. The
+archive is produced while it is sent: files are added to a tar stream one at a
+time and gzip-compressed on the fly, and the compressed chunks go straight into
+the request body. Nothing is written to disk, and at most one file and its
+compressed output are held in memory.
+
+Vendored libraries (``node_modules``, Foundry's ``lib``, build output and so on)
+are left out; the scan is about the project's own code, and they are usually
+most of the bytes. Names a project might also use for its own sources, like
+``lib`` or ``build``, are only left out at the root, or where ``foundry.toml``
+or the Hardhat config puts dependencies and build output.
+"""
+
+import asyncio
+import hashlib
+import io
+import os
+import re
+import stat
+import tarfile
+import zlib
+from pathlib import Path
+from typing import AsyncIterator, Iterator, List, Set
+
+# Directories holding dependencies, VCS data or tool state, wherever they are
+VENDORED_DIRS = frozenset({
+    "node_modules",
+    ".deps",
+    ".git",
+    ".hg",
+    ".svn",
+    ".venv",
+    "venv",
+    "__pycache__",
+})
+
+# Default dependency and build output directories of Foundry and Hardhat, left out at the root only
+ROOT_VENDORED_DIRS = frozenset({
+    "lib",
+    "out",
+    "cache",
+    "artifacts",
+    "build",
+    "typechain",
+    "typechain-types",
+    "coverage",
+    "broadcast",
+})
+
+# Not listed among the skipped directories, as nearly every project has one
+VCS_DIRS = frozenset({".git", ".hg", ".svn"})
+
+HARDHAT_CONFIGS = (
+    "hardhat.config.js",
+    "hardhat.config.ts",
+    "hardhat.config.cjs",
+    "hardhat.config.mjs",
+)
+
+# foundry.toml settings and Hardhat ``paths`` entries naming dependency or build output directories.
+# Matched rather than parsed: Python 3.10 has no TOML parser, and the Hardhat config is code.
+_FOUNDRY_DIRS = re.compile(r"^\s*(?:libs|out|cache_path|broadcast)\s*=\s*(.+)$", re.MULTILINE)
+_HARDHAT_DIRS = re.compile(r"\b(?:cache|artifacts)\s*:\s*([\"'][^\"']+[\"'])")
+_QUOTED = re.compile(r"[\"']([^\"']+)[\"']")
+
+SOURCE_SUFFIXES = (".sol", ".vy")
+
+# Project files the scanners use to resolve imports
+PROJECT_FILES = frozenset({"foundry.toml", "remappings.txt"})
+
+# Compressed output is sent in chunks of about this size
+CHUNK_SIZE = 64 * 1024
+
+# zlib's default; level 9 costs several times the CPU for a few percent on source code
+COMPRESS_LEVEL = 6
+
+
+class ProjectBundle:
+    """The sources under a directory, streamed as a gzip-compressed tar archive."""
+
+    def __init__(self, root: Path):
+        self.root = root
+        self.files: List[Path] = []
+        self.skipped: List[str] = []
+        self._collect()
+        self.source_bytes = sum(_size(self.root / f) for f in self.files)
+        # Known once the bundle has been streamed
+        self.sent_bytes = 0
+
+    @property
+    def filename(self) -> str:
+        return f"{self.root.resolve().name or 'project'}.tar.gz"
+
+    @property
+    def saved_bytes(self) -> int:
+        """How much smaller the upload was than the bundled files."""
+        return max(0, self.source_bytes - self.sent_bytes)
+
+    def digest(self) -> str:
+        """
+        Hash of the bundled paths and contents.
+
+        gzip output isn't byte-stable, so unchanged projects are recognised by
+        what goes into the archive rather than by the archive itself.
+        """
+        outer = hashlib.sha256()
+        for relative in self.files:
+            try:
+                content = (self.root / relative).read_bytes()
+            except OSError:
+                continue
+            outer.update(relative.as_posix().encode("utf-8") + b"\0")
+            outer.update(hashlib.sha256(content).digest())
+        return outer.hexdigest()
+
+    def chunks(self) -> Iterator[bytes]:
+        """The compressed archive, in chunks of about ``CHUNK_SIZE``."""
+        sink = _GzipSink()
+        with tarfile.open(fileobj=sink, mode="w|", format=tarfile.PAX_FORMAT) as tar:
+            for relative in self.files:
+                path = self.root / relative
+                # Read before the header goes out: a read failing halfway through a member would
+                # leave a short entry in the stream and corrupt the rest of the archive
+                try:
+                    mode = path.stat().st_mode
+                    content = path.read_bytes()
+                except OSError:
+                    # Deleted or unreadable since the tree was walked
+                    continue
+                info = tarfile.TarInfo(relative.as_posix())
+                info.size = len(content)
+                info.mode = stat.S_IMODE(mode)
+                tar.addfile(info, io.BytesIO(content))
+                if len(sink.buffer) >= CHUNK_SIZE:
+                    yield sink.take()
+        sink.finish()
+        yield sink.take()
+        self.sent_bytes = sink.sent
+
+    async def aiter_chunks(self) -> AsyncIterator[bytes]:
+        """``chunks()`` for async request bodies, reading and compressing off the event loop."""
+        chunks = self.chunks()
+        while True:
+            chunk = await asyncio.to_thread(next, chunks, None)
+            if chunk is None:
+                return
+            if chunk:
+                yield chunk
+
+    def _collect(self) -> None:
+        declared = _declared_dirs(self.root)
+        for directory, dirnames, filenames in os.walk(self.root):
+            base = Path(directory)
+            at_root = base == self.root
+            kept = []
+            for name in sorted(dirnames):
+                relative = (base / name).relative_to(self.root).as_posix()
+                if (
+                    name in VENDORED_DIRS
+                    or name.startswith(".")
+                    or (at_root and name in ROOT_VENDORED_DIRS)
+                    or relative in declared
+                ):
+                    self.skipped.append(relative)
+                else:
+                    kept.append(name)
+            # Pruning in place keeps os.walk out of the skipped directories
+            dirnames[:] = kept
+
+            for name in sorted(filenames):
+                if name.endswith(SOURCE_SUFFIXES) or name in PROJECT_FILES:
+                    self.files.append((base / name).relative_to(self.root))
+
+
+def _declared_dirs(root: Path) -> Set[str]:
+    """Dependency and build output directories the root's Foundry and Hardhat configs declare."""
+    found: List[str] = []
+    try:
+        foundry = (root / "foundry.toml").read_text(encoding="utf-8", errors="replace")
+    except OSError:
+        foundry = ""
+    for value in _FOUNDRY_DIRS.findall(foundry):
+        found.extend(_QUOTED.findall(value.split("#", 1)[0]))
+    for name in HARDHAT_CONFIGS:
+        try:
+            hardhat = (root / name).read_text(encoding="utf-8", errors="replace")
+        except OSError:
+            continue
+        for value in _HARDHAT_DIRS.findall(hardhat):
+            found.extend(_QUOTED.findall(value))
+
+    declared = set()
+    for path in found:
+        relative = path.strip().rstrip("/")
+        while relative.startswith("./"):
+            relative = relative[2:]
+        # Directories outside the project aren't walked anyway
+        if relative and not relative.startswith(("/", "../")) and relative != "..":
+            declared.add(relative)
+    return declared
+
+
+class _GzipSink:
+    """File-like target for a tar stream that gzip-compresses whatever is written to it."""
+
+    def __init__(self):
+        # wbits 31: deflate with a gzip header and trailer
+        self._compressor = zlib.compressobj(COMPRESS_LEVEL, zlib.DEFLATED, 31)
+        self.buffer = bytearray()
+        self.sent = 0
+
+    def write(self, data: bytes) -> int:
+        self.buffer += self._compressor.compress(data)
+        return len(data)
+
+    def finish(self) -> None:
+        self.buffer += self._compressor.flush()
+
+    def take(self) -> bytes:
+        data = bytes(self.buffer)
+        self.buffer.clear()
+        self.sent += len(data)
+        return data
+
+
+def format_bytes(count: int) -> str:
+    """Human-readable size, e.g. ``1.2 MB``."""
+    if count < 1024:
+        return f"{count} B"
+    if count < 1024 * 1024:
+        return f"{count / 1024:.1f} KB"
+    return f"{count / (1024 * 1024):.1f} MB"
+
+
+def _size(path: Path) -> int:
+    try:
+        return path.stat().st_size
+    except OSError:
+        return 0
@@ -2,5 +2,6 @@
 
 from .auth import app as auth_app
 from .scan import app as scan_app
+from .server import app as server_app
 
-__all__ = ["auth_app", "scan_app"]
+__all__ = ["auth_app", "scan_app", "server_app"]
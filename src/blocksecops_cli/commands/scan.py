@@ -1,23 +1,31 @@
 """Scan commands."""
 
 import asyncio
+import subprocess
 import sys
+from datetime import datetime, timezone
 from pathlib import Path
-from typing import List, Optional
-from uuid import UUID
+from typing import Any, Callable, Dict, List, Optional, Tuple
+from uuid import NAMESPACE_URL, UUID, uuid5
 
 import typer
 from rich.console import Console
 from rich.progress import Progress, SpinnerColumn, TextColumn
 
 from ..api.client import APIError, AuthenticationError, BlockSecOpsClient
+from ..api.models import Scan, ScanResult, ScanStatus, Vulnerability, VulnerabilitySeverity
+from ..bundle import VCS_DIRS, ProjectBundle, format_bytes
 from ..config import get_api_key
 from ..formatters import OutputFormat, get_formatter
 from ..scanner import SolidityDefendScanner
 from ..scanner.downloader import DownloadError
+from ..snapshot import remap_result_paths, snapshot_file
+from ..upload_queue import UploadQueue
 
 app = typer.Typer(help="Scan commands")
 console = Console()
+# Notices that must not end up in formatted output on stdout
+err_console = Console(stderr=True)
 
 # Valid scan sources
 VALID_SCAN_SOURCES = {"cli", "vscode", "jetbrains", "neovim", "vim", "github_actions", "web"}
@@ -34,8 +42,7 @@ def require_auth():
 def scan_run(
     path: Path = typer.Argument(
         ...,
-        help="Path to contract file or directory",
-        exists=True,
+        help="Path to contract file or directory, or '-' to read the contract from stdin",
     ),
     local: bool = typer.Option(
         False,
@@ -43,6 +50,14 @@ def scan_run(
         "-l",
         help="Run SolidityDefend locally (downloads latest from GitHub if needed)",
     ),
+    offline: bool = typer.Option(
+        False,
+        "--offline",
+        help=(
+            "Run SolidityDefend locally and queue the results for upload "
+            "instead of submitting them now"
+        ),
+    ),
     scan_source: str = typer.Option(
         "cli",
         "--scan-source",
@@ -77,14 +92,47 @@ def scan_run(
         "-f",
         help="Write output to file",
     ),
+    stdin_filename: Optional[str] = typer.Option(
+        None,
+        "--stdin-filename",
+        help="Path reported for findings when reading the contract from stdin",
+    ),
 ):
     """Scan a smart contract file or directory."""
     require_auth()
 
+    if str(path) == "-":
+        # Scan unsaved editor contents piped in by IDE integrations
+        display_path = stdin_filename or "stdin.sol"
+        with snapshot_file(display_path, sys.stdin.buffer.read()) as snapshot:
+            _dispatch_scan(
+                snapshot, local, scan_source, wait, output, scanners, output_file, fail_on,
+                display_path=display_path, offline=offline,
+            )
+        return
+
     if not path.exists():
         console.print(f"[red]Error: Path not found: {path}[/red]")
         raise typer.Exit(1)
 
+    _dispatch_scan(
+        path, local, scan_source, wait, output, scanners, output_file, fail_on, offline=offline
+    )
+
+
+def _dispatch_scan(
+    path: Path,
+    local: bool,
+    scan_source: str,
+    wait: bool,
+    output: OutputFormat,
+    scanners: Optional[List[str]],
+    output_file: Optional[Path],
+    fail_on: Optional[str],
+    display_path: Optional[str] = None,
+    offline: bool = False,
+):
+    """Run the local or remote scan workflow for a path."""
     # Validate scan source
     if scan_source not in VALID_SCAN_SOURCES:
         console.print(
@@ -92,12 +140,25 @@ def scan_run(
             f"Valid sources: {', '.join(sorted(VALID_SCAN_SOURCES))}[/yellow]"
         )
 
-    if local:
+    if local or offline:
         # Local scan workflow
-        asyncio.run(_run_local_scan(path, scan_source, output, output_file, fail_on))
+        try:
+            asyncio.run(
+                _run_local_scan(
+                    path, scan_source, output, output_file, fail_on, display_path, offline
+                )
+            )
+        finally:
+            # Also when --fail-on ends the scan with typer.Exit: the results are queued by then
+            if offline:
+                _start_background_sync()
     else:
         # Remote scan workflow (existing behavior)
-        asyncio.run(_run_remote_scan(path, scan_source, wait, output, scanners, output_file, fail_on))
+        asyncio.run(
+            _run_remote_scan(
+                path, scan_source, wait, output, scanners, output_file, fail_on, display_path
+            )
+        )
 
 
 async def _run_local_scan(
@@ -106,8 +167,10 @@ async def _run_local_scan(
     output: OutputFormat,
     output_file: Optional[Path],
     fail_on: Optional[str],
+    display_path: Optional[str] = None,
+    offline: bool = False,
 ):
-    """Run SolidityDefend locally and submit results to API."""
+    """Run SolidityDefend locally and submit results to API (or queue them, when offline)."""
     client = BlockSecOpsClient()
     scanner = SolidityDefendScanner()
 
@@ -117,41 +180,25 @@ async def _run_local_scan(
         console=console,
         transient=True,
     ) as progress:
+        task = progress.add_task("Checking SolidityDefend installation...", total=None)
         try:
-            # Step 1: Check/download SolidityDefend
-            task = progress.add_task("Checking SolidityDefend installation...", total=None)
-            await scanner.downloader.ensure_latest()
-            version = scanner.get_version()
-            progress.update(task, description=f"SolidityDefend {version} ready")
-
-            # Step 2: Upload contract to create contract record
-            progress.update(task, description="Uploading contract...")
-            upload = await client.upload_file(path)
-
-            # Step 3: Create scan record with source
-            progress.update(task, description="Creating scan record...")
-            scan = await client.create_scan(
-                upload.contract_id,
-                scanners=["soliditydefend"],
-                scan_source=scan_source,
-            )
-
-            # Step 4: Run local scan
-            progress.update(task, description="Running SolidityDefend locally...")
-            raw_results = await scanner.scan(path)
-
-            # Step 5: Transform results
-            progress.update(task, description="Processing results...")
-            vulnerabilities = scanner.transform_results(raw_results)
-
-            # Step 6: Submit results to API
-            progress.update(task, description="Submitting results to API...")
-            result = await client.submit_local_results(scan.id, vulnerabilities)
-
-            # Step 7: Get final scan state
-            progress.update(task, description="Finalizing...")
-            scan = await client.get_scan(scan.id)
-
+            if offline:
+                scan, result = await run_offline_workflow(
+                    scanner,
+                    UploadQueue(),
+                    path,
+                    scan_source,
+                    display_path=display_path,
+                    on_step=lambda step: progress.update(task, description=step),
+                )
+            else:
+                scan, result = await run_local_workflow(
+                    client,
+                    scanner,
+                    path,
+                    scan_source,
+                    on_step=lambda step: progress.update(task, description=step),
+                )
             progress.update(task, description="Scan complete!")
 
         except DownloadError as e:
@@ -165,6 +212,9 @@ async def _run_local_scan(
         console.print(f"[red]Scan failed: {scan.error_message or 'Unknown error'}[/red]")
         raise typer.Exit(1)
 
+    if display_path:
+        remap_result_paths(result, path, display_path)
+
     # Format output
     formatter = get_formatter(output)
     formatted = formatter.format_scan(scan, result)
@@ -182,6 +232,205 @@ async def _run_local_scan(
             raise typer.Exit(exit_code)
 
 
+async def run_local_workflow(
+    client: BlockSecOpsClient,
+    scanner: SolidityDefendScanner,
+    path: Path,
+    scan_source: str,
+    on_step: Optional[Callable[[str], None]] = None,
+) -> Tuple[Scan, ScanResult]:
+    """
+    Run SolidityDefend locally and submit the results to the API.
+
+    Shared by ``scan run --local`` and server mode.
+
+    Args:
+        client: API client
+        scanner: Local SolidityDefend scanner
+        path: Path to contract file or directory
+        scan_source: Source identifier for tracking
+        on_step: Optional callback(description) for progress updates
+
+    Returns:
+        Tuple of (final Scan, ScanResult)
+    """
+    step = on_step or (lambda _: None)
+
+    # Step 1: Check/download SolidityDefend
+    step("Checking SolidityDefend installation...")
+    await scanner.downloader.ensure_latest()
+    version = scanner.get_version()
+    step(f"SolidityDefend {version} ready")
+
+    # Steps 2-3: Upload contract (unless unchanged since an earlier scan) and create scan record
+    step("Uploading contract...")
+    scan = await client.create_file_scan(
+        path,
+        scanners=["soliditydefend"],
+        scan_source=scan_source,
+    )
+
+    # Step 4: Run local scan
+    step("Running SolidityDefend locally...")
+    # Step 1 already checked for a newer release
+    raw_results = await scanner.scan(path, update=False)
+
+    # Step 5: Transform results
+    step("Processing results...")
+    vulnerabilities = scanner.transform_results(raw_results)
+
+    # Step 6: Submit results to API
+    step("Submitting results to API...")
+    result = await client.submit_local_results(scan.id, vulnerabilities)
+
+    # Step 7: Get final scan state
+    step("Finalizing...")
+    scan = await client.get_scan(scan.id)
+
+    return scan, result
+
+
+async def run_offline_workflow(
+    scanner: SolidityDefendScanner,
+    queue: UploadQueue,
+    path: Path,
+    scan_source: str,
+    display_path: Optional[str] = None,
+    on_step: Optional[Callable[[str], None]] = None,
+) -> Tuple[Scan, ScanResult]:
+    """
+    Run SolidityDefend locally and queue the results for a later submission.
+
+    Nothing here touches the network once SolidityDefend is installed; the
+    upload, scan creation and result submission happen when the queue drains.
+    Shared by ``scan run --offline`` and server mode.
+
+    Args:
+        scanner: Local SolidityDefend scanner
+        queue: Queue the results are submitted from later
+        path: Path to contract file or directory
+        scan_source: Source identifier for tracking
+        display_path: Path the scan is reported under, if ``path`` is a temporary snapshot
+        on_step: Optional callback(description) for progress updates
+
+    Returns:
+        Tuple of (local Scan, ScanResult); the scan's ID identifies the queue entry
+    """
+    step = on_step or (lambda _: None)
+    started_at = datetime.now(timezone.utc)
+
+    step("Running SolidityDefend locally...")
+    raw_results = await scanner.scan(path, update=False)
+
+    step("Processing results...")
+    vulnerabilities = scanner.transform_results(raw_results)
+    result = build_local_result(vulnerabilities)
+
+    step("Queueing results for upload...")
+    entry = queue.enqueue(path, vulnerabilities, scan_source, display_path=display_path)
+
+    completed_at = datetime.now(timezone.utc)
+    scan = Scan(
+        id=UUID(hex=entry.key),
+        # Assigned by the API once the queued upload is submitted
+        contract_id=UUID(int=0),
+        status=ScanStatus.COMPLETED,
+        progress=100,
+        scanners_requested=["soliditydefend"],
+        scanners_completed=["soliditydefend"],
+        result=result,
+        started_at=started_at,
+        completed_at=completed_at,
+        created_at=started_at,
+    )
+    return scan, result
+
+
+def local_vulnerability_id(vulnerability: Dict[str, Any]) -> UUID:
+    """
+    ID for a finding that has not been through the API.
+
+    Derived from the finding instead of random, so the SARIF rule ID of a finding without a
+    category (``BSO-<id>``) is the same on every run, and the same one the JetBrains plugin
+    computes when it runs SolidityDefend itself.
+    """
+    name = "blocksecops:{}:{}:{}".format(
+        vulnerability.get("vulnerability_type", "unknown"),
+        vulnerability.get("line_number", 1),
+        vulnerability.get("description", ""),
+    )
+    return uuid5(NAMESPACE_URL, name)
+
+
+def build_local_result(vulnerabilities: List[Dict[str, Any]]) -> ScanResult:
+    """
+    Build a ScanResult from findings that have not been through the API.
+
+    Args:
+        vulnerabilities: Findings in API format (``SolidityDefendScanner.transform_results``)
+
+    Returns:
+        ScanResult with IDs from ``local_vulnerability_id`` and severity counts
+    """
+    now = datetime.now(timezone.utc)
+    vulns = [
+        Vulnerability(id=local_vulnerability_id(v), created_at=now, **v) for v in vulnerabilities
+    ]
+
+    def count(severity: VulnerabilitySeverity) -> int:
+        return sum(1 for v in vulns if v.severity == severity)
+
+    return ScanResult(
+        total_vulnerabilities=len(vulns),
+        critical_count=count(VulnerabilitySeverity.CRITICAL),
+        high_count=count(VulnerabilitySeverity.HIGH),
+        medium_count=count(VulnerabilitySeverity.MEDIUM),
+        low_count=count(VulnerabilitySeverity.LOW),
+        info_count=count(VulnerabilitySeverity.INFO),
+        vulnerabilities=vulns,
+        scanners_used=["soliditydefend"],
+    )
+
+
+def _start_background_sync() -> None:
+    """Drain the upload queue in a detached process, so the scan itself returns right away."""
+    if not UploadQueue().begin_background_sync():
+        return
+    try:
+        subprocess.Popen(
+            [sys.executable, "-m", "blocksecops_cli", "scan", "sync", "--quiet"],
+            stdin=subprocess.DEVNULL,
+            stdout=subprocess.DEVNULL,
+            stderr=subprocess.DEVNULL,
+            start_new_session=True,
+        )
+    except OSError as e:
+        err_console.print(
+            f"[yellow]Results queued, but the upload could not be started ({e}). "
+            "Run 'blocksecops scan sync' to submit them.[/yellow]"
+        )
+
+
+def _report_bundle(bundle: ProjectBundle) -> None:
+    """Tell the user what a directory scan uploaded."""
+    files = f"{len(bundle.files)} file{'s' if len(bundle.files) != 1 else ''}"
+    if bundle.sent_bytes:
+        saved = 100 * bundle.saved_bytes // bundle.source_bytes if bundle.source_bytes else 0
+        err_console.print(
+            f"[dim]Uploaded {files} ({format_bytes(bundle.source_bytes)}) as "
+            f"{format_bytes(bundle.sent_bytes)}, saving {format_bytes(bundle.saved_bytes)} "
+            f"({saved}%)[/dim]"
+        )
+    else:
+        err_console.print(
+            f"[dim]{files} unchanged since an earlier upload, "
+            f"saving {format_bytes(bundle.source_bytes)}[/dim]"
+        )
+    skipped = [name for name in bundle.skipped if name.rsplit("/", 1)[-1] not in VCS_DIRS]
+    if skipped:
+        err_console.print(f"[dim]Skipped directories: {', '.join(skipped)}[/dim]")
+
+
 async def _run_remote_scan(
     path: Path,
     scan_source: str,
@@ -190,6 +439,7 @@ async def _run_remote_scan(
     scanners: Optional[List[str]],
     output_file: Optional[Path],
     fail_on: Optional[str],
+    display_path: Optional[str] = None,
 ):
     """Run scan remotely via API (existing behavior with scan_source support)."""
     client = BlockSecOpsClient()
@@ -211,6 +461,7 @@ async def _run_remote_scan(
             progress_callback=lambda s: progress.update(
                 task, description=f"Scan status: {s.status}"
             ),
+            on_bundle=_report_bundle,
         )
 
         progress.update(task, description="Scan complete!")
@@ -228,6 +479,9 @@ async def _run_remote_scan(
         console.print("[yellow]Scan completed but no results available[/yellow]")
         return
 
+    if display_path:
+        remap_result_paths(result, path, display_path)
+
     # Format output
     formatter = get_formatter(output)
     formatted = formatter.format_scan(scan, result)
@@ -356,6 +610,36 @@ def scan_results(
             raise typer.Exit(exit_code)
 
 
+@app.command("sync")
+def scan_sync(
+    quiet: bool = typer.Option(False, "--quiet", "-q", help="Only report errors"),
+):
+    """Submit scan results queued by offline scans."""
+    require_auth()
+
+    queue = UploadQueue()
+    if not len(queue):
+        if not quiet:
+            console.print("[dim]No queued results to upload[/dim]")
+        return
+
+    result = asyncio.run(queue.drain(BlockSecOpsClient()))
+
+    if not quiet or result.failed:
+        console.print(f"[green]Submitted {result.submitted} queued scan(s)[/green]")
+    if result.failed:
+        console.print(
+            f"[red]{result.failed} scan(s) were rejected by the API and moved to "
+            f"{queue.failed_directory}[/red]"
+        )
+    if result.error:
+        console.print(
+            f"[yellow]Stopped early: {result.error}. "
+            f"{result.remaining} scan(s) still queued.[/yellow]"
+        )
+        raise typer.Exit(1)
+
+
 @app.command("list")
 def scan_list(
     limit: int = typer.Option(10, "--limit", "-n", help="Number of scans to show"),
@@ -0,0 +1,327 @@
+"""Long-lived scan server speaking JSON-RPC 2.0 over stdio.
+
+IDE integrations start ``blocksecops server`` once per project and send scan
+requests to it, so the interpreter start, imports and keyring lookup are paid
+once instead of on every highlighting pass.
+
+Messages are newline-delimited JSON objects. Supported methods:
+
+    initialize  -> {"version": str, "protocol": int, "authenticated": bool,
+                    "soliditydefend": str | null}   params: warmup
+    scan        -> {"sarif": {...}}   params: path, content, local, offline, scanners, scan_source
+    shutdown    -> null               (the server exits after replying)
+
+The ``$/cancelRequest`` notification (params: id) cancels an in-flight
+request; a cancelled local scan kills its SolidityDefend process.
+
+Offline scans reply with local results straight away and queue them for
+upload; the server drains that queue in the background while it runs.
+"""
+
+import asyncio
+import json
+import sys
+from pathlib import Path
+from typing import Any, Callable, Dict, Optional, Tuple
+
+import typer
+
+from .. import __version__
+from ..api.client import APIError, AuthenticationError, BlockSecOpsClient
+from ..api.models import Scan, ScanResult
+from ..formatters.sarif_formatter import SARIFFormatter
+from ..scanner import SolidityDefendScanner
+from ..scanner.downloader import DownloadError
+from ..scanner.soliditydefend import ScannerError
+from ..snapshot import remap_result_paths, snapshot_file
+from ..upload_queue import DrainResult, UploadQueue
+from .scan import VALID_SCAN_SOURCES, run_local_workflow, run_offline_workflow
+
+app = typer.Typer(help="Scan server for IDE integrations")
+
+PROTOCOL_VERSION = 1
+
+# JSON-RPC error codes
+PARSE_ERROR = -32700
+INVALID_REQUEST = -32600
+METHOD_NOT_FOUND = -32601
+INVALID_PARAMS = -32602
+INTERNAL_ERROR = -32603
+REQUEST_CANCELLED = -32800
+SCAN_ERROR = -32000
+AUTH_ERROR = -32001
+
+# Queued uploads wait this long for a burst of editor scans to settle
+DRAIN_DELAY_SECONDS = 5.0
+# While the API is unreachable, retries back off up to this interval
+DRAIN_MAX_BACKOFF_SECONDS = 600.0
+
+
+class RPCError(Exception):
+    """Error returned to the client as a JSON-RPC error object."""
+
+    def __init__(self, code: int, message: str, data: Optional[Dict[str, Any]] = None):
+        super().__init__(message)
+        self.code = code
+        self.data = data
+
+
+class ScanServer:
+    """Dispatch JSON-RPC requests read from stdin to scan handlers."""
+
+    def __init__(self, out=None):
+        self.out = out or sys.stdout.buffer
+        self.client = BlockSecOpsClient()
+        self.scanner = SolidityDefendScanner()
+        self.formatter = SARIFFormatter()
+        self.queue = UploadQueue()
+        self.tasks: Dict[Any, asyncio.Task] = {}
+        self.drain_wanted = asyncio.Event()
+        self.drainer: Optional[asyncio.Task] = None
+        self.warmup: Optional[asyncio.Task] = None
+        self.running = True
+        self.methods: Dict[str, Callable[[Dict[str, Any]], Any]] = {
+            "initialize": self.initialize,
+            "scan": self.scan,
+            "shutdown": self.shutdown,
+        }
+
+    async def serve(self) -> None:
+        """Read requests until stdin closes or shutdown is requested."""
+        loop = asyncio.get_running_loop()
+        stdin = sys.stdin.buffer
+
+        while self.running:
+            line = await loop.run_in_executor(None, stdin.readline)
+            if not line:
+                break
+            if not line.strip():
+                continue
+
+            try:
+                message = json.loads(line)
+            except json.JSONDecodeError as e:
+                self._send_error(None, PARSE_ERROR, f"Parse error: {e}")
+                continue
+
+            if not isinstance(message, dict) or "method" not in message:
+                self._send_error(message.get("id") if isinstance(message, dict) else None,
+                                 INVALID_REQUEST, "Invalid request")
+                continue
+
+            if message["method"] == "$/cancelRequest":
+                self._cancel((message.get("params") or {}).get("id"))
+                continue
+
+            # Requests run concurrently so one slow scan does not block the others
+            request_id = message.get("id")
+            task = asyncio.create_task(self._handle(message))
+            if request_id is not None:
+                self.tasks[request_id] = task
+                task.add_done_callback(lambda _, rid=request_id: self.tasks.pop(rid, None))
+
+        if self.tasks:
+            await asyncio.gather(*self.tasks.values(), return_exceptions=True)
+
+        if self.warmup is not None:
+            self.warmup.cancel()
+            await asyncio.gather(self.warmup, return_exceptions=True)
+
+        # Whatever is still queued is picked up by the next server or 'scan sync'
+        if self.drainer is not None:
+            self.drainer.cancel()
+            await asyncio.gather(self.drainer, return_exceptions=True)
+
+    async def _handle(self, message: Dict[str, Any]) -> None:
+        request_id = message.get("id")
+        handler = self.methods.get(message["method"])
+
+        if handler is None:
+            if request_id is not None:
+                self._send_error(request_id, METHOD_NOT_FOUND,
+                                 f"Method not found: {message['method']}")
+            return
+
+        params = message.get("params") or {}
+        try:
+            result = await handler(params)
+        except asyncio.CancelledError:
+            self._send_error(request_id, REQUEST_CANCELLED, "Request cancelled")
+            return
+        except RPCError as e:
+            self._send_error(request_id, e.code, str(e), e.data)
+            return
+        except AuthenticationError as e:
+            self._send_error(request_id, AUTH_ERROR, str(e), {"status_code": e.status_code})
+            return
+        except APIError as e:
+            self._send_error(request_id, SCAN_ERROR, str(e), {"status_code": e.status_code})
+            return
+        except (DownloadError, ScannerError, FileNotFoundError, TimeoutError) as e:
+            self._send_error(request_id, SCAN_ERROR, str(e))
+            return
+        except Exception as e:
+            self._send_error(request_id, INTERNAL_ERROR, f"Internal error: {e}")
+            return
+
+        if request_id is not None:
+            self._send({"jsonrpc": "2.0", "id": request_id, "result": result})
+
+    def _cancel(self, request_id: Any) -> None:
+        """Cancel an in-flight request superseded by the client."""
+        task = self.tasks.get(request_id)
+        if task is not None:
+            task.cancel()
+
+    # =========================================================================
+    # Methods
+    # =========================================================================
+
+    async def initialize(self, params: Dict[str, Any]) -> Dict[str, Any]:
+        """
+        Report server version and protocol.
+
+        With ``warmup``, the SolidityDefend release check runs now, in the
+        background, instead of in front of the first local scan. The API key
+        is already loaded by the time this replies.
+        """
+        if len(self.queue):
+            # Left over from an earlier session or a network outage
+            self._request_drain()
+        if params.get("warmup") and self.scanner.downloader.is_installed():
+            self.warmup = asyncio.create_task(self._warm_up())
+        return {
+            "version": __version__,
+            "protocol": PROTOCOL_VERSION,
+            "authenticated": self.client.api_key is not None,
+            "soliditydefend": self.scanner.get_version(),
+        }
+
+    async def _warm_up(self) -> None:
+        try:
+            await self.scanner.downloader.ensure_latest()
+        except DownloadError as e:
+            # Offline is fine; the installed binary is used and the check repeats on the next scan
+            print(f"SolidityDefend release check failed: {e}", file=sys.stderr)
+
+    async def scan(self, params: Dict[str, Any]) -> Dict[str, Any]:
+        """
+        Scan a file or directory and return the results as a SARIF log.
+
+        When ``content`` is given it is scanned instead of the file on disk
+        (e.g. an unsaved editor buffer); findings still refer to ``path``.
+        """
+        if not params.get("path"):
+            raise RPCError(INVALID_PARAMS, "Missing required parameter: path")
+
+        scan_source = params.get("scan_source", "cli")
+        if scan_source not in VALID_SCAN_SOURCES:
+            raise RPCError(INVALID_PARAMS, f"Unknown scan source: {scan_source}")
+
+        content = params.get("content")
+        if content is not None:
+            with snapshot_file(params["path"], content.encode("utf-8")) as snapshot:
+                scan, result = await self._scan_path(snapshot, params, scan_source)
+                remap_result_paths(result, snapshot, params["path"])
+        else:
+            path = Path(params["path"])
+            if not path.exists():
+                raise RPCError(INVALID_PARAMS, f"Path not found: {path}")
+            scan, result = await self._scan_path(path, params, scan_source)
+
+        return {"sarif": self.formatter.build_sarif(scan, result)}
+
+    async def _scan_path(
+        self,
+        path: Path,
+        params: Dict[str, Any],
+        scan_source: str,
+    ) -> Tuple[Scan, ScanResult]:
+        if params.get("offline"):
+            scan, result = await run_offline_workflow(
+                self.scanner, self.queue, path, scan_source, display_path=params["path"]
+            )
+            self._request_drain()
+        elif params.get("local"):
+            scan, result = await run_local_workflow(self.client, self.scanner, path, scan_source)
+        else:
+            scan, result = await self.client.scan_file(
+                path,
+                scanners=params.get("scanners"),
+                scan_source=scan_source,
+            )
+
+        if scan.status == "failed":
+            raise RPCError(SCAN_ERROR, f"Scan failed: {scan.error_message or 'Unknown error'}")
+
+        if result is None:
+            raise RPCError(SCAN_ERROR, "Scan completed but no results available")
+
+        return scan, result
+
+    # =========================================================================
+    # Upload queue
+    # =========================================================================
+
+    def _request_drain(self) -> None:
+        """Submit the queued offline results soon, in the background."""
+        self.drain_wanted.set()
+        if self.drainer is None:
+            self.drainer = asyncio.create_task(self._drain_loop())
+
+    async def _drain_loop(self) -> None:
+        backoff = DRAIN_DELAY_SECONDS
+        while True:
+            await self.drain_wanted.wait()
+            await asyncio.sleep(DRAIN_DELAY_SECONDS)
+            self.drain_wanted.clear()
+
+            try:
+                result = await self.queue.drain(self.client)
+            except Exception as e:
+                result = DrainResult(error=str(e), remaining=len(self.queue))
+
+            if result.error and result.remaining:
+                # Most likely offline; keep the results queued and try again later
+                backoff = min(backoff * 2, DRAIN_MAX_BACKOFF_SECONDS)
+                print(f"Upload queue: {result.error}; retrying in {backoff:.0f}s", file=sys.stderr)
+                await asyncio.sleep(backoff)
+                self.drain_wanted.set()
+            else:
+                backoff = DRAIN_DELAY_SECONDS
+
+    async def shutdown(self, params: Dict[str, Any]) -> None:
+        """Stop reading requests; in-flight scans are allowed to finish."""
+        self.running = False
+        return None
+
+    # =========================================================================
+    # Output
+    # =========================================================================
+
+    def _send(self, message: Dict[str, Any]) -> None:
+        self.out.write(json.dumps(message, separators=(",", ":")).encode("utf-8") + b"\n")
+        self.out.flush()
+
+    def _send_error(
+        self,
+        request_id: Any,
+        code: int,
+        message: str,
+        data: Optional[Dict[str, Any]] = None,
+    ) -> None:
+        error: Dict[str, Any] = {"code": code, "message": message}
+        if data:
+            error["data"] = data
+        self._send({"jsonrpc": "2.0", "id": request_id, "error": error})
+
+
+@app.callback(invoke_without_command=True)
+def server():
+    """Run a JSON-RPC scan server over stdio (used by IDE integrations)."""
+    out = sys.stdout.buffer
+
+    # Anything else that prints must not corrupt the protocol stream
+    sys.stdout = sys.stderr
+
+    asyncio.run(ScanServer(out).serve())
@@ -0,0 +1,149 @@
+"""Local map from contract content hashes to the contracts already uploaded for them.
+
+Every scan used to upload the file and create a new contract record, even
+when the bytes were identical to the previous scan. The map remembers which
+contract holds which content, so an unchanged file goes straight to
+``create_scan``.
+
+It lives in ``~/.blocksecops/contracts.json`` and is shared with the JetBrains
+plugin, which reads and writes the same file:
+
+    {"version": 2, "contracts": {"<api_url> <sha256> <filename>": {
+        "api_url": "...", "sha256": "...", "filename": "Token.sol",
+        "contract_id": "...", "saved_at": 1700000000.0}}}
+
+Entries are keyed by API, content and file name together: findings are
+reported under the name the contract was uploaded with, so the same content
+under two names, or on two APIs, is two contracts. Keys are rebuilt from the
+entries on load, so version 1 files, keyed by hash alone, still read.
+
+The map is only a cache: writers replace the whole file atomically and the
+last one wins, and a contract the API no longer knows is simply uploaded
+again.
+"""
+
+import hashlib
+import json
+import os
+import tempfile
+import time
+from pathlib import Path
+from typing import Any, Dict, Optional
+from uuid import UUID
+
+from .config import get_config_dir
+
+FILE_NAME = "contracts.json"
+
+# Oldest entries are dropped beyond this, keeping the file quick to read on every scan
+MAX_ENTRIES = 5000
+
+
+def content_hash(content: bytes) -> str:
+    """Hex SHA-256 of contract content, part of the map's key and of the API's lookup by hash."""
+    return hashlib.sha256(content).hexdigest()
+
+
+def entry_key(api_url: str, digest: str, filename: str) -> str:
+    """Key of an entry; URLs and hex digests have no spaces, and the file name comes last."""
+    return f"{api_url} {digest} {filename}"
+
+
+def _valid_entry(digest: str, entry: Any) -> Optional[Dict[str, Any]]:
+    """
+    The entry with its content hash filled in, or None if it can't be used.
+
+    Like ``Entry.fromJson`` in the plugin: every field is a string and the
+    contract id is a UUID, so a hand-edited or foreign entry is skipped rather
+    than failing the scan that finds it.
+    """
+    if not isinstance(entry, dict):
+        return None
+    digest = entry.get("sha256", digest)
+    api_url = entry.get("api_url")
+    filename = entry.get("filename")
+    contract_id = entry.get("contract_id")
+    if not all(isinstance(value, str) for value in (digest, api_url, filename, contract_id)):
+        return None
+    try:
+        UUID(contract_id)
+    except ValueError:
+        return None
+    return {**entry, "sha256": digest}
+
+
+class ContractMap:
+    """Content hash to contract id, persisted across runs and processes."""
+
+    def __init__(self, path: Optional[Path] = None):
+        self.path = path or get_config_dir() / FILE_NAME
+        self._entries: Dict[str, Dict[str, Any]] = {}
+        self._loaded_mtime: Optional[int] = None
+
+    def lookup(self, api_url: str, digest: str, filename: str) -> Optional[str]:
+        """The contract id uploaded for this content under this name, if any."""
+        entry = self._load().get(entry_key(api_url, digest, filename))
+        return entry["contract_id"] if entry else None
+
+    def remember(self, api_url: str, digest: str, filename: str, contract_id: str) -> None:
+        """Record the contract holding this content."""
+        entries = dict(self._load())
+        entries[entry_key(api_url, digest, filename)] = {
+            "api_url": api_url,
+            "sha256": digest,
+            "filename": filename,
+            "contract_id": str(contract_id),
+            "saved_at": time.time(),
+        }
+        if len(entries) > MAX_ENTRIES:
+            newest = sorted(
+                entries.items(), key=lambda item: item[1].get("saved_at", 0), reverse=True
+            )
+            entries = dict(newest[:MAX_ENTRIES])
+        self._save(entries)
+
+    def forget(self, api_url: str, digest: str, filename: str) -> None:
+        """Drop an entry whose contract the API no longer has."""
+        entries = dict(self._load())
+        if entries.pop(entry_key(api_url, digest, filename), None) is not None:
+            self._save(entries)
+
+    def _load(self) -> Dict[str, Dict[str, Any]]:
+        """The entries, re-read when another process changed the file."""
+        try:
+            mtime = self.path.stat().st_mtime_ns
+        except FileNotFoundError:
+            self._entries, self._loaded_mtime = {}, None
+            return self._entries
+        if mtime == self._loaded_mtime:
+            return self._entries
+
+        try:
+            data = json.loads(self.path.read_text(encoding="utf-8"))
+            entries = {}
+            for digest, value in data.get("contracts", {}).items():
+                entry = _valid_entry(digest, value)
+                if entry is not None:
+                    entries[entry_key(entry["api_url"], entry["sha256"], entry["filename"])] = entry
+        except (OSError, ValueError, AttributeError):
+            entries = {}
+        self._entries, self._loaded_mtime = entries, mtime
+        return entries
+
+    def _save(self, entries: Dict[str, Dict[str, Any]]) -> None:
+        """Write the entries, ignoring failures: a map that can't be written only costs uploads."""
+        self._entries = entries
+        try:
+            self.path.parent.mkdir(parents=True, exist_ok=True)
+            # Write to a sibling and move it in, so a reader never sees half a file
+            fd, tmp = tempfile.mkstemp(prefix=".contracts-", suffix=".tmp", dir=self.path.parent)
+            try:
+                with os.fdopen(fd, "w", encoding="utf-8") as f:
+                    json.dump({"version": 2, "contracts": entries}, f)
+                os.replace(tmp, self.path)
+            except BaseException:
+                Path(tmp).unlink(missing_ok=True)
+                raise
+            self._loaded_mtime = self.path.stat().st_mtime_ns
+        except OSError:
+            pass
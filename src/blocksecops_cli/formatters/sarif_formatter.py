@@ -26,6 +26,10 @@ class SARIFFormatter(BaseFormatter):
 
     def format_scan(self, scan: Scan, result: ScanResult) -> str:
         """Format scan results as SARIF."""
+        return json.dumps(self.build_sarif(scan, result), indent=2)
+
+    def build_sarif(self, scan: Scan, result: ScanResult) -> Dict[str, Any]:
+        """Build the SARIF log as a dict (used directly by server mode)."""
         sarif: Dict[str, Any] = {
             "$schema": "https://raw.githubusercontent.com/oasis-tcs/sarif-spec/master/Schemata/sarif-schema-2.1.0.json",
             "version": "2.1.0",
@@ -51,7 +55,7 @@ class SARIFFormatter(BaseFormatter):
             ],
         }
 
-        return json.dumps(sarif, indent=2)
+        return sarif
 
     def format_summary(self, result: ScanResult) -> str:
         """Format a brief summary as SARIF (minimal format)."""
@@ -112,11 +116,13 @@ class SARIFFormatter(BaseFormatter):
         for vuln in result.vulnerabilities:
             rule_id = vuln.category or f"BSO-{vuln.id}"
 
+            # Locations first: streaming readers (the JetBrains plugin) skip other files' results
+            # without reading the rest
             sarif_result: Dict[str, Any] = {
+                "locations": [],
                 "ruleId": rule_id,
                 "level": SEVERITY_TO_SARIF_LEVEL.get(vuln.severity, "warning"),
                 "message": {"text": vuln.description or vuln.title},
-                "locations": [],
             }
 
             # Add location if available
@@ -149,6 +155,7 @@ class SARIFFormatter(BaseFormatter):
 
             # Add properties
             sarif_result["properties"] = {
+                "severity": vuln.severity.value,
                 "confidence": vuln.confidence,
                 "scanner": vuln.scanner_id,
             }
@@ -5,6 +5,7 @@ from rich.console import Console
 
 from .commands.auth import app as auth_app
 from .commands.scan import app as scan_app
+from .commands.server import app as server_app
 
 app = typer.Typer(
     name="blocksecops",
@@ -16,6 +17,7 @@ console = Console()
 # Add subcommands
 app.add_typer(auth_app, name="auth")
 app.add_typer(scan_app, name="scan")
+app.add_typer(server_app, name="server")
 
 
 @app.command()
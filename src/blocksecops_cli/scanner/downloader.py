@@ -1,18 +1,49 @@
 """
 Download and manage SolidityDefend binary from GitHub releases.
 Always fetches latest release from: https://github.com/BlockSecOps/SolidityDefend
+
+The release check is cached on disk and shared by every CLI process, so local
+scans don't pay a GitHub round trip each time, and they keep working offline
+once a binary is installed. Downloads stream into a partial file that later
+attempts resume, are verified against the release's SHA-256 and are moved into
+place atomically, so a scan never runs a half-written binary.
 """
 
+import asyncio
+import hashlib
+import json
+import os
 import platform
 import stat
+import tempfile
+import time
+from contextlib import asynccontextmanager
 from pathlib import Path
-from typing import Optional
+from typing import Any, Dict, Optional, Tuple
 
 import httpx
 
 from ..config import get_config_dir
 
 
+# Releases are checked at most this often, across all processes
+RELEASE_CHECK_INTERVAL_SECONDS = 3600
+
+# After a failed check or download, the installed binary is used without retrying for this long
+RELEASE_RETRY_SECONDS = 300
+
+# A download lock older than this was left behind by a process that died
+STALE_LOCK_SECONDS = 600
+
+DOWNLOAD_CHUNK_SIZE = 64 * 1024
+
+# A check that can't connect quickly is treated as offline
+CHECK_TIMEOUT = httpx.Timeout(10.0, connect=5.0)
+DOWNLOAD_TIMEOUT = httpx.Timeout(60.0, connect=10.0)
+
+# Separate checksum assets published by releases without GitHub's asset digests
+CHECKSUM_ASSETS = ("checksums.txt", "sha256sums.txt", "SHA256SUMS")
+
 GITHUB_REPO = "BlockSecOps/SolidityDefend"
 GITHUB_API = f"https://api.github.com/repos/{GITHUB_REPO}/releases/latest"
 
@@ -28,40 +59,82 @@ class SolidityDefendDownloader:
     def __init__(self):
         self.install_dir = get_config_dir() / "bin"
         self.version_file = self.install_dir / ".soliditydefend_version"
+        self.release_file = self.install_dir / ".soliditydefend_release.json"
+        self.lock_file = self.install_dir / ".soliditydefend_download.lock"
 
     async def ensure_latest(self) -> Path:
         """
         Ensure latest SolidityDefend is installed, download if needed.
 
+        GitHub is only asked when the last check (by any process) is older
+        than ``RELEASE_CHECK_INTERVAL_SECONDS``, and then conditionally, so an
+        unchanged release costs a 304. When the check or the download fails,
+        an installed binary is used as is and the check retried later.
+
         Returns:
             Path to the SolidityDefend binary
         """
-        try:
-            latest = await self._get_latest_release()
-            current = self._get_installed_version()
+        binary_path = self._get_binary_path()
+        installed = binary_path.exists()
+        state = self._read_release_state()
+        if installed and self._is_fresh(state):
+            return binary_path
 
-            if current != latest["tag_name"]:
+        try:
+            latest, etag = await self._get_latest_release(state)
+            if not installed or self._get_installed_version() != latest["tag_name"]:
                 await self._download_release(latest)
+        except (DownloadError, httpx.HTTPError, OSError, ValueError, KeyError) as e:
+            if binary_path.exists():
+                # Offline, rate limited or a broken release: keep scanning with what is installed
+                self._write_release_state({**state, "failed_at": time.time()})
+                return binary_path
+            if isinstance(e, DownloadError):
+                raise
+            if isinstance(e, httpx.HTTPError):
+                raise DownloadError(f"Failed to fetch release info: {e}") from e
+            raise DownloadError(f"Failed to ensure SolidityDefend: {e}") from e
 
-            binary_path = self._get_binary_path()
-            if not binary_path.exists():
-                await self._download_release(latest)
+        self._write_release_state({
+            "release": _trim_release(latest),
+            "etag": etag,
+            "checked_at": time.time(),
+        })
+        return binary_path
+
+    async def ensure_installed(self) -> Path:
+        """
+        Return the installed SolidityDefend without checking for a newer release.
+
+        Only downloads when nothing is installed yet, so offline scans work
+        without network access once the binary is in place.
 
+        Returns:
+            Path to the SolidityDefend binary
+        """
+        binary_path = self._get_binary_path()
+        if binary_path.exists():
             return binary_path
-        except httpx.HTTPError as e:
-            raise DownloadError(f"Failed to fetch release info: {e}")
-        except Exception as e:
-            raise DownloadError(f"Failed to ensure SolidityDefend: {e}")
-
-    async def _get_latest_release(self) -> dict:
-        """Fetch latest release info from GitHub API."""
-        async with httpx.AsyncClient(timeout=30.0) as client:
-            resp = await client.get(
-                GITHUB_API,
-                headers={"Accept": "application/vnd.github+json"},
-            )
-            resp.raise_for_status()
-            return resp.json()
+        return await self.ensure_latest()
+
+    async def _get_latest_release(self, state: Dict[str, Any]) -> Tuple[dict, Optional[str]]:
+        """
+        Fetch latest release info from GitHub API.
+
+        Returns:
+            The release and its ETag; the cached release when GitHub says it is unchanged
+        """
+        headers = {"Accept": "application/vnd.github+json"}
+        cached = state.get("release")
+        if cached and state.get("etag"):
+            headers["If-None-Match"] = state["etag"]
+
+        async with httpx.AsyncClient(timeout=CHECK_TIMEOUT) as client:
+            resp = await client.get(GITHUB_API, headers=headers)
+        if resp.status_code == 304 and cached:
+            return cached, state.get("etag")
+        resp.raise_for_status()
+        return resp.json(), resp.headers.get("etag")
 
     async def _download_release(self, release: dict) -> None:
         """Download appropriate binary for current platform."""
@@ -91,7 +164,7 @@ class SolidityDefendDownloader:
         # Find matching asset in release
         asset = None
         for a in release.get("assets", []):
-            if asset_prefix in a["name"]:
+            if asset_prefix in a["name"] and not a["name"].endswith(".sha256"):
                 asset = a
                 break
 
@@ -103,19 +176,144 @@ class SolidityDefendDownloader:
         # Create install directory
         self.install_dir.mkdir(parents=True, exist_ok=True)
         binary_path = self._get_binary_path()
+        tag = "".join(c if c.isalnum() or c in "._-" else "_" for c in release["tag_name"])
+        part = self.install_dir / f".{binary_path.name}-{tag}.part"
+
+        async with self._download_lock():
+            # Another process may have installed it while this one waited
+            if binary_path.exists() and self._get_installed_version() == release["tag_name"]:
+                return
 
-        # Download binary
-        async with httpx.AsyncClient(timeout=300.0, follow_redirects=True) as client:
-            resp = await client.get(asset["browser_download_url"])
-            resp.raise_for_status()
-            binary_path.write_bytes(resp.content)
+            for stale in self.install_dir.glob(f".{binary_path.name}-*.part"):
+                if stale != part:
+                    stale.unlink(missing_ok=True)
 
-        # Set executable permission on Unix
-        if system != "windows":
-            binary_path.chmod(binary_path.stat().st_mode | stat.S_IXUSR | stat.S_IXGRP | stat.S_IXOTH)
+            expected = await self._get_expected_digest(release, asset)
+            size = asset.get("size")
+            await self._fetch(asset["browser_download_url"], part, size)
 
-        # Save version
-        self.version_file.write_text(release["tag_name"])
+            received = part.stat().st_size
+            if size and received != size:
+                if received > size:
+                    part.unlink(missing_ok=True)
+                # A short file is kept for the next attempt to resume
+                raise DownloadError(
+                    f"Incomplete download of {asset['name']}: {received} of {size} bytes"
+                )
+            if expected and _sha256_file(part) != expected:
+                part.unlink(missing_ok=True)
+                raise DownloadError(
+                    f"Checksum mismatch for {asset['name']} in release {release['tag_name']}"
+                )
+
+            # Set executable permission on Unix
+            if system != "windows":
+                part.chmod(part.stat().st_mode | stat.S_IXUSR | stat.S_IXGRP | stat.S_IXOTH)
+
+            # Swap the verified binary in, then record its version
+            os.replace(part, binary_path)
+            _write_atomic(self.version_file, release["tag_name"])
+
+    async def _fetch(self, url: str, part: Path, size: Optional[int]) -> None:
+        """
+        Stream a download into ``part``, resuming what an earlier attempt left there.
+
+        A server that ignores the range request sends the whole file, which replaces the partial
+        one.
+        """
+        offset = part.stat().st_size if part.exists() else 0
+        if size and offset > size:
+            part.unlink()
+            offset = 0
+        if size and offset == size:
+            return
+
+        headers = {"Range": f"bytes={offset}-"} if offset else {}
+        async with httpx.AsyncClient(timeout=DOWNLOAD_TIMEOUT, follow_redirects=True) as client:
+            async with client.stream("GET", url, headers=headers) as resp:
+                resp.raise_for_status()
+                mode = "ab" if resp.status_code == 206 else "wb"
+                written = 0
+                with open(part, mode) as f:
+                    async for chunk in resp.aiter_bytes(DOWNLOAD_CHUNK_SIZE):
+                        f.write(chunk)
+                        written += len(chunk)
+                        if written >= 16 * DOWNLOAD_CHUNK_SIZE:
+                            # Keep the lock from looking abandoned during a slow download
+                            os.utime(self.lock_file)
+                            written = 0
+
+    async def _get_expected_digest(self, release: dict, asset: dict) -> Optional[str]:
+        """
+        The asset's SHA-256: GitHub's own asset digest, or the release's checksum file.
+
+        Returns None when the release publishes neither; the download is then only checked for size.
+        """
+        digest = asset.get("digest") or ""
+        if digest.startswith("sha256:"):
+            return digest[len("sha256:"):].lower()
+
+        names = (f"{asset['name']}.sha256",) + CHECKSUM_ASSETS
+        for candidate in release.get("assets", []):
+            if candidate.get("name") not in names:
+                continue
+            async with httpx.AsyncClient(timeout=CHECK_TIMEOUT, follow_redirects=True) as client:
+                resp = await client.get(candidate["browser_download_url"])
+                resp.raise_for_status()
+            for line in resp.text.splitlines():
+                fields = line.split()
+                if len(fields) == 1 and candidate["name"].endswith(".sha256"):
+                    return fields[0].lower()
+                if len(fields) >= 2 and fields[-1].lstrip("*") == asset["name"]:
+                    return fields[0].lower()
+        return None
+
+    @asynccontextmanager
+    async def _download_lock(self):
+        """Only one process downloads at a time; the others wait, then find the binary installed."""
+        while True:
+            try:
+                os.close(os.open(self.lock_file, os.O_CREAT | os.O_EXCL | os.O_WRONLY))
+                break
+            except FileExistsError:
+                try:
+                    if time.time() - self.lock_file.stat().st_mtime > STALE_LOCK_SECONDS:
+                        self.lock_file.unlink(missing_ok=True)
+                        continue
+                except FileNotFoundError:
+                    continue
+                await asyncio.sleep(0.5)
+        try:
+            yield
+        finally:
+            self.lock_file.unlink(missing_ok=True)
+
+    def _read_release_state(self) -> Dict[str, Any]:
+        try:
+            state = json.loads(self.release_file.read_text())
+            return state if isinstance(state, dict) else {}
+        except (OSError, ValueError):
+            return {}
+
+    def _write_release_state(self, state: Dict[str, Any]) -> None:
+        try:
+            self.install_dir.mkdir(parents=True, exist_ok=True)
+            _write_atomic(self.release_file, json.dumps(state))
+        except OSError:
+            # Only costs another check next time
+            pass
+
+    @staticmethod
+    def _is_fresh(state: Dict[str, Any]) -> bool:
+        """Whether the last release check, or failed attempt, is recent enough to skip a new one."""
+        now = time.time()
+        checked_at = state.get("checked_at") or 0
+        failed_at = state.get("failed_at") or 0
+        # A clock set back makes every stamp look recent; treat those as stale
+        return (
+            0 <= now - checked_at < RELEASE_CHECK_INTERVAL_SECONDS
+            or 0 <= now - failed_at < RELEASE_RETRY_SECONDS
+        )
 
     def _get_binary_path(self) -> Path:
         """Get path to the SolidityDefend binary."""
@@ -135,3 +333,34 @@ class SolidityDefendDownloader:
     def is_installed(self) -> bool:
         """Check if SolidityDefend is installed."""
         return self._get_binary_path().exists()
+
+
+def _trim_release(release: dict) -> dict:
+    """The parts of a release needed to download it again, for the on-disk cache."""
+    return {
+        "tag_name": release["tag_name"],
+        "assets": [
+            {key: a[key] for key in ("name", "browser_download_url", "size", "digest") if key in a}
+            for a in release.get("assets", [])
+        ],
+    }
+
+
+def _sha256_file(path: Path) -> str:
+    digest = hashlib.sha256()
+    with open(path, "rb") as f:
+        for block in iter(lambda: f.read(DOWNLOAD_CHUNK_SIZE), b""):
+            digest.update(block)
+    return digest.hexdigest()
+
+
+def _write_atomic(path: Path, text: str) -> None:
+    """Write through a sibling file moved into place, so readers never see half of it."""
+    fd, tmp = tempfile.mkstemp(prefix=f".{path.name}-", suffix=".tmp", dir=path.parent)
+    try:
+        with os.fdopen(fd, "w") as f:
+            f.write(text)
+        os.replace(tmp, path)
+    except BaseException:
+        Path(tmp).unlink(missing_ok=True)
+        raise
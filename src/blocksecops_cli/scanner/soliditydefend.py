@@ -1,7 +1,7 @@
 """Execute SolidityDefend locally and transform results."""
 
+import asyncio
 import json
-import subprocess
 from pathlib import Path
 from typing import Any
 
@@ -19,46 +19,69 @@ class SolidityDefendScanner:
     def __init__(self):
         self.downloader = SolidityDefendDownloader()
 
-    async def scan(self, path: Path, timeout: int = 600) -> dict:
+    async def scan(self, path: Path, timeout: int = 600, update: bool = True) -> dict:
         """
         Run SolidityDefend on a file or directory.
 
         Args:
             path: Path to contract file or directory
             timeout: Maximum scan time in seconds
+            update: Check for a newer release first; without it the installed
+                binary is used as is and no network access is needed
 
         Returns:
             Raw scanner output as dict
         """
-        # Ensure latest version is installed
-        binary = await self.downloader.ensure_latest()
+        if update:
+            binary = await self.downloader.ensure_latest()
+        else:
+            binary = await self.downloader.ensure_installed()
 
-        # Run scanner
+        # Run scanner; cancelling the awaiting task kills the process
         try:
-            result = subprocess.run(
-                [str(binary), str(path), "-f", "json"],
-                capture_output=True,
-                text=True,
-                timeout=timeout,
+            process = await asyncio.create_subprocess_exec(
+                str(binary),
+                str(path),
+                "-f",
+                "json",
+                stdout=asyncio.subprocess.PIPE,
+                stderr=asyncio.subprocess.PIPE,
             )
-        except subprocess.TimeoutExpired:
-            raise ScannerError(f"Scan timed out after {timeout} seconds")
         except FileNotFoundError:
             raise ScannerError(f"Scanner binary not found at {binary}")
         except Exception as e:
             raise ScannerError(f"Failed to run scanner: {e}")
 
+        try:
+            stdout_bytes, stderr_bytes = await asyncio.wait_for(process.communicate(), timeout)
+        except asyncio.TimeoutError:
+            await self._kill(process)
+            raise ScannerError(f"Scan timed out after {timeout} seconds")
+        except asyncio.CancelledError:
+            await self._kill(process)
+            raise
+
+        stdout = stdout_bytes.decode("utf-8", errors="replace")
+        stderr = stderr_bytes.decode("utf-8", errors="replace")
+
         # Check for errors
-        if result.returncode != 0 and not result.stdout:
-            error_msg = result.stderr.strip() if result.stderr else f"Exit code {result.returncode}"
+        if process.returncode != 0 and not stdout:
+            error_msg = stderr.strip() if stderr else f"Exit code {process.returncode}"
             raise ScannerError(f"Scanner failed: {error_msg}")
 
         # Parse output
         try:
-            return json.loads(result.stdout)
+            return json.loads(stdout)
         except json.JSONDecodeError as e:
             raise ScannerError(f"Failed to parse scanner output: {e}")
 
+    @staticmethod
+    async def _kill(process: asyncio.subprocess.Process) -> None:
+        """Kill a scanner process and reap it."""
+        if process.returncode is None:
+            process.kill()
+            await process.wait()
+
     def transform_results(self, raw: dict) -> list[dict[str, Any]]:
         """
         Transform SolidityDefend JSON output to API vulnerability format.
@@ -0,0 +1,86 @@
+"""Scan in-memory contents (editor buffers, stdin) instead of the file on disk."""
+
+import os
+import tempfile
+from contextlib import contextmanager
+from pathlib import Path
+from typing import Any, Dict, Iterator, List, Optional
+
+from .api.models import ScanResult
+
+# tmpfs mounts keep snapshot files off the disk entirely
+RAM_BACKED_DIRS = ("/dev/shm",)
+
+
+def _ram_dir() -> Optional[str]:
+    """Return a RAM-backed temp directory if the platform has one."""
+    for candidate in RAM_BACKED_DIRS:
+        if os.path.isdir(candidate) and os.access(candidate, os.W_OK):
+            return candidate
+    return None
+
+
+@contextmanager
+def snapshot_file(name: str, content: bytes) -> Iterator[Path]:
+    """
+    Materialize content as a temporary file named like the original.
+
+    The scanner and the upload endpoint both need a real path; keeping the
+    original file name preserves the language detection and rule matching.
+
+    Args:
+        name: Original file name or path (only the name is used)
+        content: File contents
+
+    Yields:
+        Path to the temporary file, removed on exit
+    """
+    with tempfile.TemporaryDirectory(prefix="blocksecops-", dir=_ram_dir()) as tmp:
+        path = Path(tmp) / (Path(name).name or "snapshot.sol")
+        path.write_bytes(content)
+        yield path
+
+
+def _in_snapshot(file_path: Optional[str], scanned: Path) -> bool:
+    """Whether a reported file path points into the temporary snapshot directory."""
+    if not file_path:
+        return False
+    return file_path.startswith(str(scanned.parent)) or file_path.startswith(
+        str(scanned.parent.resolve())
+    )
+
+
+def remap_result_paths(result: ScanResult, scanned: Path, display_path: str) -> None:
+    """
+    Point findings reported against the temporary snapshot back at the original path.
+
+    Args:
+        result: Scan results to rewrite in place
+        scanned: Path of the temporary snapshot file
+        display_path: Path the findings should refer to
+    """
+    for vuln in result.vulnerabilities:
+        if _in_snapshot(vuln.file_path, scanned):
+            vuln.file_path = display_path
+
+
+def remap_vulnerability_paths(
+    vulnerabilities: List[Dict[str, Any]], scanned: Path, display_path: str
+) -> List[Dict[str, Any]]:
+    """
+    Like ``remap_result_paths``, for findings in API format that have not been through the API.
+
+    Args:
+        vulnerabilities: Findings in API format (``SolidityDefendScanner.transform_results``)
+        scanned: Path of the temporary snapshot file
+        display_path: Path the findings should refer to
+
+    Returns:
+        The findings, with snapshot paths replaced by copies pointing at ``display_path``
+    """
+    return [
+        {**vuln, "file_path": display_path}
+        if _in_snapshot(vuln.get("file_path"), scanned)
+        else vuln
+        for vuln in vulnerabilities
+    ]
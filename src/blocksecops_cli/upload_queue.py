@@ -0,0 +1,336 @@
+"""Persistent queue of local scan results waiting to be submitted to the API.
+
+Offline scans (``scan run --offline`` and offline server scans) return their
+local results immediately and leave the upload, scan creation and result
+submission to a later drain. Each pending submission is one JSON file in
+``~/.blocksecops/upload_queue`` holding a copy of the scanned contract and its
+findings, so the queue survives restarts and network outages.
+
+Entries are keyed by the scanned path: rescanning a file replaces its pending
+entry instead of queueing another upload, so a burst of editor scans costs a
+single submission.
+"""
+
+import asyncio
+import base64
+import hashlib
+import json
+import os
+import tempfile
+import time
+import uuid
+from dataclasses import dataclass, field
+from pathlib import Path
+from typing import Any, Dict, List, Optional
+
+import httpx
+
+from .api.client import APIError, AuthenticationError, BlockSecOpsClient
+from .bundle import ProjectBundle
+from .config import get_config_dir
+from .snapshot import remap_vulnerability_paths
+
+# Submissions rejected this many times are moved aside instead of retried forever
+MAX_ATTEMPTS = 5
+
+# A claimed entry older than this was left behind by a drain that died
+STALE_CLAIM_SECONDS = 600
+
+# One-shot scans start at most one background drain per interval
+SYNC_INTERVAL_SECONDS = 30
+
+ENTRY_SUFFIX = ".json"
+CLAIM_SUFFIX = ".sending"
+
+
+@dataclass
+class DrainResult:
+    """Outcome of one pass over the queue."""
+
+    submitted: int = 0
+    failed: int = 0
+    remaining: int = 0
+    # Set when the pass stopped early because the API could not be reached
+    error: Optional[str] = None
+
+
+@dataclass
+class QueuedUpload:
+    """A pending submission as stored on disk."""
+
+    key: str
+    path: str
+    filename: str
+    scan_source: str
+    vulnerabilities: List[Dict[str, Any]]
+    content: bytes
+    queued_at: float = field(default_factory=time.time)
+    attempts: int = 0
+    # Set once the scan is created, so retrying a failed submission doesn't create another one
+    scan_id: Optional[str] = None
+
+    def to_json(self) -> Dict[str, Any]:
+        return {
+            "key": self.key,
+            "path": self.path,
+            "filename": self.filename,
+            "scan_source": self.scan_source,
+            "vulnerabilities": self.vulnerabilities,
+            "content": base64.b64encode(self.content).decode("ascii"),
+            "queued_at": self.queued_at,
+            "attempts": self.attempts,
+            "scan_id": self.scan_id,
+        }
+
+    @classmethod
+    def from_json(cls, data: Dict[str, Any]) -> "QueuedUpload":
+        return cls(
+            key=data["key"],
+            path=data["path"],
+            filename=data["filename"],
+            scan_source=data["scan_source"],
+            vulnerabilities=data["vulnerabilities"],
+            content=base64.b64decode(data["content"]),
+            queued_at=data.get("queued_at", time.time()),
+            attempts=data.get("attempts", 0),
+            scan_id=data.get("scan_id"),
+        )
+
+
+class UploadQueue:
+    """Local scan results waiting for submission, stored one file per scanned path."""
+
+    def __init__(self, directory: Optional[Path] = None):
+        self.directory = directory or get_config_dir() / "upload_queue"
+        self.failed_directory = self.directory / "failed"
+
+    def enqueue(
+        self,
+        path: Path,
+        vulnerabilities: List[Dict[str, Any]],
+        scan_source: str,
+        display_path: Optional[str] = None,
+    ) -> QueuedUpload:
+        """
+        Queue the results of a local scan, replacing any pending entry for the same path.
+
+        The contract is copied into the entry, so later edits or a deleted
+        snapshot don't change what gets uploaded. Findings reported against a
+        snapshot are pointed at ``display_path``, as in the scan output.
+
+        Args:
+            path: Scanned file or directory
+            vulnerabilities: Findings in API format (``SolidityDefendScanner.transform_results``)
+            scan_source: Source identifier for tracking
+            display_path: Path the scan is reported under, if ``path`` is a temporary snapshot
+
+        Returns:
+            The queued entry
+        """
+        reported = display_path or str(path.resolve())
+        if path.is_dir():
+            filename, content = f"{path.name or 'project'}.tar.gz", _archive(path)
+        else:
+            filename, content = path.name, path.read_bytes()
+
+        entry = QueuedUpload(
+            key=hashlib.sha256(f"{scan_source}:{reported}".encode("utf-8")).hexdigest()[:32],
+            path=reported,
+            filename=filename,
+            scan_source=scan_source,
+            vulnerabilities=(
+                remap_vulnerability_paths(vulnerabilities, path, display_path)
+                if display_path
+                else vulnerabilities
+            ),
+            content=content,
+        )
+        self._write(self.directory / (entry.key + ENTRY_SUFFIX), entry)
+        return entry
+
+    def pending(self) -> List[QueuedUpload]:
+        """Entries waiting for submission, oldest first."""
+        entries = []
+        for file in self._entry_files():
+            entry = self._read(file)
+            if entry is not None:
+                entries.append(entry)
+        return sorted(entries, key=lambda e: e.queued_at)
+
+    def __len__(self) -> int:
+        return len(self._entry_files())
+
+    def begin_background_sync(self, min_interval: float = SYNC_INTERVAL_SECONDS) -> bool:
+        """
+        Whether to start a background drain now.
+
+        Scans from an editor come in bursts; entries queued after a drain has
+        started are picked up by the next one.
+        """
+        stamp = self.directory / ".last_sync"
+        try:
+            if time.time() - stamp.stat().st_mtime < min_interval:
+                return False
+        except FileNotFoundError:
+            pass
+        self.directory.mkdir(parents=True, exist_ok=True)
+        stamp.touch()
+        return True
+
+    async def drain(self, client: BlockSecOpsClient) -> DrainResult:
+        """
+        Submit every pending entry, oldest first.
+
+        The pass stops at the first network, server or authentication error,
+        leaving that entry and the rest queued for the next drain. An entry the
+        API rejects outright is retried on later drains and moved to ``failed/``
+        after ``MAX_ATTEMPTS``.
+
+        Several processes may drain at once; each entry is claimed by renaming
+        it, so it is only ever submitted by one of them.
+
+        Args:
+            client: API client to submit with
+
+        Returns:
+            What was submitted, what failed and what is left
+        """
+        result = DrainResult()
+        self._release_stale_claims()
+
+        for file in sorted(self._entry_files(), key=_mtime):
+            claim = file.with_name(f"{file.stem}.{uuid.uuid4().hex[:8]}{CLAIM_SUFFIX}")
+            try:
+                os.replace(file, claim)
+            except FileNotFoundError:
+                # Claimed by another drain
+                continue
+
+            entry = self._read(claim)
+            if entry is None:
+                claim.unlink(missing_ok=True)
+                continue
+
+            try:
+                await self._submit(client, entry, claim)
+            except asyncio.CancelledError:
+                self._release(claim, entry)
+                raise
+            except (httpx.TransportError, TimeoutError, AuthenticationError) as e:
+                self._release(claim, entry)
+                result.error = str(e) or type(e).__name__
+                break
+            except APIError as e:
+                if e.status_code is None or e.status_code >= 500 or e.status_code == 429:
+                    self._release(claim, entry)
+                    result.error = str(e)
+                    break
+                entry.attempts += 1
+                if entry.attempts >= MAX_ATTEMPTS:
+                    self.failed_directory.mkdir(parents=True, exist_ok=True)
+                    os.replace(claim, self.failed_directory / (entry.key + ENTRY_SUFFIX))
+                    result.failed += 1
+                else:
+                    self._release(claim, entry)
+                continue
+
+            claim.unlink(missing_ok=True)
+            result.submitted += 1
+
+        result.remaining = len(self)
+        return result
+
+    async def _submit(self, client: BlockSecOpsClient, entry: QueuedUpload, claim: Path) -> None:
+        """
+        Upload the contract copy unless the API has it, create a scan and submit the findings.
+
+        The scan is created once: its id is saved to the claimed entry before
+        the findings are submitted, and a retry submits to the same scan.
+        """
+        if entry.scan_id is None:
+            with tempfile.TemporaryDirectory(prefix="blocksecops-upload-") as tmp:
+                contract = Path(tmp) / entry.filename
+                contract.write_bytes(entry.content)
+                scan = await client.create_file_scan(
+                    contract,
+                    scanners=["soliditydefend"],
+                    scan_source=entry.scan_source,
+                )
+            entry.scan_id = str(scan.id)
+            self._write(claim, entry)
+
+        try:
+            await client.submit_local_results(uuid.UUID(entry.scan_id), entry.vulnerabilities)
+        except APIError as e:
+            if e.status_code == 404:
+                # The scan is gone; the next attempt creates a new one
+                entry.scan_id = None
+            raise
+
+    def _release(self, claim: Path, entry: QueuedUpload) -> None:
+        """Put a claimed entry back, unless a newer scan of the same path was queued meanwhile."""
+        target = self.directory / (entry.key + ENTRY_SUFFIX)
+        if target.exists():
+            claim.unlink(missing_ok=True)
+            return
+        self._write(target, entry)
+        claim.unlink(missing_ok=True)
+
+    def _release_stale_claims(self) -> None:
+        if not self.directory.exists():
+            return
+        now = time.time()
+        for claim in self.directory.glob(f"*{CLAIM_SUFFIX}"):
+            try:
+                if now - claim.stat().st_mtime < STALE_CLAIM_SECONDS:
+                    continue
+            except FileNotFoundError:
+                continue
+            entry = self._read(claim)
+            if entry is None:
+                claim.unlink(missing_ok=True)
+            else:
+                self._release(claim, entry)
+
+    def _entry_files(self) -> List[Path]:
+        if not self.directory.exists():
+            return []
+        return list(self.directory.glob(f"*{ENTRY_SUFFIX}"))
+
+    def _write(self, target: Path, entry: QueuedUpload) -> None:
+        """Write atomically, so a crash never leaves a half-written entry behind."""
+        self.directory.mkdir(parents=True, exist_ok=True)
+        fd, tmp = tempfile.mkstemp(prefix=".entry-", dir=self.directory)
+        try:
+            with os.fdopen(fd, "w") as f:
+                json.dump(entry.to_json(), f)
+            os.replace(tmp, target)
+        except BaseException:
+            Path(tmp).unlink(missing_ok=True)
+            raise
+
+    @staticmethod
+    def _read(file: Path) -> Optional[QueuedUpload]:
+        try:
+            return QueuedUpload.from_json(json.loads(file.read_text()))
+        except FileNotFoundError:
+            return None
+        except (ValueError, KeyError, TypeError):
+            # Unreadable entries can never be submitted
+            file.unlink(missing_ok=True)
+            return None
+
+
+def _archive(directory: Path) -> bytes:
+    """Archive the sources under a directory as .tar.gz, leaving out vendored libraries.
+
+    The same files a remote scan uploads.
+    """
+    return b"".join(ProjectBundle(directory).chunks())
+
+
+def _mtime(file: Path) -> float:
+    try:
+        return file.stat().st_mtime
+    except FileNotFoundError:
+        return 0.0